@@ -0,0 +1,123 @@
+package com.example.platform.mt.benchmark;
+
+import com.example.platform.mt.MultiTenantWorkQueueManager;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the work queue manager with each {@link SchedulingStrategy}, for a range of tenant
+ * counts and {@link TenantLoad}s. Throughput mode reports submit and take rates, and sample time
+ * mode reports the latency percentiles (p0.50, p0.99, p0.999, ...) of each operation.
+ * <p>
+ * Producers use trySubmit and workers use a timed pollWork, so no thread stays blocked at the end
+ * of an iteration. Rejected submissions, of a tenant whose queue is full, are counted as operations
+ * just like accepted ones, since a rejection is as much a scheduler outcome as an acceptance.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class SchedulerBenchmark {
+    //total number of tasks the tenant queues can hold, spread evenly across tenants, which keeps
+    //memory bounded when producers outpace workers.
+    private static final int MAX_BACKLOG = 1 << 16;
+
+    private static final AbstractTask NO_OP_TASK = new AbstractTask("no-op task") {
+        @Override
+        public void run() {
+        }
+    };
+
+    //no values means all strategies, including the ones added later.
+    @Param
+    public SchedulingStrategy strategy;
+
+    @Param({"5", "100", "10000", "100000"})
+    public int tenants;
+
+    @Param
+    public TenantLoad load;
+
+    private MultiTenantWorkQueueManager queueManager;
+    private String[] tenantIds;
+
+    @Setup
+    public void setUp() {
+        int workCapacity = Math.max(2, MAX_BACKLOG/tenants);
+        List<TenantConfig> tenantConfigs = new ArrayList<>(tenants);
+        tenantIds = new String[tenants];
+        for (int i = 0; i < tenants; i++) {
+            tenantIds[i] = "tenantId:"+i;
+            tenantConfigs.add(new TenantConfig(tenantIds[i], "tenantName:"+i, workCapacity));
+        }
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigs, strategy);
+    }
+
+    /**
+     * Submits a task and takes a task in a single thread, i.e., without contention.
+     */
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public TenantAwareTask submitThenTake(Producer producer) throws InterruptedException {
+        queueManager.trySubmit(newTask(producer));
+        return queueManager.pollWork(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Producers submitting tasks, while as many workers take them.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public SubmitStatus submit(Producer producer) {
+        return queueManager.trySubmit(newTask(producer));
+    }
+
+    /**
+     * Workers taking tasks, while as many producers submit them.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public TenantAwareTask take() throws InterruptedException {
+        return queueManager.pollWork(1, TimeUnit.MILLISECONDS);
+    }
+
+    private TenantAwareTask newTask(Producer producer) {
+        return new TenantAwareTask(tenantIds[producer.picker.nextTenant()], NO_OP_TASK);
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        TenantPicker picker;
+
+        @Setup
+        public void setUp(SchedulerBenchmark benchmark, ThreadParams threadParams) {
+            picker = new TenantPicker(benchmark.load, benchmark.tenants, threadParams.getThreadIndex());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.platform.mt.benchmark;
+
+/**
+ * Shape of the load the tenants put on the work queue manager in the benchmarks.
+ */
+public enum TenantLoad {
+    /**
+     * All tenants submit tasks at the same rate, in round-robin order.
+     */
+    BALANCED,
+    /**
+     * One hot tenant submits half of the tasks, the other tenants share the rest evenly.
+     */
+    SKEWED,
+    /**
+     * Tenants submit tasks in bursts, one tenant at a time, the tenant of each burst is
+     * picked at random.
+     */
+    BURSTY;
+}
@@ -0,0 +1,52 @@
+package com.example.platform.mt.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * Picks the tenant of each submitted task according to a {@link TenantLoad}. Not thread-safe,
+ * each producer thread has its own picker, seeded so that runs are reproducible.
+ */
+class TenantPicker {
+    //number of consecutive tasks of the same tenant under bursty load.
+    static final int BURST_LENGTH = 64;
+
+    private final TenantLoad load;
+    private final int noOfTenants;
+    private final SplittableRandom random;
+    private int nextTenant;
+    private int burstTenant;
+    private int burstLeft;
+
+    TenantPicker(TenantLoad load, int noOfTenants, int seed) {
+        this.load = load;
+        this.noOfTenants = noOfTenants;
+        this.random = new SplittableRandom(seed);
+        //spreads the producers across tenants under balanced load.
+        this.nextTenant = seed % noOfTenants;
+    }
+
+    /**
+     * Returns the index of the tenant of the next task.
+     * @return index of the tenant, between 0 and noOfTenants-1.
+     */
+    int nextTenant() {
+        switch (load) {
+            case SKEWED:
+                //tenant 0 is the hot tenant.
+                if (noOfTenants == 1 || random.nextBoolean())
+                    return 0;
+                return 1 + random.nextInt(noOfTenants-1);
+            case BURSTY:
+                if (burstLeft == 0) {
+                    burstTenant = random.nextInt(noOfTenants);
+                    burstLeft = BURST_LENGTH;
+                }
+                burstLeft--;
+                return burstTenant;
+            default:
+                int tenant = nextTenant;
+                nextTenant = tenant+1 == noOfTenants ? 0 : tenant+1;
+                return tenant;
+        }
+    }
+}
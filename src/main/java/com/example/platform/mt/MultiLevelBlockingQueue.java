@@ -0,0 +1,237 @@
+package com.example.platform.mt;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Blocking queue which keeps a FIFO queue per level, and hands out the elements of the lowest
+ * non-empty level first, e.g., the tasks of a tenant by their priority. Elements of different
+ * levels queued concurrently may be handed out in either order, as levels are polled one by one.
+ * The queue is bounded only by its level queues, so it is typically wrapped in a
+ * {@link ResizableBlockingQueue} which bounds the elements of all levels together.
+ * @param <E> type of the queued elements.
+ */
+public class MultiLevelBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final BlockingQueue<E>[] levels;
+    private final ToIntFunction<? super E> levelOf;
+    private final ReentrantLock notEmptyLock = new ReentrantLock();
+    private final Condition notEmpty = notEmptyLock.newCondition();
+    //number of takers waiting for an element, so that producers only signal when someone waits.
+    private final AtomicInteger waitingTakers = new AtomicInteger();
+
+    /**
+     * Creates a multi-level queue.
+     * @param noOfLevels number of levels.
+     * @param levelQueue creates the empty queue of each level.
+     * @param levelOf returns the level of an element, from 0, the level handed out first,
+     *                to noOfLevels-1.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public MultiLevelBlockingQueue(int noOfLevels, Supplier<? extends BlockingQueue<E>> levelQueue,
+                                   ToIntFunction<? super E> levelOf) {
+        if (noOfLevels <= 0)
+            throw new IllegalArgumentException("noOfLevels must be positive: "+noOfLevels);
+        this.levels = new BlockingQueue[noOfLevels];
+        for (int i = 0; i < noOfLevels; i++) {
+            levels[i] = levelQueue.get();
+        }
+        this.levelOf = levelOf;
+    }
+
+    private BlockingQueue<E> levelQueue(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        return levels[levelOf.applyAsInt(e)];
+    }
+
+    private void added() {
+        if (waitingTakers.get() > 0) {
+            notEmptyLock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                notEmptyLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (!levelQueue(e).offer(e))
+            return false;
+        added();
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        levelQueue(e).put(e);
+        added();
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!levelQueue(e).offer(e, timeout, unit))
+            return false;
+        added();
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        for (BlockingQueue<E> level : levels) {
+            E e = level.poll();
+            if (e != null)
+                return e;
+        }
+        return null;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e = poll();
+        return e != null ? e : awaitElement(false, 0);
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        return e != null ? e : awaitElement(true, unit.toNanos(timeout));
+    }
+
+    //waits until an element is taken, returns null only if timed and the wait time elapsed.
+    private E awaitElement(boolean timed, long nanos) throws InterruptedException {
+        waitingTakers.incrementAndGet();
+        try {
+            notEmptyLock.lockInterruptibly();
+            try {
+                E e;
+                //the levels are re-checked after registering as a waiter, so an add in between signals.
+                while ((e = poll()) == null) {
+                    if (!timed) {
+                        notEmpty.await();
+                    } else {
+                        if (nanos <= 0)
+                            return null;
+                        nanos = notEmpty.awaitNanos(nanos);
+                    }
+                }
+                //pass the signal on, in case another taker finds an element as well.
+                if (!isEmpty())
+                    notEmpty.signal();
+                return e;
+            } finally {
+                notEmptyLock.unlock();
+            }
+        } finally {
+            waitingTakers.decrementAndGet();
+        }
+    }
+
+    @Override
+    public E peek() {
+        for (BlockingQueue<E> level : levels) {
+            E e = level.peek();
+            if (e != null)
+                return e;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        for (BlockingQueue<E> level : levels) {
+            if (level.remove(o))
+                return true;
+        }
+        return false;
+    }
+
+    //an element of any level fits as long as the fullest level has room.
+    @Override
+    public int remainingCapacity() {
+        int remainingCapacity = Integer.MAX_VALUE;
+        for (BlockingQueue<E> level : levels) {
+            remainingCapacity = Math.min(remainingCapacity, level.remainingCapacity());
+        }
+        return remainingCapacity;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int n = 0;
+        for (int i = 0; i < levels.length && n < maxElements; i++) {
+            n += levels[i].drainTo(c, maxElements - n);
+        }
+        return n;
+    }
+
+    //iterates the elements level by level, i.e., in the order they would be handed out.
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int level;
+            private Iterator<E> iterator = levels[0].iterator();
+            //iterator of the last element returned, as hasNext may have moved on to the next level.
+            private Iterator<E> lastIterator;
+
+            @Override
+            public boolean hasNext() {
+                while (!iterator.hasNext()) {
+                    if (level == levels.length - 1)
+                        return false;
+                    iterator = levels[++level].iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                lastIterator = iterator;
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                if (lastIterator == null)
+                    throw new IllegalStateException();
+                lastIterator.remove();
+                lastIterator = null;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (BlockingQueue<E> level : levels) {
+            size += level.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (BlockingQueue<E> level : levels) {
+            if (!level.isEmpty())
+                return false;
+        }
+        return true;
+    }
+}
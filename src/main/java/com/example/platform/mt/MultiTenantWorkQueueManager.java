@@ -1,31 +1,133 @@
 package com.example.platform.mt;
 
 import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.impl.DeficitRoundRobinWorkScheduler;
+import com.example.platform.mt.impl.EarliestDeadlineFirstWorkScheduler;
 import com.example.platform.mt.impl.FairQueueingWorkScheduler;
+import com.example.platform.mt.impl.LockFreeFairQueueingWorkScheduler;
+import com.example.platform.mt.impl.ShardedFairQueueingWorkScheduler;
 import com.example.platform.mt.impl.WeightedFairQueueingWorkScheduler;
+import com.example.platform.mt.journal.TaskJournal;
+import com.example.platform.mt.metrics.TenantMetrics;
+import com.example.platform.mt.metrics.TenantMetricsSnapshot;
+import com.example.platform.mt.trace.TraceEventType;
+import com.example.platform.mt.trace.TraceRecorder;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.CallableTask;
+import com.example.platform.mt.vo.CoalescingIndex;
+import com.example.platform.mt.vo.DeProvisionMode;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.RejectionPolicy;
 import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TaskPriority;
 import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantAwareTaskPool;
 import com.example.platform.mt.vo.TenantConfig;
+import com.example.platform.mt.vo.WorkQueueType;
+import com.example.platform.mt.vo.WorkerWaitStrategy;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A multi-tenant Work queue manager implementation which serves multiple tenants.
  * It allows multiple tenants to submit their works/tasks. And when worker threads (responsible
  * for processing the tasks) take the tasks from this queue manager, it gives out the tasks
  * prioritized based on the employed {@link SchedulingStrategy}.
+ * <p>
+ * Per-tenant metrics are recorded for all tasks, and can be pulled with
+ * {@link #getTenantMetrics()}, or through JMX (see {@link MultiTenantWorkQueueManagerMXBean}).
+ * <p>
+ * With an idle queue timeout (see {@link QueueManagerOptions#setIdleQueueTimeoutMillis(long)}), the
+ * work queue of a tenant is created when the tenant submits a task, and reclaimed once the tenant
+ * has been idle for the timeout, so that memory and scheduling costs depend on the number of
+ * active tenants rather than all provisioned tenants.
+ * <p>
+ * Tenants can be provisioned and de-provisioned while producers and workers carry on, see
+ * {@link #deProvisionTenant(String, DeProvisionMode, Consumer)} for what happens to their queued tasks.
+ * <p>
+ * With a journal (see {@link QueueManagerOptions#setJournal(TaskJournal)}), every submitted task is
+ * appended to the journal before it is queued, and acknowledged once it has run or was dropped, so
+ * that the tasks queued when the process stops are replayed when the queue manager is created next.
+ * A task which can not be appended to the journal is not queued, and {@link UncheckedIOException}
+ * is thrown to its producer.
+ * <p>
+ * Tenants configured to spill to disk (see {@link TenantConfig#setSpillToDisk(boolean)}) keep their
+ * work capacity of tasks in memory, and queue further tasks in a file, so their producers are never
+ * held back or rejected.
+ * <p>
+ * Tenants configured to coalesce duplicates (see {@link TenantConfig#setCoalesceDuplicates(boolean)})
+ * have a task which is submitted while a task with the same coalescing key is still queued offered
+ * to the queued task instead, see {@link AbstractTask#coalesce(AbstractTask)}.
+ * <p>
+ * Workers taking work while the scheduler has none wait as set by the worker wait strategy (see
+ * {@link QueueManagerOptions#setWorkerWaitStrategy(WorkerWaitStrategy)}), i.e., they may poll the
+ * scheduler for a while before they block, to pick up the next burst without a wake-up.
  */
-public class MultiTenantWorkQueueManager {
+public class MultiTenantWorkQueueManager implements MultiTenantWorkQueueManagerMXBean {
+    /**
+     * Tenant id carried by the tasks of the system lane, see {@link #submitSystemWork(AbstractTask)}.
+     */
+    public static final String SYSTEM_TENANT_ID = "system";
+
+    //polls of a spinning worker before it yields or parks between polls.
+    private static final int SPIN_TRIES = 100;
+    private static final long MIN_SPIN_PARK_NANOS = 1_000;
+    private static final long MAX_SPIN_PARK_NANOS = 100_000;
+
     private final Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues;
+    private final Map<String, TenantMetrics> tenantMetrics;
+    private final TenantRegistry tenantRegistry = new TenantRegistry();
+    //tenants by handle, looked up on every submission.
+    private final TenantTable<ProvisionedTenant> provisionedTenants = new TenantTable<>();
     private MultiTenantWorkScheduler scheduler;
+    private final QueueManagerOptions options;
+    //null unless tasks are journaled.
+    private final TaskJournal journal;
+    //null unless tasks are recycled.
+    private final TenantAwareTaskPool taskPool;
+    //zero unless tenant work queues are created lazily and reclaimed when idle.
+    private final long idleQueueTimeoutNanos;
+    //tenants which have a work queue, when work queues are created lazily.
+    private final Set<ProvisionedTenant> attachedTenants = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextReclaimTime = new AtomicLong();
+    //tenants by handle, which are de-provisioned once their queued tasks are taken.
+    private final TenantTable<ProvisionedTenant> drainingTenants = new TenantTable<>();
+    private final AtomicInteger noOfDrainingTenants = new AtomicInteger();
     private AtomicInteger noOfTenants;
     List<TenantConfig> tenants;
-    private AtomicInteger tasksProcessed = new AtomicInteger(0);
+    private final LongAdder tasksProcessed = new LongAdder();
+    //cap of in-flight tasks applied to every tenant on top of its own, 0 if none, see capInFlight.
+    private volatile int inFlightCap;
+    //idle workers waiting actively for a task, see spinForWork.
+    private final AtomicInteger spinningWorkers = new AtomicInteger();
+    //reused by the batch takeWork, to record the metrics of the taken tasks without allocating.
+    private final ThreadLocal<List<TenantAwareTask>> takenBatch = ThreadLocal.withInitial(ArrayList::new);
+    private volatile Consumer<TenantAwareTask> overflowHandler;
+    private volatile TraceRecorder traceRecorder;
 
     /**
      * Initializes the multi-tenant work queue manager.
@@ -33,14 +135,83 @@ public class MultiTenantWorkQueueManager {
      * @param strategy Work scheduling strategy, supported strategies - {@link SchedulingStrategy}
      */
     public MultiTenantWorkQueueManager(List<TenantConfig> tenantConfigs, SchedulingStrategy strategy) {
+        this(tenantConfigs, MultiTenantWorkSchedulerFactory.getScheduler(strategy), new QueueManagerOptions());
+    }
+
+    /**
+     * Initializes the multi-tenant work queue manager.
+     * @param tenantConfigs List of tenant configurations for the tenants served by this queue manager.
+     * @param strategy Work scheduling strategy, supported strategies - {@link SchedulingStrategy}
+     * @param options options of the queue manager, e.g., the type of the tenant work queues.
+     */
+    public MultiTenantWorkQueueManager(List<TenantConfig> tenantConfigs, SchedulingStrategy strategy,
+                                       QueueManagerOptions options) {
+        this(tenantConfigs, MultiTenantWorkSchedulerFactory.getScheduler(strategy), options);
+    }
+
+    /**
+     * Initializes the multi-tenant work queue manager with a work scheduler created by the client,
+     * e.g., to tune the parameters of the scheduling algorithm.
+     * @param tenantConfigs List of tenant configurations for the tenants served by this queue manager.
+     * @param scheduler Work scheduler, not yet initialized and not shared with any other queue manager.
+     */
+    public MultiTenantWorkQueueManager(List<TenantConfig> tenantConfigs, MultiTenantWorkScheduler scheduler) {
+        this(tenantConfigs, scheduler, new QueueManagerOptions());
+    }
+
+    /**
+     * Initializes the multi-tenant work queue manager with a work scheduler created by the client.
+     * @param tenantConfigs List of tenant configurations for the tenants served by this queue manager.
+     * @param scheduler Work scheduler, not yet initialized and not shared with any other queue manager.
+     * @param options options of the queue manager, e.g., the type of the tenant work queues.
+     */
+    public MultiTenantWorkQueueManager(List<TenantConfig> tenantConfigs, MultiTenantWorkScheduler scheduler,
+                                       QueueManagerOptions options) {
+        this.options = options;
+        this.journal = options.getJournal();
+        this.taskPool = options.getTaskPoolSize() > 0 ? new TenantAwareTaskPool(options.getTaskPoolSize()) : null;
+        this.idleQueueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, options.getIdleQueueTimeoutMillis()));
+        this.nextReclaimTime.set(System.nanoTime() + idleQueueTimeoutNanos);
         tenants = tenantConfigs;
-        tenantWorkQueues = new ConcurrentHashMap<>(tenants.size()*2);
-        scheduler = MultiTenantWorkSchedulerFactory.getScheduler(strategy);
+        boolean lazyQueues = idleQueueTimeoutNanos > 0;
+        tenantWorkQueues = new ConcurrentHashMap<>(lazyQueues ? 16 : tenants.size()*2);
+        this.tenantMetrics = new ConcurrentHashMap<>(tenants.size()*2);
+        this.scheduler = scheduler;
+        scheduler.setMaxBatchSize(options.getMaxBatchSize());
         for (TenantConfig tenantCfg : tenants) {
-            tenantWorkQueues.put(tenantCfg.getTenantId(), new LinkedBlockingQueue(scheduler.getEffectiveCapacity(tenantCfg.getWorkCapacity())));
+            tenantRegistry.register(tenantCfg.getTenantId());
+            tenantMetrics.put(tenantCfg.getTenantId(), new TenantMetrics(tenantCfg.getTenantId()));
+            if (!lazyQueues)
+                tenantWorkQueues.put(tenantCfg.getTenantId(), newWorkQueue(tenantCfg));
         }
         this.noOfTenants = new AtomicInteger(tenants.size());
-        scheduler.initialize(tenantWorkQueues);
+        //with lazy work queues, tenants are provisioned to the scheduler when they submit their first task.
+        scheduler.initialize(tenantRegistry, tenantWorkQueues, lazyQueues ? Collections.<TenantConfig>emptyList() : tenants);
+        for (TenantConfig tenantCfg : tenants) {
+            String tenantId = tenantCfg.getTenantId();
+            int tenantHandle = tenantRegistry.getHandle(tenantId);
+            provisionedTenants.put(tenantHandle, new ProvisionedTenant(tenantHandle, tenantCfg, tenantMetrics.get(tenantId),
+                lazyQueues));
+        }
+        if (journal != null)
+            replayJournal();
+    }
+
+    //the capacity of the work queues can be changed in place, see updateTenantConfig.
+    private BlockingQueue<TenantAwareTask> newWorkQueue(TenantConfig tenantConfig) {
+        int capacity = scheduler.getEffectiveCapacity(tenantConfig.getWorkCapacity());
+        Supplier<BlockingQueue<TenantAwareTask>> queue = options.getWorkQueueType() == WorkQueueType.ARRAY
+            ? () -> new ArrayBlockingQueue<>(capacity) : LinkedBlockingQueue::new;
+        BlockingQueue<TenantAwareTask> workQueue = options.isTaskPrioritiesEnabled()
+            ? new ResizableBlockingQueue<>(new MultiLevelBlockingQueue<>(TaskPriority.values().length, queue,
+                task -> task.getPriority().ordinal()), capacity)
+            : new ResizableBlockingQueue<>(queue.get(), capacity);
+        if (!tenantConfig.isSpillToDisk())
+            return workQueue;
+        if (options.getSpillDirectory() == null || options.getSpillSerializer() == null)
+            throw new IllegalArgumentException("Spill directory and serializer are not set, tenant id: "
+                +tenantConfig.getTenantId());
+        return new SpillingBlockingQueue(workQueue, options.getSpillDirectory(), options.getSpillSerializer());
     }
 
     /**
@@ -48,20 +219,322 @@ public class MultiTenantWorkQueueManager {
      * @param tenantConfig Tenant configuration for the new tenant.
      */
     public void provisionTenant(TenantConfig tenantConfig) {
-        tenantWorkQueues.put(tenantConfig.getTenantId(),
-            new LinkedBlockingQueue<>(tenantConfig.getWorkCapacity()));
-        scheduler.provisionTenant(tenantConfig);
+        String tenantId = tenantConfig.getTenantId();
+        if (drainingTenants.get(tenantRegistry.getHandle(tenantId)) != null)
+            throw new IllegalStateException("Tenant is still being drained, tenant id: "+tenantId);
+        boolean lazyQueues = idleQueueTimeoutNanos > 0;
+        if (!lazyQueues)
+            tenantWorkQueues.put(tenantId, newWorkQueue(tenantConfig));
+        int tenantHandle = tenantRegistry.register(tenantId);
+        TenantMetrics metrics = new TenantMetrics(tenantId);
+        tenantMetrics.put(tenantId, metrics);
+        int cap = inFlightCap;
+        if (!lazyQueues)
+            scheduler.provisionTenant(scheduledConfig(tenantConfig, cap));
+        //published last, so that tasks are not submitted before the scheduler knows the tenant.
+        ProvisionedTenant tenant = new ProvisionedTenant(tenantHandle, tenantConfig, metrics, lazyQueues);
+        provisionedTenants.put(tenantHandle, tenant);
         noOfTenants.incrementAndGet();
+        //the cap may have changed before the tenant was published to capInFlight.
+        if (inFlightCap != cap) {
+            synchronized (tenant) {
+                scheduler.updateTenantConfig(scheduledConfig(tenant.config, inFlightCap));
+            }
+        }
+    }
+
+    /**
+     * Caps the number of in-flight tasks of every tenant, i.e., its tasks which are handed out and
+     * not yet completed, on top of the cap of its own configuration (see
+     * {@link TenantConfig#setMaxInFlight(int)}), including the tenants provisioned later. The scheduler
+     * keeps the tasks of a tenant at its cap queued, and serves the other tenants meanwhile.
+     * @param maxInFlight maximum number of in-flight tasks of each tenant, or 0 for no cap.
+     */
+    public void capInFlight(int maxInFlight) {
+        inFlightCap = Math.max(0, maxInFlight);
+        for (String tenantId : tenantMetrics.keySet()) {
+            ProvisionedTenant tenant = provisionedTenants.get(tenantRegistry.getHandle(tenantId));
+            if (tenant == null)
+                continue;
+            synchronized (tenant) {
+                scheduler.updateTenantConfig(scheduledConfig(tenant.config, inFlightCap));
+            }
+        }
+    }
+
+    //the configuration of the tenant as applied by the scheduler, with the in-flight cap of the
+    //queue manager, unless the tenant has a lower cap of its own.
+    private static TenantConfig scheduledConfig(TenantConfig tenantConfig, int inFlightCap) {
+        int maxInFlight = tenantConfig.getMaxInFlight();
+        if (inFlightCap == 0 || (maxInFlight > 0 && maxInFlight <= inFlightCap))
+            return tenantConfig;
+        TenantConfig capped = new TenantConfig(tenantConfig);
+        capped.setMaxInFlight(inFlightCap);
+        return capped;
+    }
+
+    /**
+     * Changes the configuration of a provisioned tenant, e.g., its weight and work capacity, while
+     * it keeps submitting tasks. The work queue of the tenant is resized in place, so a lowered
+     * capacity keeps the tasks already queued, and holds back further tasks until enough of them
+     * are taken. The weight, the rate limit and the cap of in-flight tasks apply from the next
+     * scheduling decision on. Work queues of type {@link WorkQueueType#ARRAY} are preallocated, so
+     * their capacity can not be raised above the capacity they were created with.
+     * @param tenantConfig new configuration of the tenant.
+     * @throws UnknownTenantException if the tenant is not provisioned.
+     * @throws IllegalArgumentException if the work capacity can not be applied to the work queue.
+     */
+    public void updateTenantConfig(TenantConfig tenantConfig) throws UnknownTenantException {
+        String tenantId = tenantConfig.getTenantId();
+        ProvisionedTenant tenant = provisionedTenants.get(tenantRegistry.getHandle(tenantId));
+        if (tenant == null)
+            throw new UnknownTenantException(tenantId);
+        //the monitor keeps a lazy work queue from being created or reclaimed meanwhile.
+        synchronized (tenant) {
+            BlockingQueue<TenantAwareTask> workQueue = tenantWorkQueues.get(tenantId);
+            int capacity = scheduler.getEffectiveCapacity(tenantConfig.getWorkCapacity());
+            if (workQueue instanceof ResizableBlockingQueue)
+                ((ResizableBlockingQueue<TenantAwareTask>) workQueue).setCapacity(capacity);
+            else if (workQueue instanceof SpillingBlockingQueue)
+                ((SpillingBlockingQueue) workQueue).setCapacity(capacity);
+            tenant.config = tenantConfig;
+            //tasks registered in a dropped index leave it as usual.
+            if (!tenantConfig.isCoalesceDuplicates())
+                tenant.coalescing = null;
+            else if (tenant.coalescing == null)
+                tenant.coalescing = new CoalescingIndex();
+            scheduler.updateTenantConfig(scheduledConfig(tenantConfig, inFlightCap));
+        }
     }
 
     /**
-     * De-provision a tenant from the multi-tenant work queue manager.
+     * De-provision a tenant from the multi-tenant work queue manager. The tasks queued by the
+     * tenant are cancelled, see {@link #deProvisionTenant(String, DeProvisionMode, Consumer)}.
      * @param tenantId tenant id of the tenant to be removed.
      */
     public void deProvisionTenant(String tenantId) {
-        tenantWorkQueues.remove(tenantId);
+        deProvisionTenant(tenantId, DeProvisionMode.CANCEL, null);
+    }
+
+    /**
+     * De-provision a tenant from the multi-tenant work queue manager, while other tenants keep
+     * submitting and workers keep taking tasks. The tenant stops accepting tasks straight away, and
+     * the tasks it has queued are drained, cancelled or migrated, depending on the mode. A task which
+     * a worker is already taking may still be handed out. The tenant can not be provisioned again
+     * until the returned future is completed.
+     * @param tenantId tenant id of the tenant to be removed.
+     * @param mode what happens to the queued tasks of the tenant.
+     * @param removedTaskHandler receives the tasks removed from the tenant, in the calling thread.
+     *                           Required to migrate the tasks, optional to cancel them, and not used
+     *                           to drain them.
+     * @return future completed once the tenant is removed, which is on return unless the tasks
+     * of the tenant are drained.
+     */
+    public CompletableFuture<Void> deProvisionTenant(String tenantId, DeProvisionMode mode,
+                                                     Consumer<TenantAwareTask> removedTaskHandler) {
+        if (mode == DeProvisionMode.MIGRATE)
+            Objects.requireNonNull(removedTaskHandler, "removedTaskHandler");
+        ProvisionedTenant tenant = provisionedTenants.remove(tenantRegistry.getHandle(tenantId));
+        if (tenant == null)
+            return CompletableFuture.completedFuture(null);
+        //a producer which already resolved the tenant must not create a work queue for it anymore.
+        synchronized (tenant) {
+            tenant.deProvisioned = true;
+            attachedTenants.remove(tenant);
+        }
+        if (mode == DeProvisionMode.DRAIN) {
+            drainingTenants.put(tenant.tenantHandle, tenant);
+            noOfDrainingTenants.incrementAndGet();
+            completeDrainIfIdle(tenant);
+            return tenant.removed;
+        }
+        List<TenantAwareTask> removed = new ArrayList<>();
+        while (true) {
+            //producers which were counted before the tenant was de-provisioned may still queue
+            //their tasks, which are removed in the next round.
+            boolean noSubmitters = tenant.submitters.get() <= 0;
+            scheduler.drainTenant(tenantId, removed);
+            for (TenantAwareTask task : removed) {
+                if (mode == DeProvisionMode.CANCEL) {
+                    task.cancel();
+                    tenant.metrics.recordDropped();
+                } else {
+                    //migrated tasks leave the journal along with the tenant.
+                    task.leaveCoalescingIndex();
+                    task.acknowledge();
+                }
+                if (removedTaskHandler != null)
+                    removedTaskHandler.accept(task);
+                else
+                    recycle(task);
+            }
+            removed.clear();
+            if (noSubmitters)
+                break;
+            Thread.yield();
+        }
+        removeTenant(tenant);
+        return tenant.removed;
+    }
+
+    //removes a draining tenant, once no producer is submitting a task and its queued tasks are taken.
+    private void completeDrainIfIdle(ProvisionedTenant tenant) {
+        if (drainingTenants.get(tenant.tenantHandle) != tenant || tenant.submitters.get() > 0
+                || scheduler.hasQueuedTasks(tenant.tenantId))
+            return;
+        //whoever takes the tenant off the draining tenants removes it.
+        if (drainingTenants.remove(tenant.tenantHandle) == null)
+            return;
+        noOfDrainingTenants.decrementAndGet();
+        removeTenant(tenant);
+    }
+
+    private void removeTenant(ProvisionedTenant tenant) {
+        String tenantId = tenant.tenantId;
         scheduler.deProvisionTenant(tenantId);
+        tenantWorkQueues.remove(tenantId);
+        tenantMetrics.remove(tenantId);
+        tenantRegistry.unregister(tenantId);
         noOfTenants.decrementAndGet();
+        tenant.removed.complete(null);
+    }
+
+    /**
+     * Returns the handle of the tenant, which can be passed to
+     * {@link TenantAwareTask#TenantAwareTask(String, int, com.example.platform.mt.vo.AbstractTask)}
+     * so that the tenant is not looked up by tenant id when its tasks are submitted. The handle is
+     * valid until the tenant is de-provisioned, tasks carrying a stale handle are looked up by
+     * tenant id instead.
+     * @param tenantId tenant id of the tenant.
+     * @return the handle of the tenant, or {@link TenantRegistry#NO_HANDLE} if it is not provisioned.
+     */
+    public int getTenantHandle(String tenantId) {
+        return tenantRegistry.getHandle(tenantId);
+    }
+
+    /**
+     * Returns a tenant aware task wrapping the specified task, which carries the handle of the
+     * tenant. If the queue manager recycles tasks (see {@link QueueManagerOptions#setTaskPoolSize(int)}),
+     * the task is reused from those passed to {@link #recycle(TenantAwareTask)}.
+     * @param tenantId tenant id of the tenant.
+     * @param task the actual task.
+     * @return the tenant aware task.
+     */
+    public TenantAwareTask newTask(String tenantId, AbstractTask task) {
+        int tenantHandle = tenantRegistry.getHandle(tenantId);
+        if (taskPool == null)
+            return new TenantAwareTask(tenantId, tenantHandle, task);
+        return taskPool.obtain(tenantId, tenantHandle, task);
+    }
+
+    /**
+     * Recycles a task obtained from {@link #newTask(String, AbstractTask)}, once it was run, or
+     * once it was rejected and the caller is done with it. The task must not be used afterwards.
+     * Tasks dropped by the {@link RejectionPolicy#DROP_OLDEST} policy, tasks absorbed by a queued
+     * duplicate, and the other tasks of a batch once it was run or cancelled, are recycled by the
+     * queue manager itself. Does nothing if the queue manager does not recycle tasks.
+     * @param task the tenant aware task.
+     */
+    public void recycle(TenantAwareTask task) {
+        if (taskPool != null)
+            taskPool.release(task);
+    }
+
+    //resolves the tenant by the handle carried by the task, unless it is stale or not resolved yet.
+    private ProvisionedTenant resolveTenant(TenantAwareTask task) {
+        ProvisionedTenant tenant = provisionedTenants.get(task.getTenantHandle());
+        if (tenant != null && tenant.tenantId.equals(task.getTenantId()))
+            return tenant;
+        return provisionedTenants.get(tenantRegistry.getHandle(task.getTenantId()));
+    }
+
+    //resolves the tenant of the task and counts the producer until endSubmit, so that the tenant is
+    //not removed meanwhile. With lazy work queues, also makes sure the tenant has a work queue.
+    //Returns null if the tenant is not provisioned.
+    private ProvisionedTenant beginSubmit(TenantAwareTask task) {
+        ProvisionedTenant tenant = resolveTenant(task);
+        if (tenant == null)
+            return null;
+        while (true) {
+            int submitters = tenant.submitters.get();
+            if (submitters != ProvisionedTenant.DETACHED) {
+                if (!tenant.submitters.compareAndSet(submitters, submitters+1))
+                    continue;
+                //the producer is counted before the flag is checked, so either it sees the tenant
+                //de-provisioned, or the de-provisioning thread waits for its task.
+                if (!tenant.deProvisioned)
+                    return tenant;
+                tenant.submitters.decrementAndGet();
+                completeDrainIfIdle(tenant);
+                return null;
+            }
+            //the monitor is held while the work queue is reclaimed, so wait for it and re-check.
+            synchronized (tenant) {
+                if (tenant.deProvisioned)
+                    return null;
+                if (tenant.submitters.get() == ProvisionedTenant.DETACHED)
+                    attachWorkQueue(tenant);
+            }
+        }
+    }
+
+    private void endSubmit(ProvisionedTenant tenant) {
+        boolean lazyQueues = idleQueueTimeoutNanos > 0;
+        long now = lazyQueues ? System.nanoTime() : 0;
+        if (lazyQueues)
+            tenant.lastSubmitTime = now;
+        tenant.submitters.decrementAndGet();
+        //the tenant may be draining, and waiting for this producer only.
+        if (tenant.deProvisioned)
+            completeDrainIfIdle(tenant);
+        if (!lazyQueues)
+            return;
+        //producers take turns at reclaiming idle work queues, once every idle queue timeout.
+        long reclaimTime = nextReclaimTime.get();
+        if (now - reclaimTime >= 0 && nextReclaimTime.compareAndSet(reclaimTime, now + idleQueueTimeoutNanos))
+            reclaimIdleTenantQueues(now);
+    }
+
+    //must be called while holding the tenant's monitor.
+    private void attachWorkQueue(ProvisionedTenant tenant) {
+        tenantWorkQueues.put(tenant.tenantId, newWorkQueue(tenant.config));
+        scheduler.provisionTenant(scheduledConfig(tenant.config, inFlightCap));
+        tenant.lastSubmitTime = System.nanoTime();
+        attachedTenants.add(tenant);
+        tenant.submitters.set(0);
+    }
+
+    /**
+     * Reclaims the work queues of the tenants which have no task queued, and have not submitted
+     * a task for the idle queue timeout. This is done by the producers once every idle queue
+     * timeout, but can also be called, e.g., from a timer, in case producers stop altogether.
+     * Does nothing unless an idle queue timeout is set in the {@link QueueManagerOptions}.
+     * @return number of reclaimed work queues.
+     */
+    public int reclaimIdleTenantQueues() {
+        return idleQueueTimeoutNanos > 0 ? reclaimIdleTenantQueues(System.nanoTime()) : 0;
+    }
+
+    private int reclaimIdleTenantQueues(long now) {
+        int reclaimed = 0;
+        for (ProvisionedTenant tenant : attachedTenants) {
+            if (now - tenant.lastSubmitTime < idleQueueTimeoutNanos || tenant.submitters.get() != 0)
+                continue;
+            synchronized (tenant) {
+                //detaching the tenant first keeps producers off the work queue while it is checked.
+                if (tenant.deProvisioned || !tenant.submitters.compareAndSet(0, ProvisionedTenant.DETACHED))
+                    continue;
+                if (now - tenant.lastSubmitTime < idleQueueTimeoutNanos || scheduler.hasQueuedTasks(tenant.tenantId)) {
+                    tenant.submitters.set(0);
+                    continue;
+                }
+                scheduler.deProvisionTenant(tenant.tenantId);
+                tenantWorkQueues.remove(tenant.tenantId);
+                attachedTenants.remove(tenant);
+                reclaimed++;
+            }
+        }
+        return reclaimed;
     }
 
     /**
@@ -69,15 +542,270 @@ public class MultiTenantWorkQueueManager {
      * waiting if necessary for space to become available.
      * @param task Tenant taskDescription to be submitted to the multi-tenant work queue manager.
      * @throws InterruptedException if interrupted while waiting
+     * @see #submitWorkWithStatus(TenantAwareTask)
      */
     public void submitWork(TenantAwareTask task) throws InterruptedException, UnknownTenantException {
-        if (!isTenantProvisioned(task.getTenantId()))
+        submitWorkWithStatus(task);
+    }
+
+    /**
+     * Submits the specified task like {@link #submitWork(TenantAwareTask)}, and reports whether it
+     * was queued, or absorbed by a queued duplicate instead.
+     * @param task Tenant task to be submitted to the multi-tenant work queue manager.
+     * @return {@link SubmitStatus#ACCEPTED}, or {@link SubmitStatus#COALESCED} if a queued duplicate
+     * absorbed the task.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public SubmitStatus submitWorkWithStatus(TenantAwareTask task) throws InterruptedException, UnknownTenantException {
+        ProvisionedTenant tenant = beginSubmit(task);
+        if (tenant == null)
             throw new UnknownTenantException(task.getTenantId());
-        scheduler.add(task);
+        try {
+            if (coalesced(task, tenant))
+                return SubmitStatus.COALESCED;
+            task.markSubmitted(tenant.tenantHandle, tenant.metrics, traceRecorder);
+            try {
+                journal(task);
+                scheduler.add(task);
+            } catch (InterruptedException | RuntimeException e) {
+                abandoned(task);
+                throw e;
+            }
+            accepted(task, tenant.metrics);
+            return SubmitStatus.ACCEPTED;
+        } finally {
+            endSubmit(tenant);
+        }
+    }
+
+    /**
+     * Submits the specified task to the system lane, e.g., a health check or a control task of the
+     * platform. Tasks of the system lane bypass tenant fairness, i.e., they are handed out before
+     * the tasks of any tenant, in the order they were submitted. The system lane is not bounded and
+     * its tasks are not recorded in tenant metrics, so it is meant for a trickle of small tasks.
+     * Tasks of the system lane are not journaled either.
+     * @param task the task, which is handed out with the tenant id {@link #SYSTEM_TENANT_ID}.
+     */
+    public void submitSystemWork(AbstractTask task) {
+        scheduler.addSystemTask(new TenantAwareTask(SYSTEM_TENANT_ID, task));
+    }
+
+    /**
+     * Submits the specified task into the appropriate tenant work queue, if it can be done
+     * immediately. If the tenant work queue is full, the rejection policy of the tenant is applied.
+     * Unlike {@link #submitWork(TenantAwareTask)}, this never blocks the caller.
+     * @param task Tenant task to be submitted to the multi-tenant work queue manager.
+     * @return the outcome of the submission.
+     */
+    public SubmitStatus trySubmit(TenantAwareTask task) {
+        ProvisionedTenant tenant = beginSubmit(task);
+        if (tenant == null)
+            return SubmitStatus.UNKNOWN_TENANT;
+        try {
+            if (coalesced(task, tenant))
+                return SubmitStatus.COALESCED;
+            task.markSubmitted(tenant.tenantHandle, tenant.metrics, traceRecorder);
+            try {
+                journal(task);
+                if (scheduler.offer(task)) {
+                    accepted(task, tenant.metrics);
+                    return SubmitStatus.ACCEPTED;
+                }
+            } catch (RuntimeException e) {
+                abandoned(task);
+                throw e;
+            }
+            return applyRejectionPolicy(task, tenant.config.getRejectionPolicy(), tenant.metrics);
+        } finally {
+            endSubmit(tenant);
+        }
     }
 
-    private boolean isTenantProvisioned(String tenantId) {
-        return tenantWorkQueues.containsKey(tenantId);
+    /**
+     * Submits the specified task into the appropriate tenant work queue, waiting up to the
+     * specified wait time if necessary for space to become available. If the tenant work queue
+     * is still full, the rejection policy of the tenant is applied.
+     * @param task Tenant task to be submitted to the multi-tenant work queue manager.
+     * @param timeout how long to wait before giving up, in units of unit
+     * @param unit a TimeUnit determining how to interpret the timeout parameter
+     * @return the outcome of the submission.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public SubmitStatus submitWork(TenantAwareTask task, long timeout, TimeUnit unit) throws InterruptedException {
+        ProvisionedTenant tenant = beginSubmit(task);
+        if (tenant == null)
+            return SubmitStatus.UNKNOWN_TENANT;
+        try {
+            if (coalesced(task, tenant))
+                return SubmitStatus.COALESCED;
+            task.markSubmitted(tenant.tenantHandle, tenant.metrics, traceRecorder);
+            try {
+                journal(task);
+                if (scheduler.offer(task, timeout, unit)) {
+                    accepted(task, tenant.metrics);
+                    return SubmitStatus.ACCEPTED;
+                }
+            } catch (InterruptedException | RuntimeException e) {
+                abandoned(task);
+                throw e;
+            }
+            return applyRejectionPolicy(task, tenant.config.getRejectionPolicy(), tenant.metrics);
+        } finally {
+            endSubmit(tenant);
+        }
+    }
+
+    //offers the task to a queued duplicate, if the tenant coalesces duplicates.
+    private boolean coalesced(TenantAwareTask task, ProvisionedTenant tenant) {
+        CoalescingIndex coalescing = tenant.coalescing;
+        if (coalescing == null || !coalescing.coalesce(task))
+            return false;
+        tenant.metrics.recordCoalesced();
+        //the absorbed task never runs, e.g., the future of an async task must not be left pending.
+        task.cancel();
+        recycle(task);
+        return true;
+    }
+
+    private void journal(TenantAwareTask task) {
+        if (journal == null)
+            return;
+        try {
+            journal.append(task);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Queues the tasks of the journal which were submitted before the queue manager was created, and
+     * neither run nor dropped, e.g., before a restart. This is done when the queue manager is created,
+     * but can be called again, e.g., once workers have made room, for the tasks which did not fit
+     * into the work queues of their tenants, or whose tenants were not provisioned yet. Does nothing
+     * unless a journal is set in the {@link QueueManagerOptions}.
+     * @return number of queued tasks.
+     */
+    public int replayJournal() {
+        return journal != null ? journal.replay(this::requeue) : 0;
+    }
+
+    //queues a task replayed from the journal, without appending it again.
+    private boolean requeue(TenantAwareTask task) {
+        ProvisionedTenant tenant = beginSubmit(task);
+        if (tenant == null)
+            return false;
+        try {
+            task.markSubmitted(tenant.tenantHandle, tenant.metrics, traceRecorder);
+            if (!scheduler.offer(task))
+                return false;
+            accepted(task, tenant.metrics);
+            return true;
+        } finally {
+            endSubmit(tenant);
+        }
+    }
+
+    private void accepted(TenantAwareTask task, TenantMetrics metrics) {
+        task.markQueued();
+        metrics.recordSubmitted();
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null)
+            recorder.record(TraceEventType.ENQUEUE, task.getTenantId(), task.getSubmitTime(), 0);
+    }
+
+    //the task is not queued, so it must neither absorb duplicates nor be replayed from the journal.
+    private void abandoned(TenantAwareTask task) {
+        task.leaveCoalescingIndex();
+        task.acknowledge();
+    }
+
+    private SubmitStatus applyRejectionPolicy(TenantAwareTask task, RejectionPolicy rejectionPolicy,
+                                              TenantMetrics metrics) {
+        switch (rejectionPolicy) {
+            case DROP_OLDEST:
+                TenantAwareTask evicted = scheduler.evictOldest(task.getTenantId());
+                if (evicted != null) {
+                    evicted.cancel();
+                    metrics.recordDropped();
+                    recycle(evicted);
+                    //another producer may take the freed space first, then the task is rejected after all.
+                    if (scheduler.offer(task)) {
+                        accepted(task, metrics);
+                        return SubmitStatus.ACCEPTED;
+                    }
+                }
+                abandoned(task);
+                metrics.recordRejected();
+                return SubmitStatus.TENANT_FULL;
+            case SHED_TO_OVERFLOW:
+                //the overflow handler takes over the task, so it is not replayed.
+                abandoned(task);
+                metrics.recordRejected();
+                Consumer<TenantAwareTask> handler = overflowHandler;
+                if (handler == null)
+                    return SubmitStatus.TENANT_FULL;
+                handler.accept(task);
+                return SubmitStatus.SHED;
+            default:
+                abandoned(task);
+                metrics.recordRejected();
+                return SubmitStatus.TENANT_FULL;
+        }
+    }
+
+    /**
+     * Submits the specified callable as a task of the specified tenant, without waiting.
+     * The returned future is completed by the worker thread which runs the task, with the result
+     * of the callable, or exceptionally with the exception thrown by it. If the task can not be
+     * queued, the future is completed exceptionally with {@link UnknownTenantException} or
+     * {@link RejectedExecutionException}, and if the task is dropped later on, it is cancelled.
+     * A task shed to the overflow handler completes whenever the handler runs it.
+     * @param tenantId tenant id of the tenant submitting the task.
+     * @param callable computation to be run by a worker thread.
+     * @param <V> result type of the callable.
+     * @return future for the result of the callable.
+     */
+    public <V> CompletableFuture<V> submitAsync(String tenantId, Callable<V> callable) {
+        CallableTask<V> task = new CallableTask<>("async task", callable);
+        SubmitStatus status = trySubmit(new TenantAwareTask(tenantId, task));
+        if (status == SubmitStatus.UNKNOWN_TENANT)
+            task.getFuture().completeExceptionally(new UnknownTenantException(tenantId));
+        else if (status == SubmitStatus.TENANT_FULL)
+            task.getFuture().completeExceptionally(
+                new RejectedExecutionException("Work queue is full for tenant id: "+tenantId));
+        return task.getFuture();
+    }
+
+    /**
+     * Submits the specified supplier as a task of the specified tenant, without waiting.
+     * Behaves just like {@link #submitAsync(String, Callable)}.
+     * @param tenantId tenant id of the tenant submitting the task.
+     * @param supplier computation to be run by a worker thread.
+     * @param <V> result type of the supplier.
+     * @return future for the result of the supplier.
+     */
+    public <V> CompletableFuture<V> supplyAsync(String tenantId, Supplier<V> supplier) {
+        return submitAsync(tenantId, supplier::get);
+    }
+
+    /**
+     * Sets the handler which receives the tasks shed by tenants with the
+     * {@link RejectionPolicy#SHED_TO_OVERFLOW} rejection policy. The handler runs in the thread
+     * submitting the task, so it should not block.
+     * @param overflowHandler handler for the shed tasks, or null to reject them instead.
+     */
+    public void setOverflowHandler(Consumer<TenantAwareTask> overflowHandler) {
+        this.overflowHandler = overflowHandler;
+    }
+
+    /**
+     * Switches the scheduling trace on or off. While it is on, the enqueue, dispatch and
+     * completion of every task is recorded, for offline analysis of fairness.
+     * @param traceRecorder recorder to record the trace into, or null to switch it off. The caller
+     *                      closes the recorder once it is switched off.
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
     }
 
     /**
@@ -87,21 +815,277 @@ public class MultiTenantWorkQueueManager {
      * @throws InterruptedException if interrupted while waiting
      */
     public TenantAwareTask takeWork() throws InterruptedException {
-        TenantAwareTask task = scheduler.remove();
-        tasksProcessed.getAndIncrement();
+        TenantAwareTask task = spinForWork(Long.MAX_VALUE);
+        while (task == null) {
+            task = dequeued(scheduler.remove(), System.nanoTime());
+        }
+        tasksProcessed.add(task.getBatchSize());
+        return task;
+    }
+
+    /**
+     * Retrieves the prioritized task from among multiple tenant queues, waiting up to the
+     * specified wait time if necessary for a task to become available.
+     * @param timeout how long to wait before giving up, in units of unit
+     * @param unit a TimeUnit determining how to interpret the timeout parameter
+     * @return Prioritized task based on the applicable {@link SchedulingStrategy}, or null if
+     * the specified waiting time elapses before a task is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public TenantAwareTask pollWork(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        TenantAwareTask task = spinForWork(unit.toNanos(timeout));
+        while (task == null) {
+            task = scheduler.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (task == null)
+                return null;
+            task = dequeued(task, System.nanoTime());
+        }
+        tasksProcessed.add(task.getBatchSize());
         return task;
     }
 
+    /**
+     * Retrieves up to maxTasks prioritized tasks from among multiple tenant queues, waiting if
+     * necessary until at least one task becomes available. This allows workers to take a batch of
+     * tasks for a single round-trip to the scheduler.
+     * @param maxTasks maximum number of tasks to be retrieved.
+     * @param sink collection to which the tasks are added, in the order prioritized by
+     *             the applicable {@link SchedulingStrategy}
+     * @return number of tasks added to the sink.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int takeWork(int maxTasks, Collection<? super TenantAwareTask> sink) throws InterruptedException {
+        if (maxTasks <= 0)
+            throw new IllegalArgumentException("maxTasks must be positive: "+maxTasks);
+        TenantAwareTask task = spinForWork(Long.MAX_VALUE);
+        List<TenantAwareTask> batch = takenBatch.get();
+        try {
+            if (task != null) {
+                sink.add(task);
+                tasksProcessed.add(task.getBatchSize());
+                int taken = 1;
+                //the rest of the batch is taken without waiting, in a single round-trip unless
+                //tasks of the batch are dropped.
+                while (taken < maxTasks && scheduler.poll(maxTasks - taken, batch) > 0) {
+                    taken += dequeued(batch, sink);
+                }
+                return taken;
+            }
+            int taken = 0;
+            //every task of the batch may have been dropped, in which case another batch is taken.
+            while (taken == 0) {
+                scheduler.remove(maxTasks, batch);
+                taken = dequeued(batch, sink);
+            }
+            return taken;
+        } finally {
+            batch.clear();
+        }
+    }
+
+    //records the tasks handed out by the scheduler, and moves those which are not dropped to the
+    //sink. Returns the number of tasks added to the sink.
+    private int dequeued(List<TenantAwareTask> batch, Collection<? super TenantAwareTask> sink) {
+        long now = System.nanoTime();
+        int taken = 0;
+        for (TenantAwareTask removed : batch) {
+            TenantAwareTask task = dequeued(removed, now);
+            if (task != null) {
+                sink.add(task);
+                taken++;
+                tasksProcessed.add(task.getBatchSize());
+            }
+        }
+        batch.clear();
+        return taken;
+    }
+
+    //polls the scheduler without blocking, as set by the worker wait strategy, until a task is
+    //handed out, the spin time or the timeout elapses, or too many workers spin already. Returns
+    //the task, or null if the worker is to block in the scheduler.
+    private TenantAwareTask spinForWork(long timeoutNanos) throws InterruptedException {
+        WorkerWaitStrategy waitStrategy = options.getWorkerWaitStrategy();
+        if (waitStrategy == WorkerWaitStrategy.BLOCKING)
+            return null;
+        int spinning;
+        do {
+            spinning = spinningWorkers.get();
+            if (spinning >= options.getMaxSpinningWorkers())
+                return null;
+        } while (!spinningWorkers.compareAndSet(spinning, spinning + 1));
+        try {
+            long spinNanos = Math.min(options.getWorkerSpinTimeNanos(), timeoutNanos);
+            long start = System.nanoTime();
+            long parkNanos = MIN_SPIN_PARK_NANOS;
+            for (int i = 0; ; i++) {
+                TenantAwareTask task = scheduler.poll(0, TimeUnit.NANOSECONDS);
+                if (task != null && (task = dequeued(task, System.nanoTime())) != null)
+                    return task;
+                if (System.nanoTime() - start >= spinNanos)
+                    return null;
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                if (i < SPIN_TRIES || waitStrategy == WorkerWaitStrategy.BUSY_SPIN)
+                    continue;
+                if (waitStrategy == WorkerWaitStrategy.SPIN_THEN_YIELD) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, parkNanos);
+                    parkNanos = Math.min(2*parkNanos, MAX_SPIN_PARK_NANOS);
+                }
+            }
+        } finally {
+            spinningWorkers.decrementAndGet();
+        }
+    }
+
+    //records the task handed out by the scheduler along with the tasks of its batch, returns the
+    //task to hand out, or null if all of them are dropped instead, because their deadline has passed.
+    private TenantAwareTask dequeued(TenantAwareTask task, long now) {
+        List<TenantAwareTask> batch = task.takeBatch();
+        TenantAwareTask head = dequeuedTask(task, now) ? task : null;
+        for (TenantAwareTask batched : batch) {
+            if (!dequeuedTask(batched, now))
+                continue;
+            //the first task of the batch which is not dropped runs the others.
+            if (head == null)
+                head = batched;
+            else
+                head.addToBatch(batched);
+        }
+        return head;
+    }
+
+    //records a task handed out by the scheduler, returns false if it is dropped instead, because
+    //its deadline has passed.
+    private boolean dequeuedTask(TenantAwareTask task, long now) {
+        task.leaveCoalescingIndex();
+        if (noOfDrainingTenants.get() > 0) {
+            ProvisionedTenant tenant = drainingTenants.get(task.getTenantHandle());
+            if (tenant != null)
+                completeDrainIfIdle(tenant);
+        }
+        TenantMetrics metrics = task.getMetrics();
+        if (options.isDropExpiredTasks() && task.isExpired(now)) {
+            task.cancel();
+            if (metrics != null)
+                metrics.recordDropped();
+            recycle(task);
+            return false;
+        }
+        if (metrics == null)
+            return true;
+        long queueWait = now - task.getSubmitTime();
+        metrics.recordDequeued(queueWait);
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null)
+            recorder.record(TraceEventType.DISPATCH, task.getTenantId(), now, queueWait);
+        return true;
+    }
+
     /**
      * Returns the current number of tenants served by the multi-tenant work queue.
      * @return the current number of tenants served by the multi-tenant work queue.
      */
+    @Override
     public int getNoOfTenants() {
         return noOfTenants.get();
     }
 
+    /**
+     * Returns the number of tenant work queues currently allocated, which is less than the number
+     * of tenants when work queues are created lazily.
+     * @return the number of tenant work queues.
+     */
+    @Override
+    public int getNoOfTenantQueues() {
+        return tenantWorkQueues.size();
+    }
+
+    /**
+     * Returns the number of tasks handed out to workers, or {@link Integer#MAX_VALUE} once it no
+     * longer fits into an int.
+     * @return the number of tasks handed out to workers.
+     * @deprecated overflows on a long running queue manager, use {@link #getProcessedTasksCountLong()}.
+     */
+    @Deprecated
+    @Override
     public int getProcessedTasksCount() {
-        return tasksProcessed.get();
+        return (int) Math.min(tasksProcessed.sum(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of tasks handed out to workers.
+     * @return the number of tasks handed out to workers.
+     */
+    @Override
+    public long getProcessedTasksCountLong() {
+        return tasksProcessed.sum();
+    }
+
+    /**
+     * Returns whether any tenant has queued tasks, including tasks held back by the limits of their
+     * tenant, see {@link TenantConfig#setRateLimit(double)}, which a poll does not hand out yet.
+     * @return true if a task of any tenant is queued.
+     */
+    public boolean hasQueuedTasks() {
+        for (String tenantId : tenantWorkQueues.keySet()) {
+            if (scheduler.hasQueuedTasks(tenantId))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a snapshot of the metrics of every tenant currently served.
+     * @return snapshots of the tenant metrics, by tenant id.
+     */
+    @Override
+    public Map<String, TenantMetricsSnapshot> getTenantMetrics() {
+        Map<String, TenantMetricsSnapshot> snapshots = new HashMap<>(tenantMetrics.size()*2);
+        for (TenantMetrics metrics : tenantMetrics.values()) {
+            snapshots.put(metrics.getTenantId(), metrics.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Returns a snapshot of the metrics of the specified tenant.
+     * @param tenantId tenant id of the tenant.
+     * @return snapshot of the tenant metrics, or null if the tenant is not provisioned.
+     */
+    public TenantMetricsSnapshot getTenantMetrics(String tenantId) {
+        TenantMetrics metrics = tenantMetrics.get(tenantId);
+        return metrics != null ? metrics.snapshot() : null;
+    }
+
+    private static class ProvisionedTenant {
+        static final int DETACHED = -1;
+
+        final int tenantHandle;
+        final String tenantId;
+        //replaced while holding the tenant's monitor.
+        volatile TenantConfig config;
+        final TenantMetrics metrics;
+        //number of producers submitting a task, or with lazy work queues, DETACHED while the tenant
+        //has no work queue. Attaching and detaching is done while holding the tenant's monitor.
+        final AtomicInteger submitters;
+        volatile long lastSubmitTime;
+        //set while holding the tenant's monitor.
+        volatile boolean deProvisioned;
+        //null unless the tenant coalesces duplicates, replaced along with the config.
+        volatile CoalescingIndex coalescing;
+        final CompletableFuture<Void> removed = new CompletableFuture<>();
+
+        ProvisionedTenant(int tenantHandle, TenantConfig config, TenantMetrics metrics, boolean detached) {
+            this.tenantHandle = tenantHandle;
+            this.tenantId = config.getTenantId();
+            this.config = config;
+            this.metrics = metrics;
+            this.submitters = new AtomicInteger(detached ? DETACHED : 0);
+            this.coalescing = config.isCoalesceDuplicates() ? new CoalescingIndex() : null;
+        }
     }
 
     private static class MultiTenantWorkSchedulerFactory {
@@ -110,6 +1094,14 @@ public class MultiTenantWorkQueueManager {
                 return new FairQueueingWorkScheduler();
             else if (SchedulingStrategy.WEIGHTED_FAIR_QUEUEING.equals(strategy))
                 return new WeightedFairQueueingWorkScheduler();
+            else if (SchedulingStrategy.DEFICIT_ROUND_ROBIN.equals(strategy))
+                return new DeficitRoundRobinWorkScheduler();
+            else if (SchedulingStrategy.LOCK_FREE_FAIR_QUEUEING.equals(strategy))
+                return new LockFreeFairQueueingWorkScheduler();
+            else if (SchedulingStrategy.SHARDED_FAIR_QUEUEING.equals(strategy))
+                return new ShardedFairQueueingWorkScheduler();
+            else if (SchedulingStrategy.EARLIEST_DEADLINE_FIRST.equals(strategy))
+                return new EarliestDeadlineFirstWorkScheduler();
             return new FairQueueingWorkScheduler();
         }
     }
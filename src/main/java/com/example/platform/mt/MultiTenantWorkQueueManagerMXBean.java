@@ -0,0 +1,24 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.metrics.TenantMetricsSnapshot;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link MultiTenantWorkQueueManager}, which lets JMX clients pull the
+ * metrics of the queue manager, e.g., after registering it with
+ * {@code ManagementFactory.getPlatformMBeanServer().registerMBean(queueManager,
+ * new ObjectName("com.example.platform.mt:type=MultiTenantWorkQueueManager"))}.
+ */
+public interface MultiTenantWorkQueueManagerMXBean {
+    int getNoOfTenants();
+
+    int getNoOfTenantQueues();
+
+    @Deprecated
+    int getProcessedTasksCount();
+
+    long getProcessedTasksCountLong();
+
+    Map<String, TenantMetricsSnapshot> getTenantMetrics();
+}
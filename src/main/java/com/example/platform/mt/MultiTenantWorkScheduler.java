@@ -3,14 +3,19 @@ package com.example.platform.mt;
 import com.example.platform.mt.vo.TenantAwareTask;
 import com.example.platform.mt.vo.TenantConfig;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract class which represents a Work scheduler for multi-tenant servers/platforms.
  */
 public abstract class MultiTenantWorkScheduler {
     protected Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues;
+    protected TenantRegistry tenantRegistry;
+    protected int maxBatchSize = 1;
 
     /**
      * Initializes the work scheduler.
@@ -18,6 +23,74 @@ public abstract class MultiTenantWorkScheduler {
      */
     public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues) {
         this.tenantWorkQueues = tenantWorkQueues;
+        //a scheduler used without a queue manager registers its tenants itself.
+        if (tenantRegistry == null) {
+            tenantRegistry = new TenantRegistry();
+            for (String tenantId : tenantWorkQueues.keySet()) {
+                tenantRegistry.register(tenantId);
+            }
+        }
+    }
+
+    /**
+     * Initializes the work scheduler, for the scheduling algorithms which need the
+     * tenant configurations (e.g., tenant weights).
+     * @param tenantWorkQueues tenant specific work queues.
+     * @param tenantConfigs tenant configurations of the tenants owning the work queues.
+     */
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues,
+                           List<TenantConfig> tenantConfigs) {
+        initialize(tenantWorkQueues);
+    }
+
+    /**
+     * Initializes the work scheduler, with the tenant registry which gives out the tenant handles
+     * carried by the submitted tasks. The tenants are registered before they are provisioned to the
+     * scheduler, and unregistered after they are de-provisioned.
+     * @param tenantRegistry registry of the tenants owning the work queues.
+     * @param tenantWorkQueues tenant specific work queues.
+     * @param tenantConfigs tenant configurations of the tenants owning the work queues.
+     */
+    public void initialize(TenantRegistry tenantRegistry, Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues,
+                           List<TenantConfig> tenantConfigs) {
+        this.tenantRegistry = tenantRegistry;
+        initialize(tenantWorkQueues, tenantConfigs);
+    }
+
+    /**
+     * Sets the maximum number of tasks of a tenant which are handed out in one turn of the tenant,
+     * as a batch run by a single worker (see {@link com.example.platform.mt.vo.AbstractTask#runBatch(List)}).
+     * A task joins the batch of the task queued before it only if that one accepts it, see
+     * {@link com.example.platform.mt.vo.AbstractTask#canBatchWith(com.example.platform.mt.vo.AbstractTask)}.
+     * Each task of a batch is charged to the tenant as if it was handed out on its own. Scheduling
+     * algorithms which do not support batching hand out one task per turn. Must be set before the
+     * scheduler is initialized. Defaults to 1, i.e., no batching.
+     * @param maxBatchSize maximum number of tasks in a batch.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Returns whether the next task of the tenant can join the batch of the task being handed out.
+     * Acquiring the limits of the tenant for the next task is up to the caller.
+     * @param task the task being handed out.
+     * @param next the next task of the tenant, or null if it has none.
+     * @return true if the next task can join the batch.
+     */
+    protected boolean canJoinBatch(TenantAwareTask task, TenantAwareTask next) {
+        return next != null && task.getBatchSize() < maxBatchSize && task.getTask().canBatchWith(next.getTask());
+    }
+
+    /**
+     * Returns the handle of the tenant owning the task, which is looked up only if the task
+     * does not carry it, i.e., it was not submitted through a queue manager.
+     * @param task Tenant Task.
+     * @return the tenant handle, or {@link TenantRegistry#NO_HANDLE} if the tenant is not registered.
+     */
+    protected int getTenantHandle(TenantAwareTask task) {
+        int tenantHandle = task.getTenantHandle();
+        return tenantHandle != TenantRegistry.NO_HANDLE ? tenantHandle : tenantRegistry.getHandle(task.getTenantId());
     }
 
     /**
@@ -28,6 +101,43 @@ public abstract class MultiTenantWorkScheduler {
      */
     public abstract void add(TenantAwareTask task) throws InterruptedException;
 
+    /**
+     * Adds or schedules the specified task into the appropriate tenant work queue, if it can be
+     * done immediately without exceeding the capacity of the tenant work queue.
+     * @param task Tenant Task to be added or scheduled.
+     * @return true if the task was added, and false if the tenant work queue is full.
+     */
+    public abstract boolean offer(TenantAwareTask task);
+
+    /**
+     * Adds or schedules the specified task into the appropriate tenant work queue, waiting up to
+     * the specified wait time if necessary for space to become available.
+     * @param task Tenant Task to be added or scheduled.
+     * @param timeout how long to wait before giving up, in units of unit
+     * @param unit a TimeUnit determining how to interpret the timeout parameter
+     * @return true if the task was added, and false if the specified waiting time elapses before
+     * space is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public abstract boolean offer(TenantAwareTask task, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Adds the task to the system lane, whose tasks bypass tenant fairness, i.e., they are handed
+     * out before the tasks of any tenant, in the order they were added. The system lane is not
+     * bounded, so this never blocks.
+     * @param task task of the system lane.
+     */
+    public abstract void addSystemTask(TenantAwareTask task);
+
+    /**
+     * Removes the oldest task of the specified tenant which is waiting in its tenant work queue,
+     * to make space for a newer task. A task which is already scheduled to be handed out next
+     * may not be evicted, in which case a newer one is evicted instead, or none at all.
+     * @param tenantId tenant id of the tenant whose task is evicted.
+     * @return the evicted task, or null if no task could be evicted.
+     */
+    public abstract TenantAwareTask evictOldest(String tenantId);
+
     /**
      * Retrieves the prioritized taskDescription from among multiple tenant queues,
      * based on the scheduling algorithm, waiting if necessary until taskDescription becomes available.
@@ -36,18 +146,88 @@ public abstract class MultiTenantWorkScheduler {
      */
     public abstract TenantAwareTask remove() throws InterruptedException;
 
+    /**
+     * Retrieves the prioritized task from among multiple tenant queues, based on the scheduling
+     * algorithm, waiting up to the specified wait time if necessary for a task to become available.
+     * @param timeout how long to wait before giving up, in units of unit
+     * @param unit a TimeUnit determining how to interpret the timeout parameter
+     * @return Prioritized task, or null if the specified waiting time elapses before a task is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public abstract TenantAwareTask poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Retrieves up to maxTasks prioritized tasks from among multiple tenant queues, based on the
+     * scheduling algorithm, waiting if necessary until at least one task becomes available.
+     * Scheduling algorithms should override this to hand out the whole batch for a single
+     * round-trip, the default implementation hands out one task per call.
+     * @param maxTasks maximum number of tasks to be retrieved.
+     * @param sink collection to which the tasks are added, in the order they were scheduled.
+     * @return number of tasks added to the sink.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int remove(int maxTasks, Collection<? super TenantAwareTask> sink) throws InterruptedException {
+        sink.add(remove());
+        return 1;
+    }
+
+    /**
+     * Retrieves up to maxTasks prioritized tasks from among multiple tenant queues, based on the
+     * scheduling algorithm, without waiting, e.g., to fill up a batch once a task was taken.
+     * @param maxTasks maximum number of tasks to be retrieved.
+     * @param sink collection to which the tasks are added, in the order they were scheduled.
+     * @return number of tasks added to the sink, 0 if no task is available.
+     */
+    public abstract int poll(int maxTasks, Collection<? super TenantAwareTask> sink);
+
     /**
      * Provisions a new tenant to the work scheduler.
      * @param tenantConfig Tenant config for the new tenant.
      */
     public abstract void provisionTenant(TenantConfig tenantConfig);
 
+    /**
+     * Applies the changed configuration of a provisioned tenant, e.g., its weight, from the next
+     * scheduling decision on. The default implementation does nothing, for the scheduling
+     * algorithms which do not depend on the tenant configuration.
+     * @param tenantConfig new configuration of the tenant.
+     */
+    public void updateTenantConfig(TenantConfig tenantConfig) {
+    }
+
     /**
      * De-provisions the tenant with specified tenant id.
      * @param tenantId tenant id of the tenant to be de-provisioned.
      */
     public abstract void deProvisionTenant(String tenantId);
 
+    /**
+     * Removes all tasks of the tenant held by the scheduler, including a task already scheduled to
+     * be handed out next, in the order they were queued. Must only be called once producers have
+     * stopped submitting tasks of the tenant, and before the tenant is de-provisioned. A task which
+     * a worker is already taking may still be handed out. Scheduling algorithms which hold tasks
+     * outside the tenant work queues must override this.
+     * @param tenantId tenant id of the tenant whose tasks are removed.
+     * @param sink collection to which the removed tasks are added.
+     * @return number of tasks added to the sink.
+     */
+    public int drainTenant(String tenantId, Collection<? super TenantAwareTask> sink) {
+        BlockingQueue<TenantAwareTask> tenantWorkQueue = tenantWorkQueues.get(tenantId);
+        return tenantWorkQueue != null ? tenantWorkQueue.drainTo(sink) : 0;
+    }
+
+    /**
+     * Returns whether the scheduler holds any task of the tenant, including a task already
+     * scheduled to be handed out next. The work queue of a tenant is reclaimed only while this is
+     * false, see {@link com.example.platform.mt.vo.QueueManagerOptions#setIdleQueueTimeoutMillis(long)}.
+     * @param tenantId tenant id of the tenant.
+     * @return true if the scheduler holds a task of the tenant.
+     */
+    public boolean hasQueuedTasks(String tenantId) {
+        BlockingQueue<TenantAwareTask> tenantWorkQueue = tenantWorkQueues.get(tenantId);
+        return tenantWorkQueue != null && !tenantWorkQueue.isEmpty();
+    }
+
     /**
      * Returns the effective capacity of each tenant queue, when the current
      * scheduling algorithm is employed.
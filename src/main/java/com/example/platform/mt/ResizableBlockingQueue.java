@@ -0,0 +1,239 @@
+package com.example.platform.mt;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded blocking queue whose capacity can be changed while it is in use. The elements are held
+ * by a backing queue, and producers reserve a slot before they add an element, so that changing the
+ * capacity neither copies the queued elements nor blocks producers. When the capacity is lowered
+ * below the number of queued elements, producers wait until enough elements are taken.
+ * @param <E> type of the queued elements.
+ */
+public class ResizableBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final BlockingQueue<E> queue;
+    private final int maxCapacity;
+    private volatile int capacity;
+    //number of queued elements, including slots reserved by producers which are adding an element.
+    private final AtomicInteger count = new AtomicInteger();
+    private final ReentrantLock notFullLock = new ReentrantLock();
+    private final Condition notFull = notFullLock.newCondition();
+    //number of producers waiting for space, so that takers only signal when someone waits.
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    /**
+     * Creates a queue backed by the specified empty queue, whose own capacity bounds the capacity
+     * the queue can be resized to.
+     * @param queue empty backing queue.
+     * @param capacity initial capacity.
+     */
+    public ResizableBlockingQueue(BlockingQueue<E> queue, int capacity) {
+        if (!queue.isEmpty())
+            throw new IllegalArgumentException("Backing queue is not empty");
+        this.queue = queue;
+        this.maxCapacity = queue.remainingCapacity();
+        setCapacity(capacity);
+    }
+
+    /**
+     * Returns the current capacity of the queue.
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Changes the capacity of the queue. Elements queued beyond a lowered capacity are kept.
+     * @param capacity new capacity.
+     * @throws IllegalArgumentException if the capacity is not positive, or exceeds the capacity
+     * of the backing queue.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0 || capacity > maxCapacity)
+            throw new IllegalArgumentException("Capacity must be between 1 and "+maxCapacity+": "+capacity);
+        int oldCapacity = this.capacity;
+        this.capacity = capacity;
+        if (capacity > oldCapacity)
+            signalNotFull(true);
+    }
+
+    //reserves a slot for an element, unless the queue is full.
+    private boolean reserve() {
+        while (true) {
+            int c = count.get();
+            if (c >= capacity)
+                return false;
+            if (count.compareAndSet(c, c+1))
+                return true;
+        }
+    }
+
+    private void released(int n) {
+        count.addAndGet(-n);
+        if (waitingProducers.get() > 0)
+            signalNotFull(n > 1);
+    }
+
+    private void signalNotFull(boolean all) {
+        notFullLock.lock();
+        try {
+            if (all)
+                notFull.signalAll();
+            else
+                notFull.signal();
+        } finally {
+            notFullLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        if (!reserve())
+            return false;
+        //the backing queue has room for every reserved slot.
+        queue.offer(e);
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        if (e == null)
+            throw new NullPointerException();
+        if (!reserve())
+            awaitSlot(false, 0);
+        queue.offer(e);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null)
+            throw new NullPointerException();
+        if (!reserve() && !awaitSlot(true, unit.toNanos(timeout)))
+            return false;
+        queue.offer(e);
+        return true;
+    }
+
+    //waits until a slot is reserved, returns false only if timed and the wait time elapsed.
+    private boolean awaitSlot(boolean timed, long nanos) throws InterruptedException {
+        waitingProducers.incrementAndGet();
+        try {
+            notFullLock.lockInterruptibly();
+            try {
+                //the count is re-checked after registering as a waiter, so a take in between signals.
+                while (!reserve()) {
+                    if (!timed) {
+                        notFull.await();
+                    } else {
+                        if (nanos <= 0)
+                            return false;
+                        nanos = notFull.awaitNanos(nanos);
+                    }
+                }
+                //pass the signal on, in case another producer fits as well.
+                if (count.get() < capacity)
+                    notFull.signal();
+                return true;
+            } finally {
+                notFullLock.unlock();
+            }
+        } finally {
+            waitingProducers.decrementAndGet();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e = queue.take();
+        released(1);
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = queue.poll(timeout, unit);
+        if (e != null)
+            released(1);
+        return e;
+    }
+
+    @Override
+    public E poll() {
+        E e = queue.poll();
+        if (e != null)
+            released(1);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!queue.remove(o))
+            return false;
+        released(1);
+        return true;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Math.max(0, capacity - count.get());
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int n = queue.drainTo(c, maxElements);
+        if (n > 0)
+            released(n);
+        return n;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        Iterator<E> iterator = queue.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                released(1);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+}
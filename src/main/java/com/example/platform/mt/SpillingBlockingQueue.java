@@ -0,0 +1,417 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.journal.TaskJournal;
+import com.example.platform.mt.journal.TaskSerializer;
+import com.example.platform.mt.metrics.TenantMetrics;
+import com.example.platform.mt.trace.TraceRecorder;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.TaskPriority;
+import com.example.platform.mt.vo.TenantAwareTask;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unbounded work queue of a tenant, which keeps a bounded head of tasks in memory and spills the
+ * tasks beyond it to an append-only file, so that heap use stays bounded however many tasks the
+ * tenant queues. Spilled tasks are read back in order, with sequential reads, as the head drains
+ * below half its capacity, so schedulers see a single FIFO queue.
+ * <p>
+ * All tasks of the queue must belong to one tenant, as the tenant, its metrics and the journal of a
+ * spilled task are not written to the file, but taken over from the tasks spilled before it. Tasks
+ * are ordered by priority only while they are in the head. The spill file is deleted once all its
+ * tasks are read back, and spilled tasks which are not journaled are lost if the process stops.
+ * <p>
+ * Taking tasks from the queue never fails, as schedulers take them while holding their locks. If
+ * the spill file can not be read back, its tasks are discarded instead, counted as dropped in the
+ * metrics of the tenant and by {@link #getDiscarded()}. Journaled tasks among them are replayed from
+ * the journal after a restart, as they are not acknowledged.
+ * <p>
+ * Record layout: length of the rest of the record, priority, flags, deadline, submit time,
+ * sequence in the journal, serialized task.
+ */
+public class SpillingBlockingQueue extends AbstractQueue<TenantAwareTask> implements BlockingQueue<TenantAwareTask> {
+    private static final int BUFFER_SIZE = 64 << 10;
+    //priority, flags, deadline, submit time and journal sequence.
+    private static final int RECORD_HEADER_SIZE = 2 + 3*8;
+    private static final int HAS_DEADLINE = 1;
+    private static final int JOURNALED = 2;
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+
+    private final BlockingQueue<TenantAwareTask> head;
+    private final Path directory;
+    private final TaskSerializer serializer;
+    //guards the spill file and the following fields.
+    private final ReentrantLock lock = new ReentrantLock();
+    //number of tasks in the spill file, tasks are queued in the head only while it is 0.
+    private volatile int spilled;
+    private Path file;
+    private FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long writePosition;
+    //holds the records read from the file and not yet restored, in read mode.
+    private ByteBuffer readBuffer = emptyReadBuffer(BUFFER_SIZE);
+    private long readPosition;
+    //taken over from the spilled tasks, see the class comment.
+    private String tenantId;
+    private int tenantHandle;
+    private TenantMetrics metrics;
+    private TraceRecorder traceRecorder;
+    private TaskJournal journal;
+    //spilled tasks discarded as the spill file could not be read back.
+    private volatile long discarded;
+
+    /**
+     * Creates a queue which spills the tasks which do not fit into the head.
+     * @param head empty bounded queue, which holds the tasks in memory.
+     * @param directory directory of the spill file, created when the first task is spilled.
+     * @param serializer serializer of the spilled tasks.
+     */
+    public SpillingBlockingQueue(BlockingQueue<TenantAwareTask> head, Path directory, TaskSerializer serializer) {
+        if (!head.isEmpty())
+            throw new IllegalArgumentException("Head queue is not empty");
+        this.head = head;
+        this.directory = directory;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Returns the number of tasks in the spill file.
+     * @return the number of spilled tasks.
+     */
+    public int getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Returns the number of spilled tasks which were discarded, as the spill file could not be read
+     * back, see the class comment.
+     * @return the number of discarded tasks.
+     */
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * Changes the capacity of the head, if it can be resized.
+     * @param capacity new capacity.
+     * @throws IllegalArgumentException if the capacity can not be applied to the head.
+     */
+    public void setCapacity(int capacity) {
+        if (head instanceof ResizableBlockingQueue)
+            ((ResizableBlockingQueue<TenantAwareTask>) head).setCapacity(capacity);
+    }
+
+    /**
+     * Queues the task in the head, or spills it if the head is full.
+     * @param task the task.
+     * @return true, unless the task can not be serialized or written to the spill file.
+     */
+    @Override
+    public boolean offer(TenantAwareTask task) {
+        try {
+            enqueue(task);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Queues the task in the head, or spills it if the head is full. Never waits.
+     * @param task the task.
+     * @throws UncheckedIOException if the task can not be serialized or written to the spill file.
+     */
+    @Override
+    public void put(TenantAwareTask task) {
+        try {
+            enqueue(task);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task, long timeout, TimeUnit unit) {
+        return offer(task);
+    }
+
+    private void enqueue(TenantAwareTask task) throws IOException {
+        if (task == null)
+            throw new NullPointerException();
+        if (spilled == 0 && head.offer(task))
+            return;
+        byte[] taskBytes = serializer.serialize(task.getTask());
+        if (taskBytes == null)
+            throw new IOException("Task can not be spilled, it is not serialized: "+task);
+        lock.lock();
+        try {
+            //the head may have drained, or the spilled tasks been read back, meanwhile.
+            if (spilled == 0 && head.offer(task))
+                return;
+            spill(task, taskBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //must be called while holding the lock.
+    private void spill(TenantAwareTask task, byte[] taskBytes) throws IOException {
+        if (channel == null) {
+            Files.createDirectories(directory);
+            file = Files.createTempFile(directory, "tenant-", ".spill");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        int length = RECORD_HEADER_SIZE + taskBytes.length;
+        ByteBuffer record = writeBuffer;
+        if (writeBuffer.remaining() < 4 + length) {
+            flushWrites();
+            //a record larger than the buffer is written on its own.
+            if (writeBuffer.capacity() < 4 + length)
+                record = ByteBuffer.allocate(4 + length);
+        }
+        //the task is restored as a new task, which duplicates can not be coalesced with.
+        task.leaveCoalescingIndex();
+        TaskJournal journal = task.getJournal();
+        int flags = (task.hasDeadline() ? HAS_DEADLINE : 0) | (journal != null ? JOURNALED : 0);
+        record.putInt(length).put((byte) task.getPriority().ordinal()).put((byte) flags).putLong(task.getDeadline())
+            .putLong(task.getSubmitTime()).putLong(task.getJournalSequence()).put(taskBytes);
+        if (record != writeBuffer) {
+            record.flip();
+            write(record);
+        }
+        tenantId = task.getTenantId();
+        tenantHandle = task.getTenantHandle();
+        metrics = task.getMetrics();
+        traceRecorder = task.getTraceRecorder();
+        if (journal != null)
+            this.journal = journal;
+        spilled++;
+    }
+
+    //must be called while holding the lock.
+    private void flushWrites() throws IOException {
+        writeBuffer.flip();
+        write(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    //reads spilled tasks back into the head, once it is drained to half its capacity.
+    private void refillIfLow() {
+        if (spilled > 0 && head.size() <= head.remainingCapacity())
+            refill();
+    }
+
+    private void refill() {
+        lock.lock();
+        try {
+            //the callers check for spilled tasks without the lock, so another caller may have read
+            //back the last of them meanwhile.
+            if (spilled == 0)
+                return;
+            if (writeBuffer.position() > 0)
+                flushWrites();
+            while (spilled > 0 && head.remainingCapacity() > 0) {
+                int start = readBuffer.position();
+                TenantAwareTask task = readSpilled();
+                //a producer which saw no spilled tasks may have taken the room in the head meanwhile.
+                if (!head.offer(task)) {
+                    readBuffer.position(start);
+                    break;
+                }
+                spilled--;
+            }
+            if (spilled == 0)
+                closeSpillFile();
+        } catch (IOException e) {
+            discardSpilled();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //must be called while holding the lock. Drops the spilled tasks which can not be read back,
+    //rather than failing the scheduler which takes a task.
+    private void discardSpilled() {
+        discarded += spilled;
+        if (metrics != null) {
+            for (int i = 0; i < spilled; i++) {
+                metrics.recordDropped();
+            }
+        }
+        spilled = 0;
+        writeBuffer.clear();
+        try {
+            closeSpillFile();
+        } catch (IOException e) {
+            //the file is left behind, a new one is created for the next spilled task.
+            channel = null;
+            file = null;
+        }
+    }
+
+    //must be called while holding the lock, once no task is spilled.
+    private void closeSpillFile() throws IOException {
+        writePosition = 0;
+        readPosition = 0;
+        readBuffer = emptyReadBuffer(BUFFER_SIZE);
+        if (channel != null) {
+            FileChannel channel = this.channel;
+            this.channel = null;
+            channel.close();
+        }
+        if (file != null) {
+            Path file = this.file;
+            this.file = null;
+            Files.delete(file);
+        }
+    }
+
+    //must be called while holding the lock.
+    private TenantAwareTask readSpilled() throws IOException {
+        fill(4);
+        int length = readBuffer.getInt(readBuffer.position());
+        fill(4 + length);
+        int start = readBuffer.position();
+        TaskPriority priority = PRIORITIES[Math.min(readBuffer.get(start + 4), PRIORITIES.length - 1)];
+        int flags = readBuffer.get(start + 5);
+        long deadline = readBuffer.getLong(start + 6);
+        long submitTime = readBuffer.getLong(start + 14);
+        long journalSequence = readBuffer.getLong(start + 22);
+        ByteBuffer taskBytes = readBuffer.duplicate();
+        taskBytes.limit(start + 4 + length).position(start + 4 + RECORD_HEADER_SIZE);
+        AbstractTask actualTask = serializer.deserialize(taskBytes.slice().asReadOnlyBuffer());
+        readBuffer.position(start + 4 + length);
+
+        TenantAwareTask task = new TenantAwareTask(tenantId, tenantHandle, actualTask);
+        task.setPriority(priority);
+        if ((flags & HAS_DEADLINE) != 0)
+            task.setDeadline(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        task.markSubmitted(tenantHandle, metrics, traceRecorder, submitTime);
+        if ((flags & JOURNALED) != 0)
+            task.markJournaled(journal, journalSequence);
+        return task;
+    }
+
+    //makes sure the read buffer holds at least the bytes, reading from the file as needed.
+    private void fill(int bytes) throws IOException {
+        if (readBuffer.remaining() >= bytes)
+            return;
+        if (readBuffer.capacity() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(bytes);
+            larger.put(readBuffer);
+            readBuffer = larger;
+        } else {
+            readBuffer.compact();
+        }
+        while (readBuffer.position() < bytes) {
+            int read = channel.read(readBuffer, readPosition);
+            if (read <= 0)
+                throw new IOException("Spill file ends within a record");
+            readPosition += read;
+        }
+        readBuffer.flip();
+    }
+
+    private static ByteBuffer emptyReadBuffer(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.limit(0);
+        return buffer;
+    }
+
+    @Override
+    public TenantAwareTask poll() {
+        refillIfLow();
+        return head.poll();
+    }
+
+    @Override
+    public TenantAwareTask take() throws InterruptedException {
+        refillIfLow();
+        return head.take();
+    }
+
+    @Override
+    public TenantAwareTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        refillIfLow();
+        return head.poll(timeout, unit);
+    }
+
+    @Override
+    public TenantAwareTask peek() {
+        if (spilled > 0 && head.isEmpty())
+            refill();
+        return head.peek();
+    }
+
+    /**
+     * Removes the task, if it is in the head.
+     * @param o the task.
+     * @return true if the task was removed.
+     */
+    @Override
+    public boolean remove(Object o) {
+        return head.remove(o);
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super TenantAwareTask> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super TenantAwareTask> c, int maxElements) {
+        int drained = head.drainTo(c, maxElements);
+        while (drained < maxElements && spilled > 0) {
+            refill();
+            int n = head.drainTo(c, maxElements - drained);
+            if (n == 0)
+                break;
+            drained += n;
+        }
+        return drained;
+    }
+
+    /**
+     * Returns an iterator over the tasks in the head, i.e., without the spilled tasks.
+     * @return iterator over the tasks in the head.
+     */
+    @Override
+    public Iterator<TenantAwareTask> iterator() {
+        return head.iterator();
+    }
+
+    @Override
+    public int size() {
+        //spilled is read first, as a task read back is queued in the head before it is uncounted.
+        int spilled = this.spilled;
+        return spilled + head.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return spilled == 0 && head.isEmpty();
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.TenantConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rate limit and cap of in-flight tasks of a tenant, see {@link TenantConfig#setRateLimit(double)}
+ * and {@link TenantConfig#setMaxInFlight(int)}. The rate is enforced with a token bucket.
+ * <p>
+ * A scheduler asks the limiter before it hands out a task of the tenant. If the tenant is throttled,
+ * the scheduler parks the turn of the tenant instead of handing out the task, and the limiter resumes
+ * it once a token is refilled, on a shared {@link TimerWheel}, or once one of its running tasks
+ * completes. The scheduler does not look at a parked tenant in the meantime, so throttled tenants
+ * cost nothing while other tenants are served.
+ */
+public class TenantLimiter {
+    /**
+     * Returned by {@link #tryAcquire(long)} when the tenant waits for a running task to complete.
+     */
+    public static final long WAIT_FOR_COMPLETION = Long.MAX_VALUE;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Runnable resumeAction;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean parked = new AtomicBoolean();
+    //whether the parked tenant waits for a running task to complete, rather than for a token.
+    private volatile boolean waitingForCompletion;
+    private volatile int maxInFlight;
+    //following fields are guarded by this.
+    private double tokensPerNano;
+    private double burst;
+    private double tokens;
+    private long lastRefillTime;
+
+    /**
+     * Creates the limiter of a tenant.
+     * @param tenantConfig configuration of the tenant.
+     * @param resumeAction action of the scheduler which puts a parked tenant back in turn.
+     */
+    public TenantLimiter(TenantConfig tenantConfig, Runnable resumeAction) {
+        this.resumeAction = resumeAction;
+        update(tenantConfig);
+        this.tokens = burst;
+    }
+
+    /**
+     * Returns whether the tenant has a rate limit or a cap of in-flight tasks, i.e., whether its
+     * scheduler needs a limiter.
+     * @param tenantConfig configuration of the tenant.
+     * @return true if the tenant has limits.
+     */
+    public static boolean isLimited(TenantConfig tenantConfig) {
+        return tenantConfig.getRateLimit() > 0 || tenantConfig.getMaxInFlight() > 0;
+    }
+
+    /**
+     * Changes the limits to those of the configuration, and resumes the tenant if it is parked,
+     * so that the new limits apply to its next task.
+     * @param tenantConfig new configuration of the tenant.
+     */
+    public void update(TenantConfig tenantConfig) {
+        synchronized (this) {
+            double rateLimit = Math.max(0, tenantConfig.getRateLimit());
+            this.tokensPerNano = rateLimit / NANOS_PER_SECOND;
+            this.burst = tenantConfig.getBurst() > 0 ? tenantConfig.getBurst() : Math.max(1, Math.ceil(rateLimit));
+            this.tokens = Math.min(tokens, burst);
+        }
+        this.maxInFlight = Math.max(0, tenantConfig.getMaxInFlight());
+        resume();
+    }
+
+    /**
+     * Takes a token and an in-flight slot for a task about to be handed out, if the tenant is not
+     * throttled.
+     * @param now current {@link System#nanoTime()}.
+     * @return 0 if the task can be handed out, otherwise the nanoseconds until a token is refilled,
+     * or {@link #WAIT_FOR_COMPLETION}.
+     */
+    public synchronized long tryAcquire(long now) {
+        int maxInFlight = this.maxInFlight;
+        //a task completing meanwhile only frees a slot, so the check errs on the safe side.
+        if (maxInFlight > 0 && inFlight.get() >= maxInFlight)
+            return WAIT_FOR_COMPLETION;
+        if (tokensPerNano > 0) {
+            tokens = Math.min(burst, tokens + (now - lastRefillTime)*tokensPerNano);
+            lastRefillTime = now;
+            if (tokens < 1)
+                return Math.max(1, (long) Math.ceil((1 - tokens)/tokensPerNano));
+            tokens -= 1;
+        }
+        inFlight.incrementAndGet();
+        return 0;
+    }
+
+    /**
+     * Parks the turn of the tenant, after {@link #tryAcquire(long)} throttled it. The resume action
+     * runs once the tenant can be tried again.
+     * @param waitNanos the wait returned by {@link #tryAcquire(long)}.
+     */
+    public void park(long waitNanos) {
+        waitingForCompletion = waitNanos == WAIT_FOR_COMPLETION;
+        parked.set(true);
+        if (waitingForCompletion) {
+            //a task which completed before the tenant was parked did not resume it, so re-check.
+            if (inFlight.get() < maxInFlight || maxInFlight == 0)
+                resume();
+        } else {
+            TimerHolder.TIMER.schedule(this::resume, waitNanos);
+        }
+    }
+
+    /**
+     * Called when a task which was handed out completes, to free its in-flight slot.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        if (waitingForCompletion && parked.get())
+            resume();
+    }
+
+    /**
+     * Takes over the parked turn of the tenant without resuming it, e.g., to remove the tasks of the
+     * tenant when it is drained.
+     * @return true if the tenant was parked, in which case the caller owns its turn.
+     */
+    public boolean cancelPark() {
+        return parked.compareAndSet(true, false);
+    }
+
+    /**
+     * Returns whether the turn of the tenant is parked.
+     * @return true if the tenant is parked.
+     */
+    public boolean isParked() {
+        return parked.get();
+    }
+
+    /**
+     * Returns the number of tasks of the tenant handed out and not yet completed.
+     * @return the number of in-flight tasks.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void resume() {
+        if (parked.compareAndSet(true, false))
+            resumeAction.run();
+    }
+
+    //started when the first tenant is throttled.
+    private static class TimerHolder {
+        static final TimerWheel TIMER = new TimerWheel("tenant-limiter-timer", 1, TimeUnit.MILLISECONDS, 512);
+    }
+}
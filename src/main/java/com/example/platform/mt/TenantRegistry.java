@@ -0,0 +1,112 @@
+package com.example.platform.mt;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry which gives each provisioned tenant a dense int handle, so that per-tenant state can be
+ * kept in arrays indexed by the handle (see {@link TenantTable}), instead of maps keyed by tenant id.
+ * The tenant id is resolved to its handle once, when the task is submitted, and the task carries
+ * the handle from then on.
+ * <p>
+ * The index of a handle, i.e., its low bits, is reused once its tenant is unregistered, so that
+ * per-tenant tables grow with the number of tenants registered at a time, rather than all tenants
+ * ever registered. The high bits count how often the index was reused, so a tenant which is
+ * registered again gets a new handle, and a stale handle carried by a task of the unregistered
+ * tenant is never mistaken for the handle of another tenant (see {@link TenantTable}), unless
+ * the index is reused {@link #GENERATIONS} times meanwhile.
+ */
+public class TenantRegistry {
+    /**
+     * Handle of a tenant which is not registered.
+     */
+    public static final int NO_HANDLE = -1;
+
+    private static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    /**
+     * Number of times the index of a handle is reused before the handle repeats.
+     */
+    public static final int GENERATIONS = 1 << (31 - INDEX_BITS);
+
+    private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+    private final TenantTable<String> tenantIds = new TenantTable<>();
+    //following fields are guarded by this.
+    private int nextIndex;
+    //indexes of unregistered tenants, reused in the order they were freed.
+    private final ArrayDeque<Integer> freeIndexes = new ArrayDeque<>();
+    //times each index was reused, modulo GENERATIONS.
+    private int[] generations = new int[16];
+
+    /**
+     * Returns the index of the handle in the per-tenant tables.
+     * @param tenantHandle handle of a tenant.
+     * @return the index of the handle, below the number of tenants registered at a time.
+     */
+    public static int indexOf(int tenantHandle) {
+        return tenantHandle & INDEX_MASK;
+    }
+
+    /**
+     * Registers the tenant, unless it is already registered.
+     * @param tenantId tenant id of the tenant.
+     * @return the handle of the tenant.
+     */
+    public synchronized int register(String tenantId) {
+        Integer handle = handles.get(tenantId);
+        if (handle != null)
+            return handle;
+        int index;
+        if (!freeIndexes.isEmpty()) {
+            index = freeIndexes.poll();
+        } else {
+            if (nextIndex > INDEX_MASK)
+                throw new IllegalStateException("Too many tenants registered: "+nextIndex);
+            index = nextIndex++;
+            if (index >= generations.length)
+                generations = Arrays.copyOf(generations, 2*generations.length);
+        }
+        int newHandle = generations[index] << INDEX_BITS | index;
+        tenantIds.put(newHandle, tenantId);
+        handles.put(tenantId, newHandle);
+        return newHandle;
+    }
+
+    /**
+     * Unregisters the tenant, whose handle index is reused for the tenants registered later. Must be
+     * called only once the tenant is removed from the per-tenant tables.
+     * @param tenantId tenant id of the tenant.
+     * @return the handle the tenant had, or {@link #NO_HANDLE} if it was not registered.
+     */
+    public synchronized int unregister(String tenantId) {
+        Integer handle = handles.remove(tenantId);
+        if (handle == null)
+            return NO_HANDLE;
+        tenantIds.remove(handle);
+        int index = indexOf(handle);
+        generations[index] = (generations[index] + 1) % GENERATIONS;
+        freeIndexes.add(index);
+        return handle;
+    }
+
+    /**
+     * Returns the handle of the tenant.
+     * @param tenantId tenant id of the tenant.
+     * @return the handle of the tenant, or {@link #NO_HANDLE} if it is not registered.
+     */
+    public int getHandle(String tenantId) {
+        Integer handle = handles.get(tenantId);
+        return handle != null ? handle : NO_HANDLE;
+    }
+
+    /**
+     * Returns the tenant id of the tenant with the specified handle.
+     * @param tenantHandle handle of the tenant.
+     * @return the tenant id, or null if no registered tenant has the handle.
+     */
+    public String getTenantId(int tenantHandle) {
+        return tenantIds.get(tenantHandle);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.platform.mt;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Table of per-tenant values, indexed by the tenant handles of a {@link TenantRegistry}.
+ * Reading a value is a single array access. Writing one copies the array only when it has to
+ * grow, so that tenants can come and go without the cost depending on the number of tenants.
+ * Indexes are reused by the registry, so each slot keeps the handle its value was put with, and a
+ * stale handle of a removed tenant does not find the value of the tenant which reused its index.
+ * @param <T> type of the per-tenant values.
+ */
+public class TenantTable<T> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    //replaced only when the table grows, guarded by this.
+    private volatile AtomicReferenceArray<Entry<T>> entries = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /**
+     * Returns the value of the tenant with the specified handle.
+     * @param tenantHandle handle of the tenant, or {@link TenantRegistry#NO_HANDLE}.
+     * @return the value of the tenant, or null if there is none.
+     */
+    public T get(int tenantHandle) {
+        if (tenantHandle < 0)
+            return null;
+        AtomicReferenceArray<Entry<T>> entries = this.entries;
+        int index = TenantRegistry.indexOf(tenantHandle);
+        if (index >= entries.length())
+            return null;
+        Entry<T> entry = entries.get(index);
+        return entry != null && entry.tenantHandle == tenantHandle ? entry.value : null;
+    }
+
+    /**
+     * Sets the value of the tenant with the specified handle.
+     * @param tenantHandle handle of the tenant.
+     * @param value value of the tenant.
+     */
+    public synchronized void put(int tenantHandle, T value) {
+        if (tenantHandle < 0)
+            throw new IllegalArgumentException("Invalid tenant handle: "+tenantHandle);
+        AtomicReferenceArray<Entry<T>> entries = this.entries;
+        int index = TenantRegistry.indexOf(tenantHandle);
+        Entry<T> entry = new Entry<>(tenantHandle, value);
+        if (index >= entries.length()) {
+            int capacity = entries.length();
+            while (capacity <= index) {
+                capacity *= 2;
+            }
+            AtomicReferenceArray<Entry<T>> grown = new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < entries.length(); i++) {
+                grown.lazySet(i, entries.get(i));
+            }
+            grown.lazySet(index, entry);
+            this.entries = grown;
+            return;
+        }
+        entries.set(index, entry);
+    }
+
+    /**
+     * Removes the value of the tenant with the specified handle.
+     * @param tenantHandle handle of the tenant, or {@link TenantRegistry#NO_HANDLE}.
+     * @return the removed value, or null if there was none.
+     */
+    public synchronized T remove(int tenantHandle) {
+        if (tenantHandle < 0)
+            return null;
+        AtomicReferenceArray<Entry<T>> entries = this.entries;
+        int index = TenantRegistry.indexOf(tenantHandle);
+        if (index >= entries.length())
+            return null;
+        Entry<T> entry = entries.get(index);
+        if (entry == null || entry.tenantHandle != tenantHandle)
+            return null;
+        entries.set(index, null);
+        return entry.value;
+    }
+
+    private static class Entry<T> {
+        final int tenantHandle;
+        final T value;
+
+        Entry(int tenantHandle, T value) {
+            this.tenantHandle = tenantHandle;
+            this.value = value;
+        }
+    }
+}
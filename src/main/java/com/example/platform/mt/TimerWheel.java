@@ -0,0 +1,121 @@
+package com.example.platform.mt;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel, which runs scheduled tasks in a single daemon thread with a resolution of
+ * one tick. Scheduling a task is O(1) and does not lock, and the thread parks while no task is
+ * scheduled, so an idle wheel costs nothing. Tasks should be short, as they delay the next tick.
+ */
+public class TimerWheel {
+    private final long tickNanos;
+    private final int mask;
+    //buckets of timeouts by tick, accessed only by the timer thread.
+    private final ArrayDeque<Timeout>[] wheel;
+    //timeouts scheduled since the last tick, moved into the wheel by the timer thread.
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread thread;
+
+    /**
+     * Creates a timer wheel and starts its thread.
+     * @param name name of the timer thread.
+     * @param tick duration of a tick, in units of unit
+     * @param unit a TimeUnit determining how to interpret the tick parameter
+     * @param ticksPerWheel number of buckets, rounded up to a power of two.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(String name, long tick, TimeUnit unit, int ticksPerWheel) {
+        this.tickNanos = Math.max(1, unit.toNanos(tick));
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.mask = size - 1;
+        this.wheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.thread = new Thread(this::runTicks, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedules the task to run once the delay has elapsed, rounded up to the next tick.
+     * @param task task to run in the timer thread.
+     * @param delayNanos delay in nanoseconds.
+     */
+    public void schedule(Runnable task, long delayNanos) {
+        incoming.offer(new Timeout(task, System.nanoTime() + Math.max(0, delayNanos)));
+        //the timer thread parks only while there is no timeout.
+        if (pending.getAndIncrement() == 0)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Returns the number of scheduled tasks which have not run yet.
+     * @return the number of pending tasks.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void runTicks() {
+        long startTime = System.nanoTime();
+        long tick = 0;
+        while (true) {
+            if (pending.get() == 0) {
+                LockSupport.park(this);
+                //the wheel is empty, so the ticks missed while parked are skipped.
+                tick = (System.nanoTime() - startTime) / tickNanos;
+                continue;
+            }
+            long sleep;
+            while ((sleep = startTime + (tick + 1) * tickNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleep);
+            }
+            tick++;
+            Timeout timeout;
+            while ((timeout = incoming.poll()) != null) {
+                long deadlineTick = Math.max(tick, (timeout.deadline - startTime + tickNanos - 1) / tickNanos);
+                timeout.rounds = (deadlineTick - tick) / wheel.length;
+                wheel[(int) (deadlineTick & mask)].add(timeout);
+            }
+            expire(wheel[(int) (tick & mask)]);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket) {
+        for (Iterator<Timeout> iterator = bucket.iterator(); iterator.hasNext();) {
+            Timeout timeout = iterator.next();
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                continue;
+            }
+            iterator.remove();
+            pending.decrementAndGet();
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                //a failing task must not stop the timer.
+                Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+                handler.uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private static class Timeout {
+        final Runnable task;
+        final long deadline;
+        //number of times the wheel turns before the timeout expires.
+        long rounds;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.example.platform.mt.impl;
+
+import com.example.platform.mt.MultiTenantWorkScheduler;
+import com.example.platform.mt.TenantLimiter;
+import com.example.platform.mt.TenantTable;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Deficit round robin scheduler. Tenants with work take turns in round-robin order, and on each
+ * turn a tenant is credited with a quantum of (quantum * weight). The tenant is handed out tasks
+ * as long as its credit (deficit) covers the estimated cost of its head task
+ * (see {@link AbstractTask#getEstimatedCost()}), so tenants get worker time in proportion to their
+ * weights regardless of how heavy their individual tasks are. Add and remove are O(1), as long as
+ * the quantum is not much smaller than the cost of a typical task. Otherwise, the rounds it takes
+ * until the credit of a tenant covers its head task are credited at once, in O(active tenants).
+ * <p>
+ * A tenant throttled by its rate limit or its cap of in-flight tasks ends its turn and leaves the
+ * round until its {@link TenantLimiter} resumes it, so that it does not hold up the other tenants.
+ */
+public class DeficitRoundRobinWorkScheduler extends MultiTenantWorkScheduler {
+    //credit given to a tenant with weight 1 on each turn, in task cost units.
+    public static final long DEFAULT_QUANTUM = 10;
+
+    private final long quantum;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    //contains only the tenants which have work, in round-robin order, guarded by lock.
+    private final ArrayDeque<TenantState> activeTenants = new ArrayDeque<>();
+    //tasks of the system lane, handed out before any tenant task, guarded by lock.
+    private final ArrayDeque<TenantAwareTask> systemTasks = new ArrayDeque<>();
+
+    //tenant states by tenant handle.
+    private final TenantTable<TenantState> tenantStates = new TenantTable<>();
+
+    public DeficitRoundRobinWorkScheduler() {
+        this(DEFAULT_QUANTUM);
+    }
+
+    /**
+     * Creates a deficit round robin scheduler.
+     * @param quantum credit given to a tenant with weight 1 on each turn, in task cost units.
+     */
+    public DeficitRoundRobinWorkScheduler(long quantum) {
+        super();
+        if (quantum <= 0)
+            throw new IllegalArgumentException("quantum must be positive: "+quantum);
+        this.quantum = quantum;
+    }
+
+    @Override
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues,
+                           List<TenantConfig> tenantConfigs) {
+        super.initialize(tenantWorkQueues, tenantConfigs);
+        for (TenantConfig tenantConfig : tenantConfigs) {
+            provisionTenant(tenantConfig);
+        }
+    }
+
+    @Override
+    public void add(TenantAwareTask task) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        //put outside the lock, so that a full tenant queue blocks only its own producers.
+        state.queue.put(task);
+        activate(state);
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task) {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task))
+            return false;
+        activate(state);
+        return true;
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task, long timeout, TimeUnit unit) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task, timeout, unit))
+            return false;
+        activate(state);
+        return true;
+    }
+
+    @Override
+    public TenantAwareTask evictOldest(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return null;
+        lock.lock();
+        try {
+            TenantAwareTask task = state.queue.poll();
+            //an active tenant must have a task.
+            if (state.active && state.queue.isEmpty()) {
+                activeTenants.remove(state);
+                state.active = false;
+                state.throttled = false;
+                state.inTurn = false;
+                state.deficit = 0;
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTenant(String tenantId, Collection<? super TenantAwareTask> sink) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return 0;
+        lock.lock();
+        try {
+            int drained = state.queue.drainTo(sink);
+            if (state.active) {
+                activeTenants.remove(state);
+                state.active = false;
+                state.throttled = false;
+                state.inTurn = false;
+                state.deficit = 0;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addSystemTask(TenantAwareTask task) {
+        lock.lock();
+        try {
+            systemTasks.add(task);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //activates the tenant after a task was queued, unless it is already active.
+    private void activate(TenantState state) {
+        lock.lock();
+        try {
+            //the task may already have been handed out by a concurrent remove, hence the isEmpty check.
+            if (!state.active && !state.queue.isEmpty()) {
+                state.active = true;
+                activeTenants.addLast(state);
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public TenantAwareTask remove() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                while (activeTenants.isEmpty() && systemTasks.isEmpty()) {
+                    notEmpty.await();
+                }
+                TenantAwareTask task = dequeue();
+                if (task != null)
+                    return task;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public TenantAwareTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                while (activeTenants.isEmpty() && systemTasks.isEmpty()) {
+                    if (nanos <= 0)
+                        return null;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                TenantAwareTask task = dequeue();
+                if (task != null)
+                    return task;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remove(int maxTasks, Collection<? super TenantAwareTask> sink) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            int removed;
+            while ((removed = dequeue(maxTasks, sink)) == 0) {
+                notEmpty.await();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int poll(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        lock.lock();
+        try {
+            return dequeue(maxTasks, sink);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //must be called while holding the lock. Returns the number of tasks added to the sink, 0 if
+    //there is no task to hand out.
+    private int dequeue(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        int removed = 0;
+        while (removed < maxTasks && !(activeTenants.isEmpty() && systemTasks.isEmpty())) {
+            TenantAwareTask task = dequeue();
+            if (task != null) {
+                sink.add(task);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    //must be called while holding the lock, and only when there is a system task or an active
+    //tenant. Returns null if the tenant in turn is throttled, in which case it stays active but out
+    //of the round until it is resumed.
+    private TenantAwareTask dequeue() {
+        TenantAwareTask systemTask = systemTasks.poll();
+        if (systemTask != null)
+            return systemTask;
+        int turnsEnded = 0;
+        for (;;) {
+            TenantState state = activeTenants.peekFirst();
+            if (!state.inTurn) {
+                state.deficit += quantum*state.weight;
+                state.inTurn = true;
+            }
+            //tenant queues are polled only under the lock, so an active tenant has a task.
+            long cost = state.queue.peek().getEstimatedCost();
+            if (cost <= state.deficit) {
+                if (state.limiter != null) {
+                    long wait = state.limiter.tryAcquire(System.nanoTime());
+                    if (wait > 0) {
+                        //like an idle tenant, a throttled tenant must not accumulate credit.
+                        activeTenants.pollFirst();
+                        state.throttled = true;
+                        state.inTurn = false;
+                        state.deficit = 0;
+                        state.limiter.park(wait);
+                        return null;
+                    }
+                }
+                state.deficit -= cost;
+                TenantAwareTask task = state.queue.poll();
+                if (state.limiter != null)
+                    task.markDispatched(state.limiter);
+                //the batch takes the tasks the tenant would be handed out in the rest of its turn.
+                TenantAwareTask next;
+                while (canJoinBatch(task, next = state.queue.peek())
+                        && (cost = next.getEstimatedCost()) <= state.deficit) {
+                    if (state.limiter != null && state.limiter.tryAcquire(System.nanoTime()) > 0)
+                        break;
+                    state.deficit -= cost;
+                    state.queue.poll();
+                    if (state.limiter != null)
+                        next.markDispatched(state.limiter);
+                    task.addToBatch(next);
+                }
+                if (state.queue.isEmpty()) {
+                    //an idle tenant must not accumulate credit.
+                    activeTenants.pollFirst();
+                    state.active = false;
+                    state.inTurn = false;
+                    state.deficit = 0;
+                }
+                return task;
+            }
+            //left over credit is not enough for the head task, so this turn is over.
+            activeTenants.pollFirst();
+            state.inTurn = false;
+            activeTenants.addLast(state);
+            //after a whole round in which no head task was covered, the rounds it takes until one
+            //is covered are credited at once, rather than rotating through them.
+            if (++turnsEnded == activeTenants.size()) {
+                creditRounds();
+                turnsEnded = 0;
+            }
+        }
+    }
+
+    //must be called while holding the lock, with none of the active tenants in turn. Credits all
+    //active tenants but the last of the rounds they take to cover the cheapest head task, which is
+    //credited as they take their turns.
+    private void creditRounds() {
+        long rounds = Long.MAX_VALUE;
+        for (TenantState state : activeTenants) {
+            long credit = quantum*state.weight;
+            long missing = state.queue.peek().getEstimatedCost() - state.deficit;
+            rounds = Math.min(rounds, (missing + credit - 1)/credit);
+        }
+        if (rounds <= 1)
+            return;
+        for (TenantState state : activeTenants) {
+            state.deficit += (rounds - 1)*quantum*state.weight;
+        }
+    }
+
+    @Override
+    public void provisionTenant(TenantConfig tenantConfig) {
+        String tenantId = tenantConfig.getTenantId();
+        TenantState state = new TenantState(tenantWorkQueues.get(tenantId), tenantConfig.getWeight());
+        if (TenantLimiter.isLimited(tenantConfig))
+            state.limiter = new TenantLimiter(tenantConfig, () -> resume(state));
+        tenantStates.put(tenantRegistry.register(tenantId), state);
+    }
+
+    //the new weight is credited from the next turn of the tenant, and the new limits apply from
+    //the next task which is handed out.
+    @Override
+    public void updateTenantConfig(TenantConfig tenantConfig) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantConfig.getTenantId()));
+        if (state == null)
+            return;
+        TenantLimiter limiter;
+        lock.lock();
+        try {
+            state.weight = Math.max(1, tenantConfig.getWeight());
+            limiter = state.limiter;
+            if (limiter == null && TenantLimiter.isLimited(tenantConfig))
+                state.limiter = new TenantLimiter(tenantConfig, () -> resume(state));
+        } finally {
+            lock.unlock();
+        }
+        if (limiter != null)
+            limiter.update(tenantConfig);
+    }
+
+    //puts a throttled tenant back in the round once its limiter resumes it.
+    private void resume(TenantState state) {
+        lock.lock();
+        try {
+            if (!state.throttled)
+                return;
+            state.throttled = false;
+            activeTenants.addLast(state);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deProvisionTenant(String tenantId) {
+        TenantState state = tenantStates.remove(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return;
+        lock.lock();
+        try {
+            if (state.active) {
+                activeTenants.remove(state);
+                state.active = false;
+                state.throttled = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class TenantState {
+        final BlockingQueue<TenantAwareTask> queue;
+        //following fields are guarded by the scheduler lock.
+        int weight;
+        boolean active;
+        //whether the tenant is active but out of the round, until its limiter resumes it.
+        boolean throttled;
+        TenantLimiter limiter;
+        boolean inTurn;
+        long deficit;
+
+        TenantState(BlockingQueue<TenantAwareTask> queue, int weight) {
+            this.queue = queue;
+            this.weight = Math.max(1, weight);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.example.platform.mt.impl;
+
+import com.example.platform.mt.MultiTenantWorkScheduler;
+import com.example.platform.mt.TenantLimiter;
+import com.example.platform.mt.TenantTable;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Earliest deadline first scheduler, bounded by fairness. Tenants with work are ordered by the
+ * deadline of their head task (see {@link TenantAwareTask#setDeadline(long, TimeUnit)}), and the
+ * tenant whose head task is due first is served next. Tasks without a deadline go after those with
+ * one, in round-robin order of their tenants. So that tenants with urgent tasks can not starve the
+ * others, a tenant which has been passed over for a window of tasks handed out since its last turn
+ * is served next regardless of deadlines. Add and remove are O(log n), n being the number of
+ * tenants which currently have work.
+ * <p>
+ * Tasks of a tenant are still handed out in the order of its work queue, so a task with an earlier
+ * deadline does not overtake the tasks its own tenant queued before it.
+ */
+public class EarliestDeadlineFirstWorkScheduler extends MultiTenantWorkScheduler {
+    //number of tasks handed out, after which a passed over tenant is served regardless of deadlines.
+    public static final int DEFAULT_FAIRNESS_WINDOW = 16;
+
+    private static final Comparator<TenantState> DEADLINE_ORDER = (a, b) -> {
+        int cmp = Long.compare(a.deadline, b.deadline);
+        //ties, e.g., tasks without a deadline, are broken in the order tenants were queued.
+        return cmp != 0 ? cmp : Long.compare(a.sequence, b.sequence);
+    };
+
+    private final int fairnessWindow;
+    //deadlines are kept relative to this, so that they are ordered even if System.nanoTime() overflows.
+    private final long origin = System.nanoTime();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    //contains only the tenants which have work, by deadline, guarded by lock.
+    private final TreeSet<TenantState> readyTenants = new TreeSet<>(DEADLINE_ORDER);
+    //the same tenants in the order of their last turn, i.e., the first one waited longest, guarded by lock.
+    private final LinkedHashSet<TenantState> waitingTenants = new LinkedHashSet<>();
+    //tasks of the system lane, handed out before any tenant task, guarded by lock.
+    private final ArrayDeque<TenantAwareTask> systemTasks = new ArrayDeque<>();
+    //number of tasks handed out, guarded by lock.
+    private long dispatched;
+    private long sequence;
+
+    //tenant states by tenant handle.
+    private final TenantTable<TenantState> tenantStates = new TenantTable<>();
+
+    public EarliestDeadlineFirstWorkScheduler() {
+        this(DEFAULT_FAIRNESS_WINDOW);
+    }
+
+    /**
+     * Creates an earliest deadline first scheduler.
+     * @param fairnessWindow number of tasks handed out to other tenants, after which a tenant with
+     *                       work is served regardless of deadlines. 0 serves tenants round-robin.
+     */
+    public EarliestDeadlineFirstWorkScheduler(int fairnessWindow) {
+        super();
+        if (fairnessWindow < 0)
+            throw new IllegalArgumentException("fairnessWindow must not be negative: "+fairnessWindow);
+        this.fairnessWindow = fairnessWindow;
+    }
+
+    @Override
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues,
+                           List<TenantConfig> tenantConfigs) {
+        super.initialize(tenantWorkQueues, tenantConfigs);
+        for (TenantConfig tenantConfig : tenantConfigs) {
+            provisionTenant(tenantConfig);
+        }
+    }
+
+    @Override
+    public void add(TenantAwareTask task) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        //put outside the lock, so that a full tenant queue blocks only its own producers.
+        state.queue.put(task);
+        activate(state);
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task) {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task))
+            return false;
+        activate(state);
+        return true;
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task, long timeout, TimeUnit unit) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task, timeout, unit))
+            return false;
+        activate(state);
+        return true;
+    }
+
+    @Override
+    public void addSystemTask(TenantAwareTask task) {
+        lock.lock();
+        try {
+            systemTasks.add(task);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public TenantAwareTask evictOldest(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return null;
+        lock.lock();
+        try {
+            TenantAwareTask task = state.queue.poll();
+            //the head task of the tenant has changed, so it is ordered by the deadline of the next one.
+            if (state.active)
+                reschedule(state);
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTenant(String tenantId, Collection<? super TenantAwareTask> sink) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return 0;
+        lock.lock();
+        try {
+            int drained = state.queue.drainTo(sink);
+            deactivate(state);
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //activates the tenant after a task was queued, unless it is already active.
+    private void activate(TenantState state) {
+        lock.lock();
+        try {
+            //the task may already have been handed out by a concurrent remove, hence the isEmpty check.
+            if (!state.active && !state.queue.isEmpty()) {
+                state.active = true;
+                state.lastTurn = dispatched;
+                schedule(state);
+                notEmpty.signal();
+            } else if (state.active) {
+                //the task may have gone ahead of the head task, e.g., by its priority.
+                reschedule(state);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public TenantAwareTask remove() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                while (readyTenants.isEmpty() && systemTasks.isEmpty()) {
+                    notEmpty.await();
+                }
+                TenantAwareTask task = dequeue();
+                if (task != null)
+                    return task;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public TenantAwareTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                while (readyTenants.isEmpty() && systemTasks.isEmpty()) {
+                    if (nanos <= 0)
+                        return null;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                TenantAwareTask task = dequeue();
+                if (task != null)
+                    return task;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remove(int maxTasks, Collection<? super TenantAwareTask> sink) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            int removed;
+            while ((removed = dequeue(maxTasks, sink)) == 0) {
+                notEmpty.await();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int poll(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        lock.lock();
+        try {
+            return dequeue(maxTasks, sink);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //must be called while holding the lock. Returns the number of tasks added to the sink, 0 if
+    //there is no task to hand out.
+    private int dequeue(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        int removed = 0;
+        while (removed < maxTasks && !(readyTenants.isEmpty() && systemTasks.isEmpty())) {
+            TenantAwareTask task = dequeue();
+            if (task != null) {
+                sink.add(task);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    //must be called while holding the lock, and only when there is a system task or a ready tenant.
+    //Returns null if the tenant is throttled, in which case it stays active but out of turn until
+    //it is resumed.
+    private TenantAwareTask dequeue() {
+        TenantAwareTask systemTask = systemTasks.poll();
+        if (systemTask != null)
+            return systemTask;
+        TenantState state = waitingTenants.iterator().next();
+        if (dispatched - state.lastTurn < fairnessWindow)
+            state = readyTenants.first();
+        readyTenants.remove(state);
+        waitingTenants.remove(state);
+        if (state.limiter != null) {
+            long wait = state.limiter.tryAcquire(System.nanoTime());
+            if (wait > 0) {
+                state.throttled = true;
+                state.limiter.park(wait);
+                return null;
+            }
+        }
+        //tenant queues are polled only under the lock, so an active tenant has a task.
+        TenantAwareTask task = state.queue.poll();
+        if (state.limiter != null)
+            task.markDispatched(state.limiter);
+        dispatched++;
+        //every task of the batch counts towards the fairness window, as if handed out on its own.
+        TenantAwareTask next;
+        while (canJoinBatch(task, next = state.queue.peek())) {
+            if (state.limiter != null && state.limiter.tryAcquire(System.nanoTime()) > 0)
+                break;
+            state.queue.poll();
+            if (state.limiter != null)
+                next.markDispatched(state.limiter);
+            task.addToBatch(next);
+            dispatched++;
+        }
+        if (!state.queue.isEmpty()) {
+            state.lastTurn = dispatched;
+            schedule(state);
+        } else {
+            state.active = false;
+        }
+        return task;
+    }
+
+    //must be called while holding the lock, and only when tenant queue is not empty.
+    private void schedule(TenantState state) {
+        state.deadline = deadlineOf(state.queue.peek());
+        state.sequence = sequence++;
+        readyTenants.add(state);
+        waitingTenants.add(state);
+    }
+
+    //must be called while holding the lock, orders an active tenant by the deadline of its current
+    //head task, or deactivates it if it has none left. A throttled tenant is ordered once resumed.
+    private void reschedule(TenantState state) {
+        TenantAwareTask head = state.queue.peek();
+        if (head == null) {
+            deactivate(state);
+        } else if (!state.throttled && deadlineOf(head) != state.deadline) {
+            readyTenants.remove(state);
+            state.deadline = deadlineOf(head);
+            readyTenants.add(state);
+        }
+    }
+
+    //must be called while holding the lock.
+    private void deactivate(TenantState state) {
+        if (state.active) {
+            readyTenants.remove(state);
+            waitingTenants.remove(state);
+            state.active = false;
+            state.throttled = false;
+        }
+    }
+
+    private long deadlineOf(TenantAwareTask task) {
+        return task.hasDeadline() ? task.getDeadline() - origin : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void provisionTenant(TenantConfig tenantConfig) {
+        String tenantId = tenantConfig.getTenantId();
+        TenantState state = new TenantState(tenantWorkQueues.get(tenantId));
+        if (TenantLimiter.isLimited(tenantConfig))
+            state.limiter = new TenantLimiter(tenantConfig, () -> resume(state));
+        tenantStates.put(tenantRegistry.register(tenantId), state);
+    }
+
+    //the new limits apply from the next task which is handed out.
+    @Override
+    public void updateTenantConfig(TenantConfig tenantConfig) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantConfig.getTenantId()));
+        if (state == null)
+            return;
+        TenantLimiter limiter;
+        lock.lock();
+        try {
+            limiter = state.limiter;
+            if (limiter == null && TenantLimiter.isLimited(tenantConfig))
+                state.limiter = new TenantLimiter(tenantConfig, () -> resume(state));
+        } finally {
+            lock.unlock();
+        }
+        if (limiter != null)
+            limiter.update(tenantConfig);
+    }
+
+    //puts a throttled tenant back in turn once its limiter resumes it.
+    private void resume(TenantState state) {
+        lock.lock();
+        try {
+            if (!state.throttled)
+                return;
+            state.throttled = false;
+            state.lastTurn = dispatched;
+            schedule(state);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deProvisionTenant(String tenantId) {
+        TenantState state = tenantStates.remove(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return;
+        lock.lock();
+        try {
+            deactivate(state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class TenantState {
+        final BlockingQueue<TenantAwareTask> queue;
+        //following fields are guarded by the scheduler lock.
+        boolean active;
+        //whether the tenant is active but out of turn, until its limiter resumes it.
+        boolean throttled;
+        TenantLimiter limiter;
+        //deadline of the head task relative to the origin, the tenant is ordered by while it is ready.
+        long deadline;
+        long sequence;
+        //number of tasks handed out when the tenant last had its turn, or became ready.
+        long lastTurn;
+
+        TenantState(BlockingQueue<TenantAwareTask> queue) {
+            this.queue = queue;
+        }
+    }
+}
@@ -1,21 +1,36 @@
 package com.example.platform.mt.impl;
 
 import com.example.platform.mt.MultiTenantWorkScheduler;
+import com.example.platform.mt.TenantLimiter;
+import com.example.platform.mt.TenantTable;
 import com.example.platform.mt.vo.TenantAwareTask;
 import com.example.platform.mt.vo.TenantConfig;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FairQueueingWorkScheduler extends MultiTenantWorkScheduler {
+    //put in the fair queue for every task of the system lane, to wake up a worker.
+    private static final TenantAwareTask SYSTEM_LANE = new TenantAwareTask(null, null);
+
     //fair queue will be ordered in a fair way. i.e., it will contain only one
-    //taskDescription per tenant.
+    //taskDescription per tenant. It is unbounded, so head tasks are queued with offer, which
+    //can not be interrupted and lose the head task of a tenant.
     private BlockingQueue<TenantAwareTask> fairQueue;
+    //tasks of the system lane, which workers take before the fair queue.
+    private final ConcurrentLinkedQueue<TenantAwareTask> systemTasks = new ConcurrentLinkedQueue<>();
 
-    private Map<String, AtomicBoolean> tenantHasWork;
+    //tenant states by tenant handle.
+    private final TenantTable<TenantState> tenantStates = new TenantTable<>();
+    //reused by the batch remove and poll, to hand out the tasks of a batch without allocating.
+    private final ThreadLocal<List<TenantAwareTask>> dispatchedBatch = ThreadLocal.withInitial(ArrayList::new);
 
     public FairQueueingWorkScheduler() {
         super();
@@ -24,54 +39,344 @@ public class FairQueueingWorkScheduler extends MultiTenantWorkScheduler {
     @Override
     public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues) {
         super.initialize(tenantWorkQueues);
-        tenantHasWork = new ConcurrentHashMap<>(tenantWorkQueues.size()*2);
-        for (String tenantId : tenantWorkQueues.keySet()) {
-            tenantHasWork.put(tenantId, new AtomicBoolean(false));
+        for (Map.Entry<String, BlockingQueue<TenantAwareTask>> entry : tenantWorkQueues.entrySet()) {
+            tenantStates.put(tenantRegistry.getHandle(entry.getKey()), new TenantState(entry.getValue()));
         }
         //We could have bounded it by noOfTenants, but leaving as unbounded
         //in order to support provisioning and de-provisioning of tenants.
         fairQueue = new LinkedBlockingQueue<>();
     }
 
+    @Override
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues,
+                           List<TenantConfig> tenantConfigs) {
+        super.initialize(tenantWorkQueues, tenantConfigs);
+        for (TenantConfig tenantConfig : tenantConfigs) {
+            updateTenantConfig(tenantConfig);
+        }
+    }
+
     @Override
     public void add(TenantAwareTask task) throws InterruptedException {
-        String tenantId = task.getTenantId();
-        boolean tenantHadNoWork = tenantHasWork.get(tenantId).compareAndSet(false, true);
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        boolean tenantHadNoWork = state.hasWork.compareAndSet(false, true);
         //if value was swapped, means tenant had no work prior this, so add this taskDescription to fairQueue.
         if (tenantHadNoWork) {
-            fairQueue.put(task);
+            fairQueue.offer(task);
             return;
         }
-        tenantWorkQueues.get(tenantId).put(task);
+        state.queue.put(task);
+        scheduleQueuedTask(state);
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task) {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (state.hasWork.compareAndSet(false, true)) {
+            //fairQueue is unbounded, so the offer always succeeds.
+            return fairQueue.offer(task);
+        }
+        if (!state.queue.offer(task))
+            return false;
+        scheduleQueuedTask(state);
+        return true;
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task, long timeout, TimeUnit unit) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (state.hasWork.compareAndSet(false, true)) {
+            return fairQueue.offer(task);
+        }
+        if (!state.queue.offer(task, timeout, unit))
+            return false;
+        scheduleQueuedTask(state);
+        return true;
+    }
+
+    @Override
+    public void addSystemTask(TenantAwareTask task) {
+        systemTasks.offer(task);
+        fairQueue.offer(SYSTEM_LANE);
+    }
+
+    //the tenant may have run out of work after this producer saw it having work, in which case
+    //the task just queued is moved to the fair queue, so that it is not stranded.
+    private void scheduleQueuedTask(TenantState state) {
+        while (!state.queue.isEmpty() && state.hasWork.compareAndSet(false, true)) {
+            TenantAwareTask nextTask = state.queue.poll();
+            if (nextTask != null) {
+                fairQueue.offer(nextTask);
+                return;
+            }
+            state.hasWork.set(false);
+        }
+    }
+
+    /**
+     * Evicts the oldest task waiting in the tenant work queue. The head task of the tenant,
+     * which is already in the fair queue, is not evicted.
+     * @param tenantId tenant id of the tenant whose task is evicted.
+     * @return the evicted task, or null if the tenant has no task waiting behind its head task.
+     */
+    @Override
+    public TenantAwareTask evictOldest(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        return state != null ? state.queue.poll() : null;
+    }
+
+    /**
+     * Removes all tasks of the tenant, including its head task in the fair queue. The tenant is
+     * closed first, so that workers stop moving its tasks to the fair queue.
+     * @param tenantId tenant id of the tenant whose tasks are removed.
+     * @param sink collection to which the removed tasks are added.
+     * @return number of tasks added to the sink.
+     */
+    @Override
+    public int drainTenant(String tenantId, Collection<? super TenantAwareTask> sink) {
+        int tenantHandle = tenantRegistry.getHandle(tenantId);
+        TenantState state = tenantStates.get(tenantHandle);
+        if (state == null)
+            return 0;
+        state.closed = true;
+        int drained = 0;
+        //while the tenant has work, its head task is in the fair queue or parked, unless a worker
+        //has just taken it, in which case the worker clears hasWork as it sees the tenant closed.
+        while (state.hasWork.get()) {
+            List<TenantAwareTask> head = new ArrayList<>(1);
+            fairQueue.removeIf(task -> task != SYSTEM_LANE && getTenantHandle(task) == tenantHandle && head.add(task));
+            //the head task of a throttled tenant is parked, unless it is being put back meanwhile.
+            TenantLimiter limiter = state.limiter;
+            if (head.isEmpty() && limiter != null && limiter.cancelPark()) {
+                head.add(state.parkedTask);
+                state.parkedTask = null;
+            }
+            if (head.isEmpty()) {
+                Thread.yield();
+                continue;
+            }
+            sink.addAll(head);
+            drained++;
+            state.hasWork.set(false);
+        }
+        return drained + state.queue.drainTo(sink);
     }
 
     @Override
     public TenantAwareTask remove() throws InterruptedException {
-        TenantAwareTask removed = fairQueue.take();
-        //System.out.println(fairQueue);
-        //System.out.println(removed.getTenantId());
-        String tenantId = removed.getTenantId();
-        TenantAwareTask nextTask = tenantWorkQueues.get(tenantId).poll();
+        TenantAwareTask task = systemTasks.poll();
+        //the head task of a throttled tenant is parked, and the worker takes the next head task.
+        while (task == null) {
+            TenantAwareTask removed = fairQueue.take();
+            //System.out.println(fairQueue);
+            //System.out.println(removed.getTenantId());
+            task = dispatch(removed);
+        }
+        return task;
+    }
+
+    @Override
+    public TenantAwareTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        TenantAwareTask task = systemTasks.poll();
+        while (task == null) {
+            TenantAwareTask removed = fairQueue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (removed == null)
+                return null;
+            task = dispatch(removed);
+        }
+        return task;
+    }
+
+    @Override
+    public int remove(int maxTasks, Collection<? super TenantAwareTask> sink) throws InterruptedException {
+        if (maxTasks == 1) {
+            sink.add(remove());
+            return 1;
+        }
+        List<TenantAwareTask> removed = dispatchedBatch.get();
+        try {
+            while (dispatchAvailable(maxTasks, removed) == 0) {
+                //waits for a head task, the rest of the batch is filled with the head tasks queued by then.
+                TenantAwareTask task = dispatch(fairQueue.take());
+                if (task != null)
+                    removed.add(task);
+            }
+            sink.addAll(removed);
+            return removed.size();
+        } finally {
+            removed.clear();
+        }
+    }
+
+    @Override
+    public int poll(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        List<TenantAwareTask> removed = dispatchedBatch.get();
+        try {
+            dispatchAvailable(maxTasks, removed);
+            sink.addAll(removed);
+            return removed.size();
+        } finally {
+            removed.clear();
+        }
+    }
+
+    //adds the tasks which can be handed out without waiting to the tasks removed so far, up to
+    //maxTasks in all. Returns the number of tasks removed.
+    private int dispatchAvailable(int maxTasks, List<TenantAwareTask> removed) {
+        TenantAwareTask task;
+        while (removed.size() < maxTasks && (task = systemTasks.poll()) != null) {
+            removed.add(task);
+        }
+        int dispatched = removed.size();
+        //fairQueue holds one task per tenant, so a single drain hands out the tasks of different
+        //tenants in round-robin order.
+        while (dispatched < maxTasks && fairQueue.drainTo(removed, maxTasks-dispatched) > 0) {
+            int to = removed.size();
+            for (int i = dispatched; i < to; i++) {
+                if ((task = dispatch(removed.get(i))) != null)
+                    removed.set(dispatched++, task);
+            }
+            //the parked tasks of throttled tenants are dropped from the batch.
+            removed.subList(dispatched, to).clear();
+        }
+        return dispatched;
+    }
+
+    //hands out the head task of its tenant and schedules the next task of the tenant, unless the
+    //tenant is throttled, in which case the head task is parked until the tenant is resumed.
+    //Returns the task to be handed out, or null if there is none.
+    private TenantAwareTask dispatch(TenantAwareTask removed) {
+        //the task of the system lane may already have been taken ahead of the fair queue.
+        if (removed == SYSTEM_LANE)
+            return systemTasks.poll();
+        TenantState state = tenantStates.get(getTenantHandle(removed));
+        //the tenant has been de-provisioned.
+        if (state == null)
+            return removed;
+        //the tenant is being drained, which removes its remaining tasks.
+        if (state.closed) {
+            state.hasWork.set(false);
+            return removed;
+        }
+        //a tenant which was handed out a batch sits out a turn for every other task of the batch.
+        if (state.skippedTurns > 0) {
+            state.skippedTurns--;
+            fairQueue.offer(removed);
+            return null;
+        }
+        TenantLimiter limiter = state.limiter;
+        if (limiter != null) {
+            long wait = limiter.tryAcquire(System.nanoTime());
+            if (wait > 0) {
+                //the tenant keeps hasWork, so its producers keep queuing behind the parked task.
+                state.parkedTask = removed;
+                limiter.park(wait);
+                return null;
+            }
+            removed.markDispatched(limiter);
+        }
+        scheduleNextTask(state, batch(removed, state, limiter));
+        return removed;
+    }
+
+    //adds the next tasks of the tenant to the batch of the task handed out. Returns a task which
+    //was taken from the tenant queue but can not join the batch, or null if there is none.
+    private TenantAwareTask batch(TenantAwareTask task, TenantState state, TenantLimiter limiter) {
+        if (maxBatchSize == 1)
+            return null;
+        TenantAwareTask next;
+        //evictions poll the tenant queue concurrently, so the task polled is checked rather than a
+        //peeked one. A task which can not join becomes the next task of the tenant.
+        while ((next = state.queue.poll()) != null) {
+            if (!canJoinBatch(task, next) || (limiter != null && limiter.tryAcquire(System.nanoTime()) > 0))
+                return next;
+            if (limiter != null)
+                next.markDispatched(limiter);
+            task.addToBatch(next);
+            state.skippedTurns++;
+        }
+        return null;
+    }
+
+    //schedules the next task of the tenant whose task was handed out, which is the task taken for
+    //a batch which it could not join, if any.
+    private void scheduleNextTask(TenantState state, TenantAwareTask nextTask) {
+        if (nextTask == null)
+            nextTask = state.queue.poll();
         if (nextTask != null) {
-            fairQueue.put(nextTask);
+            fairQueue.offer(nextTask);
         } else {
-            tenantHasWork.get(tenantId).set(false);
+            state.hasWork.set(false);
+            //a producer which still saw the tenant having work may have queued a task meanwhile.
+            scheduleQueuedTask(state);
         }
-        return removed;
     }
 
     @Override
     public void provisionTenant(TenantConfig tenantConfig) {
-        tenantHasWork.put(tenantConfig.getTenantId(), new AtomicBoolean(false));
+        String tenantId = tenantConfig.getTenantId();
+        tenantStates.put(tenantRegistry.register(tenantId), new TenantState(tenantWorkQueues.get(tenantId)));
+        updateTenantConfig(tenantConfig);
+    }
+
+    /**
+     * Applies the rate limit and the cap of in-flight tasks of the tenant, from its next task on.
+     * @param tenantConfig new configuration of the tenant.
+     */
+    @Override
+    public void updateTenantConfig(TenantConfig tenantConfig) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantConfig.getTenantId()));
+        if (state == null)
+            return;
+        if (state.limiter != null) {
+            state.limiter.update(tenantConfig);
+        } else if (TenantLimiter.isLimited(tenantConfig)) {
+            state.limiter = new TenantLimiter(tenantConfig, () -> resume(state));
+        }
+    }
+
+    //puts the parked head task of a resumed tenant back in the fair queue.
+    private void resume(TenantState state) {
+        TenantAwareTask parkedTask = state.parkedTask;
+        state.parkedTask = null;
+        fairQueue.offer(parkedTask);
     }
 
     @Override
     public void deProvisionTenant(String tenantId) {
-        tenantHasWork.remove(tenantId);
+        tenantStates.remove(tenantRegistry.getHandle(tenantId));
+    }
+
+    //the head task of the tenant is in the fair queue while the tenant has work.
+    @Override
+    public boolean hasQueuedTasks(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        return state != null && (state.hasWork.get() || !state.queue.isEmpty());
     }
 
     @Override
     public int getEffectiveCapacity(int workCapacity) {
         return workCapacity-1;
     }
+
+    private static class TenantState {
+        final BlockingQueue<TenantAwareTask> queue;
+        //whether the tenant has a task in the fair queue.
+        final AtomicBoolean hasWork = new AtomicBoolean(false);
+        //set once the tenant is drained, see drainTenant.
+        volatile boolean closed;
+        //set once the tenant has limits, and kept from then on.
+        volatile TenantLimiter limiter;
+        //head task of the tenant while it is throttled, handed over by the limiter which parks
+        //and resumes the tenant.
+        volatile TenantAwareTask parkedTask;
+        //turns the tenant sits out for the batches it was handed out, only accessed by the worker
+        //handing out its head task.
+        int skippedTurns;
+
+        TenantState(BlockingQueue<TenantAwareTask> queue) {
+            this.queue = queue;
+        }
+    }
 }
@@ -0,0 +1,333 @@
+package com.example.platform.mt.impl;
+
+import com.example.platform.mt.MultiTenantWorkScheduler;
+import com.example.platform.mt.TenantLimiter;
+import com.example.platform.mt.TenantTable;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fair queueing scheduler which does not hand off tasks through a shared blocking queue.
+ * Tenants which have work are kept in a lock-free ready queue, with at most one entry per tenant,
+ * and workers take turns at tenants in round-robin order just like {@link FairQueueingWorkScheduler}.
+ * A per-tenant count of pending tasks decides which thread queues the tenant entry, so there is no
+ * lock shared by all producers or all workers. Idle workers spin for a short while and then park,
+ * they are unparked only when a tenant becomes ready. The entry of a tenant throttled by its
+ * {@link TenantLimiter} is held by the limiter, and put back in the ready queue once it resumes.
+ */
+public class LockFreeFairQueueingWorkScheduler extends MultiTenantWorkScheduler {
+    //number of times an idle worker polls the ready queue before parking.
+    private static final int SPIN_TRIES = 100;
+
+    //stands for the system lane, which workers take ahead of the ready tenants.
+    private static final TenantState SYSTEM_LANE = new TenantState(null);
+
+    //tenants with work, in round-robin order. Contains only one entry per tenant.
+    private final ConcurrentLinkedQueue<TenantState> readyTenants = new ConcurrentLinkedQueue<>();
+    //idle workers, which are parked or about to park.
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    //tasks of the system lane.
+    private final ConcurrentLinkedQueue<TenantAwareTask> systemTasks = new ConcurrentLinkedQueue<>();
+
+    //tenant states by tenant handle.
+    private final TenantTable<TenantState> tenantStates = new TenantTable<>();
+
+    public LockFreeFairQueueingWorkScheduler() {
+        super();
+    }
+
+    @Override
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues) {
+        super.initialize(tenantWorkQueues);
+        for (Map.Entry<String, BlockingQueue<TenantAwareTask>> entry : tenantWorkQueues.entrySet()) {
+            tenantStates.put(tenantRegistry.getHandle(entry.getKey()), new TenantState(entry.getValue()));
+        }
+    }
+
+    @Override
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues,
+                           List<TenantConfig> tenantConfigs) {
+        super.initialize(tenantWorkQueues, tenantConfigs);
+        for (TenantConfig tenantConfig : tenantConfigs) {
+            updateTenantConfig(tenantConfig);
+        }
+    }
+
+    @Override
+    public void add(TenantAwareTask task) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        state.queue.put(task);
+        taskQueued(state);
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task) {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task))
+            return false;
+        taskQueued(state);
+        return true;
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task, long timeout, TimeUnit unit) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task, timeout, unit))
+            return false;
+        taskQueued(state);
+        return true;
+    }
+
+    /**
+     * Evicts the oldest task queued by the tenant. The last task counted for the tenant is not
+     * evicted, because a worker might be about to take it.
+     * @param tenantId tenant id of the tenant whose task is evicted.
+     * @return the evicted task, or null if the tenant has less than two tasks queued.
+     */
+    @Override
+    public TenantAwareTask evictOldest(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return null;
+        while (true) {
+            int pending = state.pendingTasks.get();
+            if (pending < 2)
+                return null;
+            //uncounting the task first leaves at least one task for whoever holds the tenant entry.
+            if (state.pendingTasks.compareAndSet(pending, pending-1))
+                return state.queue.poll();
+        }
+    }
+
+    /**
+     * Removes all tasks of the tenant. The last task counted for the tenant is removed only once
+     * its entry is taken off the ready queue, or from its limiter while it is throttled, otherwise
+     * a worker is taking it.
+     * @param tenantId tenant id of the tenant whose tasks are removed.
+     * @param sink collection to which the removed tasks are added.
+     * @return number of tasks added to the sink.
+     */
+    @Override
+    public int drainTenant(String tenantId, Collection<? super TenantAwareTask> sink) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return 0;
+        int drained = 0;
+        while (true) {
+            int pending = state.pendingTasks.get();
+            if (pending == 0)
+                return drained;
+            if (pending > 1) {
+                if (state.pendingTasks.compareAndSet(pending, pending-1)) {
+                    sink.add(state.queue.poll());
+                    drained++;
+                }
+            } else if (readyTenants.remove(state) || state.limiter != null && state.limiter.cancelPark()) {
+                sink.add(state.queue.poll());
+                drained++;
+                //a producer which is still submitting may have counted another task meanwhile.
+                if (state.pendingTasks.decrementAndGet() > 0)
+                    readyTenants.offer(state);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void addSystemTask(TenantAwareTask task) {
+        systemTasks.offer(task);
+        signalWaiter();
+    }
+
+    //the task is counted only after it is queued, so whoever holds the tenant entry always
+    //finds at least as many tasks as were counted.
+    private void taskQueued(TenantState state) {
+        if (state.pendingTasks.getAndIncrement() == 0) {
+            readyTenants.offer(state);
+            signalWaiter();
+        }
+    }
+
+    @Override
+    public TenantAwareTask remove() throws InterruptedException {
+        TenantAwareTask task;
+        do {
+            task = dequeue(awaitReadyTenant(false, 0));
+        } while (task == null);
+        return task;
+    }
+
+    @Override
+    public TenantAwareTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            TenantState state = awaitReadyTenant(true, deadline - System.nanoTime());
+            if (state == null)
+                return null;
+            TenantAwareTask task = dequeue(state);
+            if (task != null)
+                return task;
+        }
+    }
+
+    @Override
+    public int remove(int maxTasks, Collection<? super TenantAwareTask> sink) throws InterruptedException {
+        TenantAwareTask task;
+        do {
+            task = dequeue(awaitReadyTenant(false, 0));
+        } while (task == null);
+        sink.add(task);
+        return 1 + poll(maxTasks - 1, sink);
+    }
+
+    @Override
+    public int poll(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        int removed = 0;
+        TenantState state;
+        TenantAwareTask task;
+        while (removed < maxTasks && (state = pollReadyTenant()) != null) {
+            if ((task = dequeue(state)) != null) {
+                sink.add(task);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    //the caller owns the tenant entry, which makes it the only consumer of the tenant queue apart from evictions.
+    //returns null if the tenant is throttled, in which case the entry is handed to its limiter.
+    private TenantAwareTask dequeue(TenantState state) {
+        //the task of the system lane may have been taken by another worker meanwhile.
+        if (state == SYSTEM_LANE)
+            return systemTasks.poll();
+        TenantLimiter limiter = state.limiter;
+        if (limiter != null) {
+            long wait = limiter.tryAcquire(System.nanoTime());
+            if (wait > 0) {
+                limiter.park(wait);
+                if (!readyTenants.isEmpty()) {
+                    signalWaiter();
+                }
+                return null;
+            }
+        }
+        TenantAwareTask task = state.queue.poll();
+        if (limiter != null)
+            task.markDispatched(limiter);
+        if (state.pendingTasks.decrementAndGet() > 0) {
+            readyTenants.offer(state);
+        }
+        //a waiter might have been unparked for the tenant this worker took, so pass the signal on.
+        if (!readyTenants.isEmpty()) {
+            signalWaiter();
+        }
+        return task;
+    }
+
+    private TenantState pollReadyTenant() {
+        return systemTasks.isEmpty() ? readyTenants.poll() : SYSTEM_LANE;
+    }
+
+    //returns null only if timed and the wait time elapsed.
+    private TenantState awaitReadyTenant(boolean timed, long nanos) throws InterruptedException {
+        TenantState state;
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            if ((state = pollReadyTenant()) != null)
+                return state;
+        }
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        Thread current = Thread.currentThread();
+        while (true) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (timed && (nanos = deadline - System.nanoTime()) <= 0)
+                return null;
+            waiters.offer(current);
+            //re-check after registering, a tenant might have become ready before the registration
+            //was visible to the producer.
+            state = pollReadyTenant();
+            if (state == null) {
+                if (timed)
+                    LockSupport.parkNanos(this, nanos);
+                else
+                    LockSupport.park(this);
+            }
+            waiters.remove(current);
+            if (state != null)
+                return state;
+            if ((state = pollReadyTenant()) != null)
+                return state;
+        }
+    }
+
+    private void signalWaiter() {
+        Thread waiter = waiters.poll();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    @Override
+    public void provisionTenant(TenantConfig tenantConfig) {
+        String tenantId = tenantConfig.getTenantId();
+        tenantStates.put(tenantRegistry.register(tenantId), new TenantState(tenantWorkQueues.get(tenantId)));
+        updateTenantConfig(tenantConfig);
+    }
+
+    /**
+     * Applies the rate limit and the cap of in-flight tasks of the tenant, from its next task on.
+     * @param tenantConfig new configuration of the tenant.
+     */
+    @Override
+    public void updateTenantConfig(TenantConfig tenantConfig) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantConfig.getTenantId()));
+        if (state == null)
+            return;
+        if (state.limiter != null) {
+            state.limiter.update(tenantConfig);
+        } else if (TenantLimiter.isLimited(tenantConfig)) {
+            state.limiter = new TenantLimiter(tenantConfig, () -> {
+                readyTenants.offer(state);
+                signalWaiter();
+            });
+        }
+    }
+
+    //a task is counted until it is handed out, even if a worker already holds the tenant entry.
+    @Override
+    public boolean hasQueuedTasks(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        return state != null && state.pendingTasks.get() > 0;
+    }
+
+    /**
+     * De-provisions the tenant. Tasks which the tenant had already queued are still handed out.
+     * @param tenantId tenant id of the tenant to be de-provisioned.
+     */
+    @Override
+    public void deProvisionTenant(String tenantId) {
+        tenantStates.remove(tenantRegistry.getHandle(tenantId));
+    }
+
+    private static class TenantState {
+        final BlockingQueue<TenantAwareTask> queue;
+        //number of tasks queued, the tenant has an entry in the ready queue when this is not zero.
+        final AtomicInteger pendingTasks = new AtomicInteger();
+        //set once the tenant has limits, and kept from then on.
+        volatile TenantLimiter limiter;
+
+        TenantState(BlockingQueue<TenantAwareTask> queue) {
+            this.queue = queue;
+        }
+    }
+}
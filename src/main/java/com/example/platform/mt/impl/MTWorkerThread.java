@@ -3,40 +3,56 @@ package com.example.platform.mt.impl;
 import com.example.platform.mt.MultiTenantWorkQueueManager;
 import com.example.platform.mt.vo.TenantAwareTask;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bare worker thread which runs the tasks of the queue manager, used by the tests/clients to
+ * demonstrate the scheduling order. It runs until interrupted, use {@link MultiTenantWorkerPool}
+ * for a pool of workers which can be resized and shut down.
+ */
 public class MTWorkerThread extends Thread {
 
     MultiTenantWorkQueueManager queueManager;
     int threadId;
+    int batchSize;
 
     public MTWorkerThread(MultiTenantWorkQueueManager queueManager, int threadId) {
+        this(queueManager, threadId, 1);
+    }
+
+    /**
+     * Creates a worker thread which takes up to batchSize tasks at a time from the queue manager.
+     * @param queueManager queue manager to take the tasks from.
+     * @param threadId id of this worker thread.
+     * @param batchSize maximum number of tasks taken in a single round-trip to the queue manager.
+     */
+    public MTWorkerThread(MultiTenantWorkQueueManager queueManager, int threadId, int batchSize) {
         this.queueManager = queueManager;
         this.threadId = threadId;
+        this.batchSize = batchSize;
         setName("Multi-tenant worker thread "+threadId);
-        System.out.println("Initialized "+getName());
     }
 
     @Override
     public void run() {
-        TenantAwareTask t = null;
+        List<TenantAwareTask> batch = new ArrayList<>(batchSize);
         try {
-            while ((t = queueManager.takeWork()) != null) {
-                //System.out.println("Processing "+t.getTenantId()+"-"+t.getTask().getDescription());
-                //this is just to check a testcase that when a new tenant is provisioned and
-                //when it submits a task, it doesn't have to wait behind all the previously
-                //submitted tasks from other tenants.
-                if (t.getTenantId().equals("tenantId:"+60)) {
-                    System.out.println("Processed at " + System.currentTimeMillis());
-                    System.out.println("Check the difference between submitted time and processed time " +
-                        "should not be more than a few ms. This confirms that when a new tenant is provisioned" +
-                        " and when it submits a task, it doesn't have to wait behind all the previously " +
-                        "submitted tasks from other tenants.");
+            while (true) {
+                queueManager.takeWork(batchSize, batch);
+                for (TenantAwareTask t : batch) {
+                    process(t);
                 }
-                //run the actual task
-                t.run();
+                batch.clear();
             }
         } catch (InterruptedException e) {
-            System.out.println(getName()+" was interrupted while fetching task "+e);
+            //interrupted while waiting for tasks, i.e., stopped.
         }
     }
-}
 
+    private void process(TenantAwareTask t) {
+        //run the actual task
+        t.run();
+        queueManager.recycle(t);
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.platform.mt.impl;
+
+import com.example.platform.mt.MultiTenantWorkQueueManager;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.WorkerEngine;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of workers which take tasks from a {@link MultiTenantWorkQueueManager} and run them.
+ * Unlike bare {@link MTWorkerThread}s, the pool can be resized while running and shut down
+ * either gracefully, after the queued tasks are drained, or immediately, leaving the queued
+ * tasks in the queue manager. Workers run on the selected {@link WorkerEngine}, or on an
+ * executor supplied by the client.
+ */
+public class MultiTenantWorkerPool {
+    //how long an idle worker waits for a task before checking whether it should exit.
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int SHUTDOWN = 2;
+    private static final int STOP = 3;
+    private static final int TERMINATED = 4;
+
+    private final MultiTenantWorkQueueManager queueManager;
+    private final Executor executor;
+    //executor created by this pool, which is shut down when the pool terminates.
+    private final ExecutorService ownedExecutor;
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger poolSize;
+    //workers which have been started and have not exited yet.
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private final Condition termination = mainLock.newCondition();
+    private volatile int state = NEW;
+
+    /**
+     * Creates a worker pool running workers on platform threads.
+     * @param queueManager queue manager to take the tasks from.
+     * @param poolSize number of workers.
+     */
+    public MultiTenantWorkerPool(MultiTenantWorkQueueManager queueManager, int poolSize) {
+        this(queueManager, poolSize, WorkerEngine.PLATFORM_THREADS);
+    }
+
+    /**
+     * Creates a worker pool running workers on the specified engine.
+     * @param queueManager queue manager to take the tasks from.
+     * @param poolSize number of workers.
+     * @param engine engine the workers run on.
+     * @throws UnsupportedOperationException if the engine is not supported by the running JVM.
+     */
+    public MultiTenantWorkerPool(MultiTenantWorkQueueManager queueManager, int poolSize, WorkerEngine engine) {
+        this(queueManager, poolSize, newExecutor(engine));
+    }
+
+    /**
+     * Creates a worker pool running each worker as a long running task of the specified executor.
+     * The executor must be able to run poolSize tasks concurrently.
+     * @param queueManager queue manager to take the tasks from.
+     * @param poolSize number of workers.
+     * @param executor executor the workers run on, it is not shut down by this pool.
+     */
+    public MultiTenantWorkerPool(MultiTenantWorkQueueManager queueManager, int poolSize, Executor executor) {
+        if (poolSize <= 0)
+            throw new IllegalArgumentException("poolSize must be positive: "+poolSize);
+        this.queueManager = queueManager;
+        this.poolSize = new AtomicInteger(poolSize);
+        this.executor = executor;
+        this.ownedExecutor = executor instanceof OwnedForkJoinPool ? (ExecutorService) executor : null;
+    }
+
+    private static Executor newExecutor(WorkerEngine engine) {
+        switch (engine) {
+            case FORK_JOIN_POOL:
+                return new OwnedForkJoinPool();
+            case VIRTUAL_THREADS:
+                return new ThreadPerWorkerExecutor(VirtualThreads.newThreadFactory("Multi-tenant virtual worker "));
+            default:
+                return new ThreadPerWorkerExecutor(new ThreadFactory() {
+                    private final AtomicInteger threadId = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "Multi-tenant worker thread "+threadId.getAndIncrement());
+                    }
+                });
+        }
+    }
+
+    /**
+     * Starts the workers.
+     * @throws IllegalStateException if the pool was already started.
+     */
+    public void start() {
+        mainLock.lock();
+        try {
+            if (state != NEW)
+                throw new IllegalStateException("Worker pool was already started");
+            state = RUNNING;
+            addWorkers();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Changes the number of workers. New workers are started right away, while surplus workers
+     * exit after finishing the task they are running.
+     * @param newPoolSize new number of workers.
+     */
+    public void setPoolSize(int newPoolSize) {
+        if (newPoolSize <= 0)
+            throw new IllegalArgumentException("poolSize must be positive: "+newPoolSize);
+        mainLock.lock();
+        try {
+            poolSize.set(newPoolSize);
+            if (state == RUNNING)
+                addWorkers();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the configured number of workers.
+     * @return the configured number of workers.
+     */
+    public int getPoolSize() {
+        return poolSize.get();
+    }
+
+    /**
+     * Returns the number of workers which are running, which lags behind the pool size for a
+     * while after it is reduced.
+     * @return the number of workers which are running.
+     */
+    public int getLiveWorkerCount() {
+        return liveWorkers.get();
+    }
+
+    /**
+     * Initiates a graceful shutdown. Workers keep taking tasks until the queue manager has
+     * no more queued tasks, including tasks held back by the limits of their tenants, and then exit.
+     */
+    public void shutdown() {
+        mainLock.lock();
+        try {
+            if (state < SHUTDOWN)
+                state = SHUTDOWN;
+            tryTerminate();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Shuts down immediately. Workers are interrupted, and exit once the task they are running
+     * returns. Tasks still queued stay in the queue manager, e.g., to be taken by another pool.
+     */
+    public void shutdownNow() {
+        mainLock.lock();
+        try {
+            if (state < STOP)
+                state = STOP;
+            for (Worker worker : workers) {
+                worker.interruptIfRunning();
+            }
+            tryTerminate();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Returns whether the pool was shut down.
+     * @return true if {@link #shutdown()} or {@link #shutdownNow()} was called.
+     */
+    public boolean isShutdown() {
+        return state >= SHUTDOWN;
+    }
+
+    /**
+     * Returns whether all workers exited after a shutdown.
+     * @return true if the pool is terminated.
+     */
+    public boolean isTerminated() {
+        return state == TERMINATED;
+    }
+
+    /**
+     * Blocks until all workers exited after a shutdown, or the timeout elapses.
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return true if the pool terminated and false if the timeout elapsed before termination
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        mainLock.lock();
+        try {
+            while (state != TERMINATED) {
+                if (nanos <= 0)
+                    return false;
+                nanos = termination.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    //must be called while holding mainLock.
+    private void addWorkers() {
+        while (liveWorkers.get() < poolSize.get()) {
+            Worker worker = new Worker();
+            liveWorkers.incrementAndGet();
+            workers.add(worker);
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                workers.remove(worker);
+                liveWorkers.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    private void workerExited(Worker worker) {
+        mainLock.lock();
+        try {
+            workers.remove(worker);
+            tryTerminate();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    //must be called while holding mainLock.
+    private void tryTerminate() {
+        if (state < SHUTDOWN || state == TERMINATED || liveWorkers.get() > 0)
+            return;
+        state = TERMINATED;
+        if (ownedExecutor != null)
+            ownedExecutor.shutdown();
+        termination.signalAll();
+    }
+
+    //worker exits when the pool has more live workers than its size.
+    private boolean retire() {
+        int live = liveWorkers.get();
+        return live > poolSize.get() && liveWorkers.compareAndSet(live, live-1);
+    }
+
+    private class Worker implements Runnable, ForkJoinPool.ManagedBlocker {
+        private Thread thread;
+        private TenantAwareTask polled;
+
+        @Override
+        public void run() {
+            Thread current = Thread.currentThread();
+            synchronized (this) {
+                thread = current;
+            }
+            boolean retired = false;
+            try {
+                while (state < STOP) {
+                    if (retire()) {
+                        retired = true;
+                        break;
+                    }
+                    try {
+                        //lets a fork join pool add a spare thread while this worker is blocked.
+                        ForkJoinPool.managedBlock(this);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    TenantAwareTask task = polled;
+                    polled = null;
+                    if (task == null) {
+                        //tasks held back by the limits of their tenant are still run before exiting.
+                        if (state >= SHUTDOWN && !queueManager.hasQueuedTasks())
+                            break;
+                        continue;
+                    }
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        current.getUncaughtExceptionHandler().uncaughtException(current, t);
+                    }
+                    queueManager.recycle(task);
+                }
+            } finally {
+                synchronized (this) {
+                    thread = null;
+                    //do not leak the interrupt of shutdownNow to the executor.
+                    Thread.interrupted();
+                }
+                if (!retired)
+                    liveWorkers.decrementAndGet();
+                workerExited(this);
+            }
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            polled = queueManager.pollWork(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return false;
+        }
+
+        synchronized void interruptIfRunning() {
+            if (thread != null)
+                thread.interrupt();
+        }
+    }
+
+    private static class ThreadPerWorkerExecutor implements Executor {
+        private final ThreadFactory threadFactory;
+
+        ThreadPerWorkerExecutor(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+        }
+
+        @Override
+        public void execute(Runnable worker) {
+            threadFactory.newThread(worker).start();
+        }
+    }
+
+    private static class OwnedForkJoinPool extends ForkJoinPool {
+        OwnedForkJoinPool() {
+            super(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
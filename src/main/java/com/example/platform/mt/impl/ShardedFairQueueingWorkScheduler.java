@@ -0,0 +1,392 @@
+package com.example.platform.mt.impl;
+
+import com.example.platform.mt.MultiTenantWorkScheduler;
+import com.example.platform.mt.TenantLimiter;
+import com.example.platform.mt.TenantTable;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fair queueing scheduler which splits tenants across a number of shards, each with its own
+ * ready queue of tenants, so that workers do not all contend on a single queue. Every worker
+ * thread is bound to a home shard, and takes tenants from it in round-robin order. When its home
+ * shard has no ready tenants, the worker steals ready tenants from the other shards, so no worker
+ * idles while there is work. Tenants and workers are spread evenly across shards, so as long as
+ * there are at least as many workers as shards, tenants get a fair share across shards too.
+ * The entry of a tenant throttled by its {@link TenantLimiter} is held by the limiter, and put back
+ * in the ready queue of its shard once it resumes.
+ */
+public class ShardedFairQueueingWorkScheduler extends MultiTenantWorkScheduler {
+    //number of times an idle worker scans the shards before parking.
+    private static final int SPIN_TRIES = 100;
+    //stands for the system lane in place of a ready tenant.
+    private static final TenantState SYSTEM_LANE = new TenantState(null, null);
+
+    private final Shard[] shards;
+    //used to spread tenants and workers evenly across shards.
+    private final AtomicInteger nextTenantShard = new AtomicInteger();
+    private final AtomicInteger nextWorkerShard = new AtomicInteger();
+    private final ThreadLocal<Integer> homeShard;
+    //tasks of the system lane, which workers take ahead of the ready tenants of any shard.
+    private final ConcurrentLinkedQueue<TenantAwareTask> systemTasks = new ConcurrentLinkedQueue<>();
+    //number of parked (or about to park) workers, checked before looking for a worker to unpark.
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+
+    //tenant states by tenant handle.
+    private final TenantTable<TenantState> tenantStates = new TenantTable<>();
+
+    public ShardedFairQueueingWorkScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a sharded fair queueing scheduler.
+     * @param noOfShards number of shards, typically one per group of workers sharing a core or socket.
+     */
+    public ShardedFairQueueingWorkScheduler(int noOfShards) {
+        super();
+        if (noOfShards <= 0)
+            throw new IllegalArgumentException("noOfShards must be positive: "+noOfShards);
+        shards = new Shard[noOfShards];
+        for (int i = 0; i < noOfShards; i++) {
+            shards[i] = new Shard();
+        }
+        homeShard = ThreadLocal.withInitial(() -> Math.floorMod(nextWorkerShard.getAndIncrement(), shards.length));
+    }
+
+    @Override
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues) {
+        super.initialize(tenantWorkQueues);
+        for (Map.Entry<String, BlockingQueue<TenantAwareTask>> entry : tenantWorkQueues.entrySet()) {
+            tenantStates.put(tenantRegistry.getHandle(entry.getKey()), newTenantState(entry.getValue()));
+        }
+    }
+
+    @Override
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues,
+                           List<TenantConfig> tenantConfigs) {
+        super.initialize(tenantWorkQueues, tenantConfigs);
+        for (TenantConfig tenantConfig : tenantConfigs) {
+            updateTenantConfig(tenantConfig);
+        }
+    }
+
+    @Override
+    public void add(TenantAwareTask task) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        state.queue.put(task);
+        taskQueued(state);
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task) {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task))
+            return false;
+        taskQueued(state);
+        return true;
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task, long timeout, TimeUnit unit) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task, timeout, unit))
+            return false;
+        taskQueued(state);
+        return true;
+    }
+
+    /**
+     * Evicts the oldest task queued by the tenant. The last task counted for the tenant is not
+     * evicted, because a worker might be about to take it.
+     * @param tenantId tenant id of the tenant whose task is evicted.
+     * @return the evicted task, or null if the tenant has less than two tasks queued.
+     */
+    @Override
+    public TenantAwareTask evictOldest(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return null;
+        while (true) {
+            int pending = state.pendingTasks.get();
+            if (pending < 2)
+                return null;
+            //uncounting the task first leaves at least one task for whoever holds the tenant entry.
+            if (state.pendingTasks.compareAndSet(pending, pending-1))
+                return state.queue.poll();
+        }
+    }
+
+    /**
+     * Removes all tasks of the tenant. The last task counted for the tenant is removed only once
+     * its entry is taken off the ready queue, or from its limiter while it is throttled, otherwise
+     * a worker is taking it.
+     * @param tenantId tenant id of the tenant whose tasks are removed.
+     * @param sink collection to which the removed tasks are added.
+     * @return number of tasks added to the sink.
+     */
+    @Override
+    public int drainTenant(String tenantId, Collection<? super TenantAwareTask> sink) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return 0;
+        int drained = 0;
+        while (true) {
+            int pending = state.pendingTasks.get();
+            if (pending == 0)
+                return drained;
+            if (pending > 1) {
+                if (state.pendingTasks.compareAndSet(pending, pending-1)) {
+                    sink.add(state.queue.poll());
+                    drained++;
+                }
+            } else if (state.shard.readyTenants.remove(state) || state.limiter != null && state.limiter.cancelPark()) {
+                sink.add(state.queue.poll());
+                drained++;
+                //a producer which is still submitting may have counted another task meanwhile.
+                if (state.pendingTasks.decrementAndGet() > 0)
+                    state.shard.readyTenants.offer(state);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void addSystemTask(TenantAwareTask task) {
+        systemTasks.offer(task);
+        signalWaiter(shards[0]);
+    }
+
+    //the task is counted only after it is queued, so whoever holds the tenant entry always
+    //finds at least as many tasks as were counted.
+    private void taskQueued(TenantState state) {
+        if (state.pendingTasks.getAndIncrement() == 0) {
+            state.shard.readyTenants.offer(state);
+            signalWaiter(state.shard);
+        }
+    }
+
+    @Override
+    public TenantAwareTask remove() throws InterruptedException {
+        TenantAwareTask task;
+        do {
+            task = dequeue(awaitReadyTenant(false, 0));
+        } while (task == null);
+        return task;
+    }
+
+    @Override
+    public TenantAwareTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            TenantState state = awaitReadyTenant(true, deadline - System.nanoTime());
+            if (state == null)
+                return null;
+            TenantAwareTask task = dequeue(state);
+            if (task != null)
+                return task;
+        }
+    }
+
+    @Override
+    public int remove(int maxTasks, Collection<? super TenantAwareTask> sink) throws InterruptedException {
+        TenantAwareTask task;
+        do {
+            task = dequeue(awaitReadyTenant(false, 0));
+        } while (task == null);
+        sink.add(task);
+        return 1 + poll(maxTasks - 1, sink);
+    }
+
+    @Override
+    public int poll(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        int home = homeShard.get();
+        int removed = 0;
+        TenantState state;
+        TenantAwareTask task;
+        while (removed < maxTasks && (state = pollReadyTenant(home)) != null) {
+            if ((task = dequeue(state)) != null) {
+                sink.add(task);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    //the caller owns the tenant entry, which makes it the only consumer of the tenant queue apart from evictions.
+    //returns null if the tenant is throttled, in which case the entry is handed to its limiter.
+    private TenantAwareTask dequeue(TenantState state) {
+        //the task of the system lane may have been taken by another worker meanwhile.
+        if (state == SYSTEM_LANE)
+            return systemTasks.poll();
+        TenantAwareTask task = null;
+        TenantLimiter limiter = state.limiter;
+        long wait = limiter != null ? limiter.tryAcquire(System.nanoTime()) : 0;
+        if (wait > 0) {
+            limiter.park(wait);
+        } else {
+            task = state.queue.poll();
+            if (limiter != null)
+                task.markDispatched(limiter);
+            if (state.pendingTasks.decrementAndGet() > 0) {
+                state.shard.readyTenants.offer(state);
+            }
+        }
+        //a waiter might have been unparked for the tenant this worker took, so pass the signal on.
+        if (idleWorkers.get() > 0) {
+            for (Shard shard : shards) {
+                if (!shard.readyTenants.isEmpty()) {
+                    signalWaiter(shard);
+                    break;
+                }
+            }
+        }
+        return task;
+    }
+
+    //polls the home shard first, and steals from the other shards when it has no ready tenants.
+    private TenantState pollReadyTenant(int home) {
+        if (!systemTasks.isEmpty())
+            return SYSTEM_LANE;
+        for (int i = 0; i < shards.length; i++) {
+            TenantState state = shards[(home + i) % shards.length].readyTenants.poll();
+            if (state != null)
+                return state;
+        }
+        return null;
+    }
+
+    //returns null only if timed and the wait time elapsed.
+    private TenantState awaitReadyTenant(boolean timed, long nanos) throws InterruptedException {
+        int home = homeShard.get();
+        TenantState state;
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            if ((state = pollReadyTenant(home)) != null)
+                return state;
+        }
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        Thread current = Thread.currentThread();
+        Shard shard = shards[home];
+        while (true) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (timed && (nanos = deadline - System.nanoTime()) <= 0)
+                return null;
+            shard.waiters.offer(current);
+            idleWorkers.incrementAndGet();
+            //re-check after registering, a tenant might have become ready before the registration
+            //was visible to the producer.
+            state = pollReadyTenant(home);
+            if (state == null) {
+                if (timed)
+                    LockSupport.parkNanos(this, nanos);
+                else
+                    LockSupport.park(this);
+            }
+            shard.waiters.remove(current);
+            idleWorkers.decrementAndGet();
+            if (state != null)
+                return state;
+            if ((state = pollReadyTenant(home)) != null)
+                return state;
+        }
+    }
+
+    //unparks a worker of the given shard, or a worker of any other shard which can steal the work.
+    private void signalWaiter(Shard preferred) {
+        if (idleWorkers.get() == 0)
+            return;
+        Thread waiter = preferred.waiters.poll();
+        for (int i = 0; waiter == null && i < shards.length; i++) {
+            waiter = shards[i].waiters.poll();
+        }
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private TenantState newTenantState(BlockingQueue<TenantAwareTask> queue) {
+        return new TenantState(queue, shards[Math.floorMod(nextTenantShard.getAndIncrement(), shards.length)]);
+    }
+
+    @Override
+    public void provisionTenant(TenantConfig tenantConfig) {
+        String tenantId = tenantConfig.getTenantId();
+        tenantStates.put(tenantRegistry.register(tenantId), newTenantState(tenantWorkQueues.get(tenantId)));
+        updateTenantConfig(tenantConfig);
+    }
+
+    /**
+     * Applies the rate limit and the cap of in-flight tasks of the tenant, from its next task on.
+     * @param tenantConfig new configuration of the tenant.
+     */
+    @Override
+    public void updateTenantConfig(TenantConfig tenantConfig) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantConfig.getTenantId()));
+        if (state == null)
+            return;
+        if (state.limiter != null) {
+            state.limiter.update(tenantConfig);
+        } else if (TenantLimiter.isLimited(tenantConfig)) {
+            state.limiter = new TenantLimiter(tenantConfig, () -> {
+                state.shard.readyTenants.offer(state);
+                signalWaiter(state.shard);
+            });
+        }
+    }
+
+    //a task is counted until it is handed out, even if a worker already holds the tenant entry.
+    @Override
+    public boolean hasQueuedTasks(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        return state != null && state.pendingTasks.get() > 0;
+    }
+
+    /**
+     * De-provisions the tenant. Tasks which the tenant had already queued are still handed out.
+     * @param tenantId tenant id of the tenant to be de-provisioned.
+     */
+    @Override
+    public void deProvisionTenant(String tenantId) {
+        tenantStates.remove(tenantRegistry.getHandle(tenantId));
+    }
+
+    /**
+     * Returns the number of shards the tenants are split across.
+     * @return the number of shards.
+     */
+    public int getNoOfShards() {
+        return shards.length;
+    }
+
+    private static class Shard {
+        //tenants of this shard which have work, in round-robin order. Only one entry per tenant.
+        final ConcurrentLinkedQueue<TenantState> readyTenants = new ConcurrentLinkedQueue<>();
+        //idle workers of this shard, which are parked or about to park.
+        final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    }
+
+    private static class TenantState {
+        final BlockingQueue<TenantAwareTask> queue;
+        final Shard shard;
+        //number of tasks queued, the tenant has an entry in its shard's ready queue when this is not zero.
+        final AtomicInteger pendingTasks = new AtomicInteger();
+        //set once the tenant has limits, and kept from then on.
+        volatile TenantLimiter limiter;
+
+        TenantState(BlockingQueue<TenantAwareTask> queue, Shard shard) {
+            this.queue = queue;
+            this.shard = shard;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.platform.mt.impl;
+
+import com.example.platform.mt.MultiTenantWorkQueueManager;
+import com.example.platform.mt.vo.TenantAwareTask;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches every task taken from a {@link MultiTenantWorkQueueManager} onto a thread of its own,
+ * by default a virtual thread (needs Java 21 or later at runtime). This suits tenants whose tasks
+ * mostly block on I/O, which would leave a fixed pool of workers idle while the queues back up.
+ * <p>
+ * Tasks are taken in the order decided by the scheduler, and the number of tasks running at a
+ * time is capped both in total and per tenant, so a single tenant can not take up all the
+ * concurrency. The cap per tenant is applied by the scheduler (see
+ * {@link MultiTenantWorkQueueManager#capInFlight(int)}), which keeps the tasks of a tenant at its
+ * cap queued, so the dispatcher goes on taking the tasks of the other tenants meanwhile.
+ */
+public class VirtualThreadTaskDispatcher {
+    //how long the dispatcher waits for a task before checking whether it was shut down.
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final MultiTenantWorkQueueManager queueManager;
+    private final ThreadFactory threadFactory;
+    private final int maxConcurrency;
+    //threads running tenant tasks.
+    private final Semaphore runningPermits;
+    private final Thread dispatcherThread;
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a dispatcher which runs every task on a new virtual thread.
+     * @param queueManager queue manager to take the tasks from.
+     * @param maxConcurrency maximum number of tasks running at a time.
+     * @param maxConcurrencyPerTenant maximum number of tasks of a single tenant running at a time,
+     *                                applied to the queue manager.
+     * @throws UnsupportedOperationException if the running JVM does not support virtual threads.
+     */
+    public VirtualThreadTaskDispatcher(MultiTenantWorkQueueManager queueManager, int maxConcurrency,
+                                       int maxConcurrencyPerTenant) {
+        this(queueManager, maxConcurrency, maxConcurrencyPerTenant,
+            VirtualThreads.newThreadFactory("Multi-tenant task "));
+    }
+
+    /**
+     * Creates a dispatcher which runs every task on a new thread created by threadFactory.
+     * @param queueManager queue manager to take the tasks from.
+     * @param maxConcurrency maximum number of tasks running at a time.
+     * @param maxConcurrencyPerTenant maximum number of tasks of a single tenant running at a time,
+     *                                applied to the queue manager, see
+     *                                {@link MultiTenantWorkQueueManager#capInFlight(int)}.
+     * @param threadFactory factory for the threads running the tasks.
+     */
+    public VirtualThreadTaskDispatcher(MultiTenantWorkQueueManager queueManager, int maxConcurrency,
+                                       int maxConcurrencyPerTenant, ThreadFactory threadFactory) {
+        if (maxConcurrency <= 0 || maxConcurrencyPerTenant <= 0)
+            throw new IllegalArgumentException("concurrency limits must be positive: "
+                +maxConcurrency+", "+maxConcurrencyPerTenant);
+        this.queueManager = queueManager;
+        this.threadFactory = threadFactory;
+        this.maxConcurrency = maxConcurrency;
+        this.runningPermits = new Semaphore(maxConcurrency);
+        queueManager.capInFlight(maxConcurrencyPerTenant);
+        this.dispatcherThread = new Thread(this::dispatch, "Multi-tenant task dispatcher");
+    }
+
+    /**
+     * Starts taking and dispatching tasks.
+     */
+    public void start() {
+        dispatcherThread.start();
+    }
+
+    /**
+     * Stops taking tasks from the queue manager. Tasks which are running still run.
+     */
+    public void shutdown() {
+        shutdown = true;
+        dispatcherThread.interrupt();
+    }
+
+    /**
+     * Blocks until the dispatcher stopped and all dispatched tasks completed after a shutdown,
+     * or the timeout elapses.
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return true if terminated and false if the timeout elapsed before termination
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        dispatcherThread.join(Math.max(1, unit.toMillis(timeout)));
+        if (dispatcherThread.isAlive())
+            return false;
+        //once all running permits are back there is nothing left to run.
+        if (!runningPermits.tryAcquire(maxConcurrency, deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+            return false;
+        runningPermits.release(maxConcurrency);
+        return true;
+    }
+
+    private void dispatch() {
+        while (!shutdown) {
+            try {
+                runningPermits.acquire();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            TenantAwareTask polled;
+            try {
+                polled = queueManager.pollWork(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                polled = null;
+            }
+            if (polled == null) {
+                runningPermits.release();
+                continue;
+            }
+            TenantAwareTask task = polled;
+            threadFactory.newThread(() -> runTask(task)).start();
+        }
+    }
+
+    private void runTask(TenantAwareTask task) {
+        Thread current = Thread.currentThread();
+        try {
+            task.run();
+        } catch (Throwable t) {
+            current.getUncaughtExceptionHandler().uncaughtException(current, t);
+        }
+        queueManager.recycle(task);
+        runningPermits.release();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.platform.mt.impl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads when running on Java 21 or later. The library is built for Java 8,
+ * so the virtual thread API is looked up reflectively.
+ */
+public final class VirtualThreads {
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns whether virtual threads are supported by the running JVM.
+     * @return true if virtual threads can be created.
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a thread factory which creates virtual threads named prefix followed by a counter.
+     * @param prefix name prefix of the created threads.
+     * @return thread factory creating virtual threads.
+     * @throws UnsupportedOperationException if the running JVM does not support virtual threads.
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        if (!isSupported())
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later, running on "
+                + System.getProperty("java.version"));
+        try {
+            //Thread.ofVirtual().name(prefix, 0).factory()
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderType = OF_VIRTUAL.getReturnType();
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unable to create virtual thread factory", e);
+        }
+    }
+
+    private static Method lookup(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,27 +1,363 @@
 package com.example.platform.mt.impl;
 
 import com.example.platform.mt.MultiTenantWorkScheduler;
+import com.example.platform.mt.TenantLimiter;
+import com.example.platform.mt.TenantTable;
+import com.example.platform.mt.vo.AbstractTask;
 import com.example.platform.mt.vo.TenantAwareTask;
 import com.example.platform.mt.vo.TenantConfig;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Weighted fair queueing scheduler (self-clocked variant). Each tenant with work has exactly one
+ * entry in a min-heap, ordered by the virtual finish time of its head task. A tenant with weight w
+ * is charged cost/w of virtual time per task (see {@link AbstractTask#getEstimatedCost()}), so
+ * while tenants are backlogged they are served in proportion to their weights. Both add and remove
+ * are O(log n), n being the number of tenants which currently have work.
+ * <p>
+ * A tenant throttled by its rate limit or its cap of in-flight tasks is taken out of the heap until
+ * its {@link TenantLimiter} resumes it, so that it does not hold up the other tenants.
+ */
 public class WeightedFairQueueingWorkScheduler extends MultiTenantWorkScheduler {
+    //virtual time charged to a tenant with weight 1 for a task of unit cost.
+    static final long VIRTUAL_TIME_PER_TASK = 1L << 20;
+
+    private static final Comparator<TenantState> VIRTUAL_FINISH_TIME_ORDER = (a, b) -> {
+        int cmp = Long.compare(a.finishTime, b.finishTime);
+        //ties are broken in the order tenants were queued, so equal weights degrade to round-robin.
+        return cmp != 0 ? cmp : Long.compare(a.sequence, b.sequence);
+    };
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    //contains only the tenants which have work, guarded by lock.
+    private final PriorityQueue<TenantState> readyTenants = new PriorityQueue<>(VIRTUAL_FINISH_TIME_ORDER);
+    //tasks of the system lane, handed out before any tenant task, guarded by lock.
+    private final ArrayDeque<TenantAwareTask> systemTasks = new ArrayDeque<>();
+    //virtual finish time of the task handed out last, guarded by lock.
+    private long virtualTime;
+    private long sequence;
+
+    //tenant states by tenant handle.
+    private final TenantTable<TenantState> tenantStates = new TenantTable<>();
+
+    public WeightedFairQueueingWorkScheduler() {
+        super();
+    }
+
+    @Override
+    public void initialize(Map<String, BlockingQueue<TenantAwareTask>> tenantWorkQueues,
+                           List<TenantConfig> tenantConfigs) {
+        super.initialize(tenantWorkQueues, tenantConfigs);
+        for (TenantConfig tenantConfig : tenantConfigs) {
+            provisionTenant(tenantConfig);
+        }
+    }
+
     @Override
     public void add(TenantAwareTask task) throws InterruptedException {
-        throw new UnsupportedOperationException();
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        //put outside the lock, so that a full tenant queue blocks only its own producers.
+        state.queue.put(task);
+        activate(state);
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task) {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task))
+            return false;
+        activate(state);
+        return true;
+    }
+
+    @Override
+    public boolean offer(TenantAwareTask task, long timeout, TimeUnit unit) throws InterruptedException {
+        TenantState state = tenantStates.get(getTenantHandle(task));
+        if (!state.queue.offer(task, timeout, unit))
+            return false;
+        activate(state);
+        return true;
+    }
+
+    @Override
+    public TenantAwareTask evictOldest(String tenantId) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return null;
+        lock.lock();
+        try {
+            TenantAwareTask task = state.queue.poll();
+            //an active tenant must have a task.
+            if (state.active && state.queue.isEmpty()) {
+                readyTenants.remove(state);
+                state.active = false;
+                state.throttled = false;
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTenant(String tenantId, Collection<? super TenantAwareTask> sink) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return 0;
+        lock.lock();
+        try {
+            int drained = state.queue.drainTo(sink);
+            if (state.active) {
+                readyTenants.remove(state);
+                state.active = false;
+                state.throttled = false;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addSystemTask(TenantAwareTask task) {
+        lock.lock();
+        try {
+            systemTasks.add(task);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //activates the tenant after a task was queued, unless it is already active.
+    private void activate(TenantState state) {
+        lock.lock();
+        try {
+            //the task may already have been handed out by a concurrent remove, hence the isEmpty check.
+            if (!state.active && !state.queue.isEmpty()) {
+                state.active = true;
+                schedule(state, Math.max(virtualTime, state.finishTime));
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public TenantAwareTask remove() throws InterruptedException {
-        throw new UnsupportedOperationException();
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                while (readyTenants.isEmpty() && systemTasks.isEmpty()) {
+                    notEmpty.await();
+                }
+                TenantAwareTask task = dequeue();
+                if (task != null)
+                    return task;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public TenantAwareTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                while (readyTenants.isEmpty() && systemTasks.isEmpty()) {
+                    if (nanos <= 0)
+                        return null;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                TenantAwareTask task = dequeue();
+                if (task != null)
+                    return task;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remove(int maxTasks, Collection<? super TenantAwareTask> sink) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            int removed;
+            while ((removed = dequeue(maxTasks, sink)) == 0) {
+                notEmpty.await();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int poll(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        lock.lock();
+        try {
+            return dequeue(maxTasks, sink);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //must be called while holding the lock. Returns the number of tasks added to the sink, 0 if
+    //there is no task to hand out.
+    private int dequeue(int maxTasks, Collection<? super TenantAwareTask> sink) {
+        int removed = 0;
+        while (removed < maxTasks && !(readyTenants.isEmpty() && systemTasks.isEmpty())) {
+            TenantAwareTask task = dequeue();
+            if (task != null) {
+                sink.add(task);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    //must be called while holding the lock, and only when there is a system task or a ready tenant.
+    //Returns null if the tenant is throttled, in which case it stays active but out of the heap
+    //until it is resumed.
+    private TenantAwareTask dequeue() {
+        TenantAwareTask systemTask = systemTasks.poll();
+        if (systemTask != null)
+            return systemTask;
+        TenantState state = readyTenants.poll();
+        if (state.limiter != null) {
+            long wait = state.limiter.tryAcquire(System.nanoTime());
+            if (wait > 0) {
+                state.throttled = true;
+                state.limiter.park(wait);
+                return null;
+            }
+        }
+        //tenant queues are polled only under the lock, so an active tenant has a task.
+        TenantAwareTask task = state.queue.poll();
+        if (state.limiter != null)
+            task.markDispatched(state.limiter);
+        virtualTime = state.finishTime;
+        TenantAwareTask next;
+        while (canJoinBatch(task, next = state.queue.peek())) {
+            if (state.limiter != null && state.limiter.tryAcquire(System.nanoTime()) > 0)
+                break;
+            state.queue.poll();
+            if (state.limiter != null)
+                next.markDispatched(state.limiter);
+            task.addToBatch(next);
+            //the tenant is charged for the task as if it was handed out in its own turn.
+            state.finishTime += next.getEstimatedCost()*VIRTUAL_TIME_PER_TASK/state.weight;
+        }
+        if (!state.queue.isEmpty()) {
+            schedule(state, state.finishTime);
+        } else {
+            state.active = false;
+        }
+        return task;
+    }
+
+    //must be called while holding the lock, and only when tenant queue is not empty.
+    private void schedule(TenantState state, long startTime) {
+        long cost = state.queue.peek().getEstimatedCost();
+        state.finishTime = startTime + cost*VIRTUAL_TIME_PER_TASK/state.weight;
+        state.sequence = sequence++;
+        readyTenants.offer(state);
     }
 
     @Override
     public void provisionTenant(TenantConfig tenantConfig) {
-        throw new UnsupportedOperationException();
+        String tenantId = tenantConfig.getTenantId();
+        TenantState state = new TenantState(tenantWorkQueues.get(tenantId), tenantConfig.getWeight());
+        if (TenantLimiter.isLimited(tenantConfig))
+            state.limiter = new TenantLimiter(tenantConfig, () -> resume(state));
+        tenantStates.put(tenantRegistry.register(tenantId), state);
+    }
+
+    //the new weight is charged from the next task of the tenant which is scheduled, and the new
+    //limits apply from the next task which is handed out.
+    @Override
+    public void updateTenantConfig(TenantConfig tenantConfig) {
+        TenantState state = tenantStates.get(tenantRegistry.getHandle(tenantConfig.getTenantId()));
+        if (state == null)
+            return;
+        TenantLimiter limiter;
+        lock.lock();
+        try {
+            state.weight = Math.max(1, tenantConfig.getWeight());
+            limiter = state.limiter;
+            if (limiter == null && TenantLimiter.isLimited(tenantConfig))
+                state.limiter = new TenantLimiter(tenantConfig, () -> resume(state));
+        } finally {
+            lock.unlock();
+        }
+        if (limiter != null)
+            limiter.update(tenantConfig);
+    }
+
+    //puts a throttled tenant back in the heap once its limiter resumes it.
+    private void resume(TenantState state) {
+        lock.lock();
+        try {
+            if (!state.throttled)
+                return;
+            state.throttled = false;
+            //a tenant does not bank the virtual time which passed while it was throttled.
+            if (state.finishTime < virtualTime) {
+                schedule(state, virtualTime);
+            } else {
+                readyTenants.offer(state);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public void deProvisionTenant(String tenantId) {
-        throw new UnsupportedOperationException();
+        TenantState state = tenantStates.remove(tenantRegistry.getHandle(tenantId));
+        if (state == null)
+            return;
+        lock.lock();
+        try {
+            if (state.active) {
+                readyTenants.remove(state);
+                state.active = false;
+                state.throttled = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class TenantState {
+        final BlockingQueue<TenantAwareTask> queue;
+        //following fields are guarded by the scheduler lock.
+        int weight;
+        boolean active;
+        //whether the tenant is active but out of the heap, until its limiter resumes it.
+        boolean throttled;
+        TenantLimiter limiter;
+        long finishTime;
+        long sequence;
+
+        TenantState(BlockingQueue<TenantAwareTask> queue, int weight) {
+            this.queue = queue;
+            this.weight = Math.max(1, weight);
+        }
     }
 }
@@ -0,0 +1,74 @@
+package com.example.platform.mt.journal;
+
+/**
+ * Options of a {@link TaskJournal}.
+ */
+public class JournalOptions {
+    private int segmentSize;
+    private boolean syncOnAppend;
+    private long groupCommitDelayMicros;
+    private long checkpointIntervalMillis;
+
+    public JournalOptions() {
+        this.segmentSize = 64 << 20;
+        this.syncOnAppend = true;
+        this.groupCommitDelayMicros = 0;
+        this.checkpointIntervalMillis = 1000;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size of the journal segment files, which are memory-mapped as a whole. A new segment
+     * is started once a task does not fit into the current one, and a segment is deleted once all
+     * its tasks are acknowledged. Defaults to 64 MiB.
+     * @param segmentSize size of a segment file in bytes.
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public boolean isSyncOnAppend() {
+        return syncOnAppend;
+    }
+
+    /**
+     * Sets whether submitting a task waits until its record is forced to the storage device, so
+     * that an accepted task survives a crash of the machine. Otherwise it survives a crash of the
+     * process only, and records are forced at every checkpoint. Defaults to true.
+     * @param syncOnAppend whether appending a task waits for its record to be forced.
+     */
+    public void setSyncOnAppend(boolean syncOnAppend) {
+        this.syncOnAppend = syncOnAppend;
+    }
+
+    public long getGroupCommitDelayMicros() {
+        return groupCommitDelayMicros;
+    }
+
+    /**
+     * Sets how long the journal waits for more records before it forces the records of waiting
+     * producers, so that they share the cost of a force. Records appended while a force is under
+     * way are always forced together by the next one. Defaults to 0, i.e., no extra wait.
+     * @param groupCommitDelayMicros wait for more records in microseconds.
+     */
+    public void setGroupCommitDelayMicros(long groupCommitDelayMicros) {
+        this.groupCommitDelayMicros = groupCommitDelayMicros;
+    }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    /**
+     * Sets the interval at which acknowledgements of completed tasks are forced to the storage device.
+     * Tasks completed after the last checkpoint are run again after a crash of the machine, but not
+     * after a crash of the process. Defaults to 1000 milliseconds.
+     * @param checkpointIntervalMillis checkpoint interval in milliseconds.
+     */
+    public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+}
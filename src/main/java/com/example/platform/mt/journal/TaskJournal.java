@@ -0,0 +1,505 @@
+package com.example.platform.mt.journal;
+
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.TaskPriority;
+import com.example.platform.mt.vo.TenantAwareTask;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of submitted tasks, so that queued tasks survive a restart. It is switched on
+ * with {@code QueueManagerOptions.setJournal}, after which the work queue manager appends every
+ * task to the journal before it queues the task, acknowledges the task once it has run or was
+ * dropped, and replays the tasks which were not acknowledged when it is created.
+ * <p>
+ * Tasks are appended to memory-mapped segment files, under a lock held only to copy the record,
+ * as the task is serialized (see {@link TaskSerializer}) beforehand. A background thread forces
+ * the records of all producers waiting for their tasks at once (group commit). Acknowledgements
+ * are a byte per record in a memory-mapped file next to each segment, which is forced at every
+ * checkpoint, and a segment is deleted once all its records are acknowledged. Replay maps the
+ * segments, skips acknowledged records without deserializing them, and deserializes the segments
+ * in parallel, so its cost is mostly that of deserializing the pending tasks.
+ * <p>
+ * Tasks are run at least once: a task which completed after the last checkpoint before a crash is
+ * run again. Deadlines of tasks are not journaled, as they are relative to the process.
+ * <p>
+ * Segment layout: a header (magic, version, sequence of the first record), followed by records of
+ * the length and checksum of the body, and the body (priority, tenant id, serialized task).
+ * The sequence of a record is implied by its position in the segment.
+ */
+public class TaskJournal implements Closeable {
+    static final int MAGIC = 0x4D544A4E;
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 8;
+    //a body holds at least the priority and the length of the tenant id.
+    static final int MIN_RECORD_SIZE = RECORD_HEADER_SIZE + 3;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String ACKS_SUFFIX = ".acks";
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+
+    private final Path directory;
+    private final TaskSerializer serializer;
+    private final int segmentSize;
+    private final boolean syncOnAppend;
+    private final long groupCommitDelayNanos;
+    private final long checkpointIntervalNanos;
+    //segments by the sequence of their first record, until all their records are acknowledged.
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    //following fields are guarded by this.
+    private Segment activeSegment;
+    private long nextSequence;
+    //segments started since the last force, which may have records not yet forced.
+    private final List<Segment> sealedSegments = new ArrayList<>();
+    //following fields are guarded by syncLock.
+    private final Object syncLock = new Object();
+    //all records before this sequence are forced.
+    private long syncedSequence;
+    //producers wait for the records before this sequence.
+    private long requestedSequence;
+    private final Object replayLock = new Object();
+    private final Thread syncThread;
+    private volatile boolean closed;
+
+    private TaskJournal(Path directory, TaskSerializer serializer, JournalOptions options) {
+        this.directory = directory;
+        this.serializer = serializer;
+        this.segmentSize = options.getSegmentSize();
+        this.syncOnAppend = options.isSyncOnAppend();
+        this.groupCommitDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, options.getGroupCommitDelayMicros()));
+        this.checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, options.getCheckpointIntervalMillis()));
+        this.syncThread = new Thread(this::syncLoop, "task-journal-sync");
+        this.syncThread.setDaemon(true);
+    }
+
+    /**
+     * Opens the journal in the directory, creating the directory if it does not exist. The segments
+     * found in the directory are kept for {@link #replay(Predicate)}, and tasks are appended to a new
+     * segment.
+     * @param directory directory of the segment files, used by this journal only.
+     * @param serializer serializer of the tasks.
+     * @param options options of the journal.
+     * @return the journal.
+     * @throws IOException if the directory or the segments can not be read or written.
+     */
+    public static TaskJournal open(Path directory, TaskSerializer serializer, JournalOptions options)
+        throws IOException {
+        if (options.getSegmentSize() < SEGMENT_HEADER_SIZE + MIN_RECORD_SIZE)
+            throw new IllegalArgumentException("segmentSize is too small: "+options.getSegmentSize());
+        Files.createDirectories(directory);
+        TaskJournal journal = new TaskJournal(directory, serializer, options);
+        journal.recover();
+        synchronized (journal) {
+            journal.startSegment();
+        }
+        journal.syncThread.start();
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*"+SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        //file names are zero-padded sequences, so they sort in the order of the segments.
+        Collections.sort(paths);
+        for (Path path : paths) {
+            Segment segment = Segment.recover(path, acksPath(path));
+            nextSequence = Math.max(nextSequence, segment.firstSequence + segment.count);
+            int pending = 0;
+            for (int i = 0; i < segment.count; i++) {
+                if (segment.acks.get(i) == 0)
+                    pending++;
+            }
+            if (pending == 0) {
+                segment.delete();
+                continue;
+            }
+            segment.pending.set(pending);
+            segments.put(segment.firstSequence, segment);
+        }
+    }
+
+    //must be called while holding the monitor of the journal.
+    private void startSegment() throws IOException {
+        String name = String.format("%020d", nextSequence);
+        Segment segment = Segment.create(directory.resolve(name+SEGMENT_SUFFIX), directory.resolve(name+ACKS_SUFFIX),
+            nextSequence, segmentSize);
+        Segment sealed = activeSegment;
+        activeSegment = segment;
+        segments.put(segment.firstSequence, segment);
+        if (sealed != null) {
+            sealedSegments.add(sealed);
+            release(sealed);
+        }
+    }
+
+    private static Path acksPath(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return segmentPath.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length())+ACKS_SUFFIX);
+    }
+
+    /**
+     * Appends the task to the journal, and marks it as journaled, so that it is acknowledged once it
+     * has run or was dropped. Unless disabled in the {@link JournalOptions}, waits until the record
+     * of the task is forced to the storage device. Does nothing if the serializer returns null.
+     * @param task the tenant aware task, before it is queued.
+     * @throws IOException if the journal is closed, or a new segment can not be created.
+     */
+    public void append(TenantAwareTask task) throws IOException {
+        byte[] taskBytes = serializer.serialize(task.getTask());
+        if (taskBytes == null)
+            return;
+        byte[] tenantId = task.getTenantId().getBytes(StandardCharsets.UTF_8);
+        if (tenantId.length > 0xFFFF)
+            throw new IllegalArgumentException("Tenant id is too long: "+task.getTenantId());
+        int length = 3 + tenantId.length + taskBytes.length;
+        if (RECORD_HEADER_SIZE + length > segmentSize - SEGMENT_HEADER_SIZE)
+            throw new IllegalArgumentException("Task does not fit into a journal segment: "+length+" bytes");
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.position(RECORD_HEADER_SIZE);
+        record.put((byte) task.getPriority().ordinal()).putShort((short) tenantId.length).put(tenantId).put(taskBytes);
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length).putInt(4, (int) checksum.getValue());
+        record.rewind();
+
+        long sequence;
+        synchronized (this) {
+            if (closed)
+                throw new IOException("Journal is closed");
+            Segment segment = activeSegment;
+            if (segment.writer.remaining() < record.remaining() || segment.count == segment.acks.capacity()) {
+                startSegment();
+                segment = activeSegment;
+            }
+            segment.writer.put(record);
+            sequence = segment.firstSequence + segment.count;
+            segment.count++;
+            segment.pending.incrementAndGet();
+            nextSequence = sequence + 1;
+        }
+        task.markJournaled(this, sequence);
+        if (syncOnAppend)
+            awaitSync(sequence);
+    }
+
+    //waits until the record is forced, see syncLoop.
+    private void awaitSync(long sequence) {
+        boolean interrupted = false;
+        synchronized (syncLock) {
+            if (sequence < syncedSequence)
+                return;
+            requestedSequence = Math.max(requestedSequence, sequence + 1);
+            syncLock.notifyAll();
+            //the task is already journaled, so the wait is not cut short by an interrupt.
+            while (sequence >= syncedSequence && !closed) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Acknowledges the task with the sequence, so that it is not replayed anymore. Acknowledging
+     * a task twice has no effect.
+     * @param sequence sequence of the task, see {@link TenantAwareTask#getJournalSequence()}.
+     */
+    public void ack(long sequence) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+        if (entry == null)
+            return;
+        Segment segment = entry.getValue();
+        int index = (int) (sequence - segment.firstSequence);
+        if (index >= segment.acks.capacity() || segment.acks.get(index) != 0)
+            return;
+        segment.acks.put(index, (byte) 1);
+        release(segment);
+    }
+
+    private void release(Segment segment) {
+        if (segment.pending.decrementAndGet() == 0 && segments.remove(segment.firstSequence, segment))
+            segment.delete();
+    }
+
+    /**
+     * Hands the tasks which were in the journal when it was opened, and are neither acknowledged
+     * nor already accepted by a previous replay, to the handler, in the order they were appended.
+     * Tasks rejected by the handler, e.g., because the work queue of their tenant is full, stay in
+     * the journal for the next replay.
+     * @param handler queues the task, and returns whether it did.
+     * @return the number of tasks accepted by the handler.
+     */
+    public int replay(Predicate<TenantAwareTask> handler) {
+        synchronized (replayLock) {
+            List<Segment> recovered = new ArrayList<>();
+            for (Segment segment : segments.values()) {
+                if (segment.replayed != null)
+                    recovered.add(segment);
+            }
+            List<List<TenantAwareTask>> tasks = recovered.parallelStream().map(this::decode)
+                .collect(Collectors.toList());
+            int replayed = 0;
+            for (int i = 0; i < recovered.size(); i++) {
+                Segment segment = recovered.get(i);
+                for (TenantAwareTask task : tasks.get(i)) {
+                    if (handler.test(task)) {
+                        segment.replayed.set((int) (task.getJournalSequence() - segment.firstSequence));
+                        replayed++;
+                    }
+                }
+            }
+            return replayed;
+        }
+    }
+
+    //must be called while holding the replay lock.
+    private List<TenantAwareTask> decode(Segment segment) {
+        List<TenantAwareTask> tasks = new ArrayList<>();
+        ByteBuffer records = segment.records.asReadOnlyBuffer();
+        int position = SEGMENT_HEADER_SIZE;
+        for (int i = 0; i < segment.count; i++) {
+            int length = records.getInt(position);
+            int body = position + RECORD_HEADER_SIZE;
+            position = body + length;
+            if (segment.acks.get(i) != 0 || segment.replayed.get(i))
+                continue;
+            TaskPriority priority = PRIORITIES[Math.min(records.get(body), PRIORITIES.length - 1)];
+            byte[] tenantId = new byte[records.getShort(body + 1) & 0xFFFF];
+            records.limit(position).position(body + 3);
+            records.get(tenantId);
+            AbstractTask actualTask = serializer.deserialize(records.slice());
+            records.limit(records.capacity());
+            TenantAwareTask task = new TenantAwareTask(new String(tenantId, StandardCharsets.UTF_8), actualTask);
+            task.setPriority(priority);
+            task.markJournaled(this, segment.firstSequence + i);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Returns the number of tasks in the journal which are not acknowledged yet.
+     * @return the number of pending tasks.
+     */
+    public long getPendingTasks() {
+        long pending = 0;
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                //the active segment is held until it is sealed.
+                pending += segment.pending.get() - (segment == activeSegment ? 1 : 0);
+            }
+        }
+        return pending;
+    }
+
+    //forces the records of waiting producers, and the acknowledgements at every checkpoint.
+    private void syncLoop() {
+        long nextCheckpoint = System.nanoTime() + checkpointIntervalNanos;
+        try {
+            while (true) {
+                boolean requested;
+                synchronized (syncLock) {
+                    long wait;
+                    while (!closed && requestedSequence <= syncedSequence
+                           && (wait = nextCheckpoint - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(syncLock, wait);
+                    }
+                    if (closed)
+                        return;
+                    requested = requestedSequence > syncedSequence;
+                }
+                if (requested && groupCommitDelayNanos > 0)
+                    TimeUnit.NANOSECONDS.sleep(groupCommitDelayNanos);
+                sync();
+                long now = System.nanoTime();
+                if (now - nextCheckpoint >= 0) {
+                    checkpoint();
+                    nextCheckpoint = now + checkpointIntervalNanos;
+                }
+            }
+        } catch (InterruptedException e) {
+            //closed
+        }
+    }
+
+    private void sync() {
+        List<Segment> unsynced;
+        long sequence;
+        synchronized (this) {
+            unsynced = new ArrayList<>(sealedSegments);
+            sealedSegments.clear();
+            unsynced.add(activeSegment);
+            sequence = nextSequence;
+        }
+        for (Segment segment : unsynced) {
+            segment.records.force();
+        }
+        synchronized (syncLock) {
+            syncedSequence = Math.max(syncedSequence, sequence);
+            syncLock.notifyAll();
+        }
+    }
+
+    private void checkpoint() {
+        for (Segment segment : segments.values()) {
+            segment.acks.force();
+        }
+    }
+
+    /**
+     * Stops appending tasks, and forces the records and the acknowledgements. Tasks acknowledged
+     * afterwards are replayed after a restart. The segments stay mapped until they are garbage
+     * collected, as mappings can not be released explicitly.
+     */
+    @Override
+    public void close() {
+        synchronized (syncLock) {
+            if (closed)
+                return;
+            closed = true;
+            syncLock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (syncThread.isAlive()) {
+            try {
+                syncThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        //the monitor waits for an append under way.
+        synchronized (this) {
+            sync();
+        }
+        checkpoint();
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private static class Segment {
+        final long firstSequence;
+        final Path path;
+        final Path acksPath;
+        final MappedByteBuffer records;
+        //a byte per record, set once the record is acknowledged.
+        final MappedByteBuffer acks;
+        //appends the records of the active segment, guarded by the journal.
+        final ByteBuffer writer;
+        //number of records, guarded by the journal while the segment is active.
+        int count;
+        //records not yet acknowledged, plus one while the segment is active.
+        final AtomicInteger pending = new AtomicInteger(1);
+        //records of a recovered segment accepted by replay, guarded by the replay lock, or null
+        //if the segment was created by this journal.
+        BitSet replayed;
+
+        private Segment(long firstSequence, Path path, Path acksPath, MappedByteBuffer records,
+                        MappedByteBuffer acks) {
+            this.firstSequence = firstSequence;
+            this.path = path;
+            this.acksPath = acksPath;
+            this.records = records;
+            this.acks = acks;
+            this.writer = records.duplicate();
+            this.writer.position(SEGMENT_HEADER_SIZE);
+        }
+
+        static Segment create(Path path, Path acksPath, long firstSequence, int size) throws IOException {
+            MappedByteBuffer records = map(path, size, true);
+            records.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, firstSequence);
+            return new Segment(firstSequence, path, acksPath, records, map(acksPath, maxRecords(size), true));
+        }
+
+        //maps a segment found when the journal is opened, and counts its valid records.
+        static Segment recover(Path path, Path acksPath) throws IOException {
+            MappedByteBuffer records = map(path, -1, false);
+            if (records.capacity() < SEGMENT_HEADER_SIZE || records.getInt(0) != MAGIC)
+                throw new IOException("Not a journal segment: "+path);
+            if (records.getInt(4) != VERSION)
+                throw new IOException("Unsupported journal segment version: "+records.getInt(4));
+            //the acknowledgements of a segment created just before a crash may be missing.
+            MappedByteBuffer acks = map(acksPath, maxRecords(records.capacity()), false);
+            Segment segment = new Segment(records.getLong(8), path, acksPath, records, acks);
+            segment.count = segment.countValidRecords();
+            segment.replayed = new BitSet(segment.count);
+            return segment;
+        }
+
+        //records are valid up to the end of the segment, or the first record which was not
+        //written completely before a crash.
+        private int countValidRecords() {
+            ByteBuffer body = records.asReadOnlyBuffer();
+            CRC32 checksum = new CRC32();
+            int position = SEGMENT_HEADER_SIZE;
+            int count = 0;
+            while (count < acks.capacity() && position + MIN_RECORD_SIZE <= records.capacity()) {
+                int length = records.getInt(position);
+                int end = position + RECORD_HEADER_SIZE + length;
+                if (length < MIN_RECORD_SIZE - RECORD_HEADER_SIZE || end > records.capacity() || end < 0)
+                    break;
+                body.limit(end).position(position + RECORD_HEADER_SIZE);
+                checksum.reset();
+                checksum.update(body);
+                if ((int) checksum.getValue() != records.getInt(position + 4))
+                    break;
+                position = end;
+                count++;
+            }
+            return count;
+        }
+
+        private static int maxRecords(int segmentSize) {
+            return Math.max(1, (segmentSize - SEGMENT_HEADER_SIZE) / MIN_RECORD_SIZE);
+        }
+
+        //maps the file with the size, or with its current size if the size is negative.
+        private static MappedByteBuffer map(Path path, int size, boolean truncate) throws IOException {
+            try (FileChannel channel = truncate
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                //the mapping stays valid once the channel is closed.
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size < 0 ? channel.size() : size);
+            }
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(path);
+                Files.deleteIfExists(acksPath);
+            } catch (IOException e) {
+                //some platforms do not allow deleting a mapped file, it is deleted when the journal
+                //is opened next, as all its records are acknowledged.
+            }
+        }
+    }
+}
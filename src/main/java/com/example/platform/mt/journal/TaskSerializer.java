@@ -0,0 +1,29 @@
+package com.example.platform.mt.journal;
+
+import com.example.platform.mt.vo.AbstractTask;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts tasks to and from the bytes kept in a {@link TaskJournal}, or in the spill file of a
+ * {@link com.example.platform.mt.SpillingBlockingQueue}. Implemented by the client,
+ * as only it knows its task classes. Both methods are called concurrently, from producers and
+ * from the threads replaying the journal, so implementations must be thread safe.
+ */
+public interface TaskSerializer {
+    /**
+     * Serializes the task, when it is submitted.
+     * @param task the actual task.
+     * @return the bytes of the task.
+     */
+    byte[] serialize(AbstractTask task);
+
+    /**
+     * Deserializes a task, when the journal is replayed.
+     * @param bytes the bytes returned by {@link #serialize(AbstractTask)}, between the position and
+     *              the limit of the buffer. The buffer is a read-only view of the journal, valid only
+     *              for the duration of the call.
+     * @return the actual task.
+     */
+    AbstractTask deserialize(ByteBuffer bytes);
+}
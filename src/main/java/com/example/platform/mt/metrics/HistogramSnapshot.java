@@ -0,0 +1,84 @@
+package com.example.platform.mt.metrics;
+
+/**
+ * Point in time copy of a {@link LatencyHistogram}. All values are in nanoseconds, and reported
+ * as the highest value of the bucket they fall in, i.e., they err on the high side.
+ */
+public class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+
+    HistogramSnapshot(long[] counts, long totalNanos) {
+        this.counts = counts;
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        this.count = count;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     * @return the mean of the recorded values, or 0 if there are none.
+     */
+    public long getMean() {
+        return count == 0 ? 0 : totalNanos/count;
+    }
+
+    /**
+     * Returns the value below which the specified percentage of the recorded values fall.
+     * @param percentile percentile between 0 and 100, e.g., 99.9
+     * @return the value at the percentile, or 0 if there are no recorded values.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile/100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return highestValueOf(i);
+        }
+        return highestValueOf(counts.length - 1);
+    }
+
+    public long getP50() {
+        return getValueAtPercentile(50);
+    }
+
+    public long getP99() {
+        return getValueAtPercentile(99);
+    }
+
+    public long getP999() {
+        return getValueAtPercentile(99.9);
+    }
+
+    public long getMax() {
+        return getValueAtPercentile(100);
+    }
+
+    private static long highestValueOf(int bucket) {
+        //the overflow bucket has no upper bound, so report its lower bound.
+        if (bucket == LatencyHistogram.NO_OF_BUCKETS - 1)
+            return LatencyHistogram.lowerBoundOf(bucket);
+        return LatencyHistogram.lowerBoundOf(bucket + 1) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count="+count+", mean="+getMean()+", p50="+getP50()+", p99="+getP99()
+            +", p999="+getP999()+", max="+getMax();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.platform.mt.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds, with log-linear buckets in the spirit of
+ * HdrHistogram. Every power of 2 range is split into {@value #SUB_BUCKETS} linear buckets, so a
+ * recorded value is off by less than 1/{@value #SUB_BUCKETS} (12.5%), up to 2^{@value #MAX_EXPONENT}
+ * nanoseconds (about 68 seconds), larger values are recorded as that. Recording does not allocate
+ * (apart from the buckets, which are allocated on the first recording, so that idle tenants cost
+ * little) and does not lock, writers of different buckets do not contend.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 36;
+    //values below SUB_BUCKETS have a bucket each, followed by SUB_BUCKETS buckets per power of 2,
+    //and the overflow bucket.
+    static final int NO_OF_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + 1;
+
+    private volatile AtomicLongArray counts;
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Records the specified latency.
+     * @param nanos latency in nanoseconds, negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        AtomicLongArray buckets = counts;
+        if (buckets == null)
+            buckets = allocateBuckets();
+        buckets.incrementAndGet(bucketOf(nanos));
+        totalNanos.add(Math.max(0, nanos));
+    }
+
+    private synchronized AtomicLongArray allocateBuckets() {
+        if (counts == null)
+            counts = new AtomicLongArray(NO_OF_BUCKETS);
+        return counts;
+    }
+
+    /**
+     * Returns a copy of the histogram, which is consistent enough for monitoring while values
+     * are being recorded, i.e., a concurrent recording may or may not be included.
+     * @return snapshot of the histogram.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] snapshot = new long[NO_OF_BUCKETS];
+        AtomicLongArray buckets = counts;
+        if (buckets != null) {
+            for (int i = 0; i < NO_OF_BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+            }
+        }
+        return new HistogramSnapshot(snapshot, totalNanos.sum());
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) Math.max(0, nanos);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT)
+            return NO_OF_BUCKETS - 1;
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    //smallest value recorded in the bucket.
+    static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        if (bucket == NO_OF_BUCKETS - 1)
+            return 1L << MAX_EXPONENT;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
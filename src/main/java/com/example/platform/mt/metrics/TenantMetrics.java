@@ -0,0 +1,87 @@
+package com.example.platform.mt.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a single tenant, recorded by the work queue manager and the
+ * workers running the tenant's tasks. Counters are striped, so concurrent producers and workers
+ * do not contend on them, and recording does not allocate.
+ */
+public class TenantMetrics {
+    private final String tenantId;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dequeued = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram executionTime = new LatencyHistogram();
+
+    public TenantMetrics(String tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * Records a task which was queued.
+     */
+    public void recordSubmitted() {
+        submitted.increment();
+    }
+
+    /**
+     * Records a task which was not queued because the tenant work queue was full, including
+     * tasks shed to the overflow handler.
+     */
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Records a queued task which was dropped without being run.
+     */
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    /**
+     * Records a task which was not queued because a queued duplicate absorbed it.
+     */
+    public void recordCoalesced() {
+        coalesced.increment();
+    }
+
+    /**
+     * Records a task handed out to a worker.
+     * @param queueWaitNanos time the task spent in the queue, in nanoseconds.
+     */
+    public void recordDequeued(long queueWaitNanos) {
+        dequeued.increment();
+        queueWait.record(queueWaitNanos);
+    }
+
+    /**
+     * Records a task which was run, whether it completed normally or not.
+     * @param executionNanos time it took to run the task, in nanoseconds.
+     */
+    public void recordCompleted(long executionNanos) {
+        completed.increment();
+        executionTime.record(executionNanos);
+    }
+
+    /**
+     * Returns a point in time copy of the metrics.
+     * @return snapshot of the metrics.
+     */
+    public TenantMetricsSnapshot snapshot() {
+        //dequeued is read before submitted, so that the queue depth is not under-estimated.
+        long dequeuedCount = dequeued.sum();
+        long droppedCount = dropped.sum();
+        return new TenantMetricsSnapshot(tenantId, submitted.sum(), rejected.sum(), droppedCount,
+            coalesced.sum(), dequeuedCount, completed.sum(), queueWait.snapshot(), executionTime.snapshot());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.platform.mt.metrics;
+
+/**
+ * Point in time copy of the {@link TenantMetrics} of a tenant. Latencies are in nanoseconds.
+ */
+public class TenantMetricsSnapshot {
+    private final String tenantId;
+    private final long submitted;
+    private final long rejected;
+    private final long dropped;
+    private final long coalesced;
+    private final long dequeued;
+    private final long completed;
+    private final HistogramSnapshot queueWait;
+    private final HistogramSnapshot executionTime;
+
+    TenantMetricsSnapshot(String tenantId, long submitted, long rejected, long dropped, long coalesced,
+                          long dequeued, long completed, HistogramSnapshot queueWait,
+                          HistogramSnapshot executionTime) {
+        this.tenantId = tenantId;
+        this.submitted = submitted;
+        this.rejected = rejected;
+        this.dropped = dropped;
+        this.coalesced = coalesced;
+        this.dequeued = dequeued;
+        this.completed = completed;
+        this.queueWait = queueWait;
+        this.executionTime = executionTime;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Returns the number of tasks which were not queued, because a queued duplicate absorbed them.
+     * Coalesced tasks are not counted as submitted.
+     * @return the number of coalesced tasks.
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public long getDequeued() {
+        return dequeued;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the number of tasks waiting in the tenant work queue, derived from the counters.
+     * @return the number of queued tasks.
+     */
+    public long getQueueDepth() {
+        return Math.max(0, submitted - dequeued - dropped);
+    }
+
+    public HistogramSnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    public HistogramSnapshot getExecutionTime() {
+        return executionTime;
+    }
+
+    @Override
+    public String toString() {
+        return tenantId+": submitted="+submitted+", rejected="+rejected+", dropped="+dropped+", coalesced="+coalesced
+            +", dequeued="+dequeued+", completed="+completed+", queueDepth="+getQueueDepth()
+            +", queueWait=["+queueWait+"], executionTime=["+executionTime+"]";
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.platform.mt.trace;
+
+import com.example.platform.mt.metrics.HistogramSnapshot;
+
+/**
+ * Summary of the recorded events of a single tenant, computed by {@link TraceReader}.
+ */
+public class TenantTraceSummary {
+    private final String tenantId;
+    private final long enqueued;
+    private final long dispatched;
+    private final long completed;
+    private final double share;
+    private final HistogramSnapshot queueWait;
+    private final HistogramSnapshot executionTime;
+
+    TenantTraceSummary(String tenantId, long enqueued, long dispatched, long completed, double share,
+                       HistogramSnapshot queueWait, HistogramSnapshot executionTime) {
+        this.tenantId = tenantId;
+        this.enqueued = enqueued;
+        this.dispatched = dispatched;
+        this.completed = completed;
+        this.share = share;
+        this.queueWait = queueWait;
+        this.executionTime = executionTime;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    public long getDispatched() {
+        return dispatched;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the share of the tenant in all the dispatched tasks.
+     * @return the share of the tenant, between 0 and 1.
+     */
+    public double getShare() {
+        return share;
+    }
+
+    /**
+     * Returns the distribution of the time the tenant's dispatched tasks waited in the queue,
+     * in nanoseconds.
+     * @return the queue wait distribution.
+     */
+    public HistogramSnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Returns the distribution of the time the tenant's completed tasks ran for, in nanoseconds.
+     * @return the execution time distribution.
+     */
+    public HistogramSnapshot getExecutionTime() {
+        return executionTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: enqueued=%d, dispatched=%d, completed=%d, share=%.4f, queueWait=[%s], executionTime=[%s]",
+            tenantId, enqueued, dispatched, completed, share, queueWait, executionTime);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.platform.mt.trace;
+
+/**
+ * Type of a scheduling event recorded by {@link TraceRecorder}.
+ */
+public enum TraceEventType {
+    /**
+     * Task was queued, recorded with the time it was submitted.
+     */
+    ENQUEUE(1),
+    /**
+     * Task was handed out to a worker, recorded with the time it waited in the queue.
+     */
+    DISPATCH(2),
+    /**
+     * Task finished running, recorded with the time it ran for.
+     */
+    COMPLETE(3);
+
+    //code written to the trace file, 0 is left for the unused space in the file.
+    final int code;
+
+    TraceEventType(int code) {
+        this.code = code;
+    }
+
+    static TraceEventType of(int code) {
+        for (TraceEventType type : values()) {
+            if (type.code == code)
+                return type;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.platform.mt.trace;
+
+import com.example.platform.mt.metrics.LatencyHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a trace file written by {@link TraceRecorder}, and computes the share of each tenant in
+ * the dispatched tasks, and the distributions of their queue wait and execution times. Can be run
+ * on its own, e.g., {@code java com.example.platform.mt.trace.TraceReader trace.bin}.
+ */
+public class TraceReader {
+
+    private TraceReader() {
+    }
+
+    /**
+     * Summarizes the recorded events of each tenant.
+     * @param path path of the trace file, which must have been closed by the recorder.
+     * @return summaries by tenant id, in the order tenants were first recorded.
+     * @throws IOException if the file can not be read or is not a trace file.
+     */
+    public static Map<String, TenantTraceSummary> summarize(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (file.remaining() < TraceRecorder.HEADER_SIZE || file.getInt(0) != TraceRecorder.MAGIC)
+                throw new IOException("Not a trace file: "+path);
+            if (file.getInt(4) != TraceRecorder.VERSION)
+                throw new IOException("Unsupported trace file version: "+file.getInt(4));
+            int recordsEnd = (int) file.getLong(8);
+            file.position((int) file.getLong(16));
+            byte[] dictionary = new byte[file.remaining()];
+            file.get(dictionary);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(dictionary));
+            String[] tenantIds = new String[in.readInt()];
+            for (int i = 0; i < tenantIds.length; i++) {
+                tenantIds[i] = in.readUTF();
+            }
+
+            TenantEvents[] events = new TenantEvents[tenantIds.length];
+            for (int i = 0; i < events.length; i++) {
+                events[i] = new TenantEvents();
+            }
+            long totalDispatched = 0;
+            for (int offset = TraceRecorder.HEADER_SIZE; offset + TraceRecorder.RECORD_SIZE <= recordsEnd;
+                 offset += TraceRecorder.RECORD_SIZE) {
+                int tenantIndex = file.getInt(offset + 8);
+                TraceEventType type = TraceEventType.of(file.getInt(offset + 12));
+                //unused space, left by a thread which could not fit its records.
+                if (type == null || tenantIndex < 0 || tenantIndex >= events.length)
+                    continue;
+                long durationNanos = file.getLong(offset + 16);
+                TenantEvents tenantEvents = events[tenantIndex];
+                switch (type) {
+                    case ENQUEUE:
+                        tenantEvents.enqueued++;
+                        break;
+                    case DISPATCH:
+                        tenantEvents.dispatched++;
+                        tenantEvents.queueWait.record(durationNanos);
+                        totalDispatched++;
+                        break;
+                    default:
+                        tenantEvents.completed++;
+                        tenantEvents.executionTime.record(durationNanos);
+                }
+            }
+
+            Map<String, TenantTraceSummary> summaries = new LinkedHashMap<>();
+            for (int i = 0; i < events.length; i++) {
+                TenantEvents tenantEvents = events[i];
+                double share = totalDispatched == 0 ? 0 : (double) tenantEvents.dispatched / totalDispatched;
+                summaries.put(tenantIds[i], new TenantTraceSummary(tenantIds[i], tenantEvents.enqueued,
+                    tenantEvents.dispatched, tenantEvents.completed, share, tenantEvents.queueWait.snapshot(),
+                    tenantEvents.executionTime.snapshot()));
+            }
+            return summaries;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceReader <trace file>");
+            System.exit(1);
+        }
+        for (TenantTraceSummary summary : summarize(Paths.get(args[0])).values()) {
+            System.out.println(summary);
+        }
+    }
+
+    private static class TenantEvents {
+        long enqueued;
+        long dispatched;
+        long completed;
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram executionTime = new LatencyHistogram();
+    }
+}
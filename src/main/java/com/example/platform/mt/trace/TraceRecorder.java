@@ -0,0 +1,179 @@
+package com.example.platform.mt.trace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records scheduling events (see {@link TraceEventType}) into a memory-mapped file, for offline
+ * analysis with {@link TraceReader}. It is switched on and off at runtime with
+ * {@code MultiTenantWorkQueueManager.setTraceRecorder}.
+ * <p>
+ * Every thread writes fixed size binary records (timestamp, tenant index, event type, duration) into an
+ * off-heap buffer of its own, and copies the buffer into a region of the file it reserves once the
+ * buffer is full, so threads share only an atomic file offset. Records are written in the order
+ * buffers are flushed, not in timestamp order. Once the file is full, further records are counted
+ * as dropped. Buffers are kept until the recorder is closed, so a recorder should not be left on
+ * for long with many short-lived threads (e.g., virtual threads).
+ * <p>
+ * File layout: a header (magic, version, end of records, offset of tenant dictionary, dropped
+ * records), followed by the records and the dictionary of tenant ids by tenant index.
+ */
+public class TraceRecorder implements Closeable {
+    static final int MAGIC = 0x4D545452;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 24;
+    //records buffered by a thread before they are copied to the file.
+    private static final int RECORDS_PER_BUFFER = 4096;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer file;
+    private final AtomicLong nextOffset = new AtomicLong(HEADER_SIZE);
+    private final LongAdder droppedRecords = new LongAdder();
+    private final Map<String, Integer> tenantIndexes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTenantIndex = new AtomicInteger();
+    private final Queue<ThreadBuffer> threadBuffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ThreadBuffer> threadBuffer = ThreadLocal.withInitial(this::newThreadBuffer);
+    private volatile boolean closed;
+
+    private TraceRecorder(FileChannel channel, MappedByteBuffer file) {
+        this.channel = channel;
+        this.file = file;
+    }
+
+    /**
+     * Creates the trace file, overwriting an existing one, and maps it into memory.
+     * @param path path of the trace file.
+     * @param capacityBytes size of the memory-mapped part of the file, which holds the records.
+     * @return recorder writing into the file.
+     * @throws IOException if the file can not be created or mapped.
+     */
+    public static TraceRecorder open(Path path, int capacityBytes) throws IOException {
+        if (capacityBytes < HEADER_SIZE + RECORD_SIZE)
+            throw new IllegalArgumentException("capacityBytes is too small: "+capacityBytes);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new TraceRecorder(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records an event, unless the recorder is closed.
+     * @param type type of the event.
+     * @param tenantId tenant id of the task the event is about.
+     * @param timestamp {@link System#nanoTime()} at which the event occurred.
+     * @param durationNanos time the task waited in the queue for a dispatch, or ran for a completion.
+     */
+    public void record(TraceEventType type, String tenantId, long timestamp, long durationNanos) {
+        if (closed)
+            return;
+        int tenantIndex = tenantIndexOf(tenantId);
+        ThreadBuffer buffer = threadBuffer.get();
+        //the monitor is contended only while the recorder is being closed.
+        synchronized (buffer) {
+            if (closed)
+                return;
+            buffer.records.putLong(timestamp).putInt(tenantIndex).putInt(type.code).putLong(durationNanos);
+            if (!buffer.records.hasRemaining())
+                flush(buffer);
+        }
+    }
+
+    private int tenantIndexOf(String tenantId) {
+        Integer tenantIndex = tenantIndexes.get(tenantId);
+        if (tenantIndex == null)
+            tenantIndex = tenantIndexes.computeIfAbsent(tenantId, id -> nextTenantIndex.getAndIncrement());
+        return tenantIndex;
+    }
+
+    private ThreadBuffer newThreadBuffer() {
+        ThreadBuffer buffer = new ThreadBuffer();
+        threadBuffers.add(buffer);
+        return buffer;
+    }
+
+    //must be called while holding the monitor of the buffer.
+    private void flush(ThreadBuffer buffer) {
+        ByteBuffer records = buffer.records;
+        records.flip();
+        int length = records.remaining();
+        long offset = nextOffset.getAndAdd(length);
+        if (offset + length <= file.capacity()) {
+            ByteBuffer region = file.duplicate();
+            region.position((int) offset);
+            region.put(records);
+        } else {
+            droppedRecords.add(length / RECORD_SIZE);
+        }
+        records.clear();
+    }
+
+    /**
+     * Returns the number of records which did not fit into the file.
+     * @return the number of dropped records.
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.sum();
+    }
+
+    /**
+     * Stops recording, flushes the buffered records and writes the header and the tenant
+     * dictionary, after which the file can be read by {@link TraceReader}.
+     * @throws IOException if the file can not be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        for (ThreadBuffer buffer : threadBuffers) {
+            synchronized (buffer) {
+                flush(buffer);
+            }
+        }
+        long recordsEnd = Math.min(nextOffset.get(), file.capacity());
+
+        String[] tenantIds = new String[nextTenantIndex.get()];
+        for (Map.Entry<String, Integer> entry : tenantIndexes.entrySet()) {
+            //a tenant first seen while closing has no records.
+            if (entry.getValue() < tenantIds.length)
+                tenantIds[entry.getValue()] = entry.getKey();
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(dictionary);
+        out.writeInt(tenantIds.length);
+        for (String tenantId : tenantIds) {
+            out.writeUTF(tenantId != null ? tenantId : "");
+        }
+        out.flush();
+
+        file.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, recordsEnd).putLong(16, recordsEnd)
+            .putLong(24, droppedRecords.sum());
+        file.force();
+        //the file is not truncated, as some platforms do not allow it while it is mapped.
+        channel.write(ByteBuffer.wrap(dictionary.toByteArray()), recordsEnd);
+        channel.close();
+    }
+
+    private static class ThreadBuffer {
+        final ByteBuffer records = ByteBuffer.allocateDirect(RECORDS_PER_BUFFER * RECORD_SIZE);
+    }
+}
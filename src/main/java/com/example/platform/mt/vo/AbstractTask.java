@@ -1,5 +1,7 @@
 package com.example.platform.mt.vo;
 
+import java.util.List;
+
 /**
  * Abstract class which represents a Task, which can be extended by
  * concrete Tasks.
@@ -19,6 +21,72 @@ public abstract class AbstractTask implements Runnable {
         return taskDescription;
     }
 
+    /**
+     * Returns the estimated cost of running this task, which is charged to the tenant by the
+     * cost aware scheduling algorithms. The unit is up to the application (e.g., milliseconds
+     * of worker time), as long as it is used consistently across tasks. Costs below 1 are charged
+     * as 1.
+     * @return estimated cost of this task, defaults to 1 i.e., all tasks cost the same.
+     */
+    public long getEstimatedCost() {
+        return 1;
+    }
+
+    /**
+     * Called when the task is dropped without being run, e.g., evicted to make space for a newer
+     * task of the tenant (see {@link RejectionPolicy#DROP_OLDEST}). Does nothing by default.
+     */
+    public void cancel() {
+    }
+
+    /**
+     * Returns the key by which duplicates of this task are recognized, when its tenant coalesces
+     * duplicates (see {@link TenantConfig#setCoalesceDuplicates(boolean)}). A task submitted while
+     * a task with an equal key is still queued is offered to it, see {@link #coalesce(AbstractTask)}.
+     * The key must not change once the task is submitted.
+     * @return the coalescing key, defaults to null i.e., the task is never coalesced.
+     */
+    public Object getCoalescingKey() {
+        return null;
+    }
+
+    /**
+     * Called on this queued task when a duplicate is submitted, i.e., a task with an equal
+     * coalescing key. The task may merge the duplicate into itself, e.g., take over its newer
+     * parameters, as it has not been taken by a worker yet. An absorbed duplicate is neither queued
+     * nor journaled, it is cancelled (see {@link #cancel()}), and its caller is told it was coalesced.
+     * @param duplicate the actual task of the duplicate.
+     * @return true if the duplicate is absorbed, false if it is queued as well. Defaults to true,
+     * i.e., duplicates are dropped.
+     */
+    public boolean coalesce(AbstractTask duplicate) {
+        return true;
+    }
+
+    /**
+     * Returns whether the next queued task of the same tenant can be run along with this task, as
+     * one batch in a single worker, e.g., to search for several queries over one connection. Only
+     * asked when batching is switched on (see {@link QueueManagerOptions#setMaxBatchSize(int)}), for
+     * the tasks queued right behind this one, while the batch has room.
+     * @param next the next task of the tenant.
+     * @return true if the next task joins the batch of this task, defaults to false.
+     */
+    public boolean canBatchWith(AbstractTask next) {
+        return false;
+    }
+
+    /**
+     * Runs this task along with the tasks which joined its batch, see {@link #canBatchWith(AbstractTask)}.
+     * Runs the tasks one after another by default.
+     * @param batch the other tasks of the batch, in the order they were queued.
+     */
+    public void runBatch(List<AbstractTask> batch) {
+        run();
+        for (AbstractTask task : batch) {
+            task.run();
+        }
+    }
+
     @Override
     public abstract void run();
 }
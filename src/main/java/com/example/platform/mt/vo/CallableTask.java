@@ -0,0 +1,46 @@
+package com.example.platform.mt.vo;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Task which runs a {@link Callable} and delivers its result through a {@link CompletableFuture}.
+ * The future is completed by the worker thread running the task, so dependent stages which are
+ * not async run right there without a hand-off to another thread.
+ * @param <V> result type of the callable.
+ */
+public class CallableTask<V> extends AbstractTask {
+    private final Callable<V> callable;
+    private final CompletableFuture<V> future = new CompletableFuture<>();
+
+    public CallableTask(String taskDescription, Callable<V> callable) {
+        super(taskDescription);
+        this.callable = callable;
+    }
+
+    /**
+     * Returns the future which is completed with the result of the callable, or exceptionally
+     * with the exception thrown by it.
+     * @return future for the result of the callable.
+     */
+    public CompletableFuture<V> getFuture() {
+        return future;
+    }
+
+    @Override
+    public void run() {
+        //the future may have been cancelled while the task was queued.
+        if (future.isDone())
+            return;
+        try {
+            future.complete(callable.call());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        future.cancel(false);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.platform.mt.vo;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the queued tasks of a tenant by their coalescing key (see
+ * {@link AbstractTask#getCoalescingKey()}), which lets a submitted task be absorbed by a duplicate
+ * still waiting in the tenant work queue, instead of being queued as well.
+ * <p>
+ * A task is registered when it is submitted, but absorbs duplicates only once it is queued, so a
+ * duplicate is never absorbed by a task which is rejected afterwards. It stops absorbing duplicates
+ * as soon as it leaves the queue, i.e., when a worker takes it, or when it is dropped or spilled
+ * to disk. The state of a task is guarded by the monitor of the task, so that absorbing a duplicate
+ * and taking the task do not overlap. Duplicates submitted concurrently may both be queued.
+ */
+public class CoalescingIndex {
+    static final int NOT_INDEXED = 0;
+    static final int PENDING = 1;
+    static final int QUEUED = 2;
+
+    //the entry of a task which left the queue is removed lazily, if the task can not remove it itself.
+    private final ConcurrentHashMap<Object, TenantAwareTask> queuedTasks = new ConcurrentHashMap<>();
+
+    /**
+     * Offers the task to the queued task with the same coalescing key, if there is one. Otherwise,
+     * the task is registered under its key, unless another task is registered already.
+     * @param task the submitted task.
+     * @return true if the task was absorbed, and must not be queued.
+     */
+    public boolean coalesce(TenantAwareTask task) {
+        Object key = task.getTask().getCoalescingKey();
+        if (key == null)
+            return false;
+        //published along with the task by the map.
+        task.coalescingIndex = this;
+        task.coalescingKey = key;
+        task.coalescingState = PENDING;
+        while (true) {
+            TenantAwareTask indexed = queuedTasks.putIfAbsent(key, task);
+            if (indexed == null)
+                return false;
+            synchronized (indexed) {
+                if (indexed.coalescingIndex == this && indexed.coalescingState != NOT_INDEXED) {
+                    unregistered(task);
+                    //a pending task may still be rejected, so the task is queued as well.
+                    return indexed.coalescingState == QUEUED && indexed.getTask().coalesce(task.getTask());
+                }
+            }
+            queuedTasks.remove(key, indexed);
+        }
+    }
+
+    //called by the task once it is queued.
+    void queued(TenantAwareTask task) {
+        synchronized (task) {
+            if (task.coalescingIndex == this && task.coalescingState == PENDING)
+                task.coalescingState = QUEUED;
+        }
+    }
+
+    //called by the task once it left the queue, or was not queued after all.
+    void left(TenantAwareTask task) {
+        Object key;
+        synchronized (task) {
+            if (task.coalescingIndex != this)
+                return;
+            key = task.coalescingKey;
+            unregistered(task);
+        }
+        queuedTasks.remove(key, task);
+    }
+
+    private static void unregistered(TenantAwareTask task) {
+        task.coalescingIndex = null;
+        task.coalescingKey = null;
+        task.coalescingState = NOT_INDEXED;
+    }
+
+    /**
+     * Returns the number of registered tasks, including those which left the queue but are not
+     * removed yet.
+     * @return the number of entries of the index.
+     */
+    public int size() {
+        return queuedTasks.size();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.platform.mt.vo;
+
+/**
+ * What happens to the tasks a tenant has queued, when the tenant is de-provisioned.
+ */
+public enum DeProvisionMode {
+    /**
+     * The queued tasks are still handed out to workers, and the tenant is removed once the last
+     * one is taken.
+     */
+    DRAIN,
+    /**
+     * The queued tasks are removed and cancelled.
+     */
+    CANCEL,
+    /**
+     * The queued tasks are removed in the order they were queued, to be submitted elsewhere,
+     * e.g., to the queue manager of another node.
+     */
+    MIGRATE;
+}
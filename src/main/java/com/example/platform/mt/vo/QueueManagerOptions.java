@@ -0,0 +1,209 @@
+package com.example.platform.mt.vo;
+
+import com.example.platform.mt.journal.TaskJournal;
+import com.example.platform.mt.journal.TaskSerializer;
+
+import java.nio.file.Path;
+
+/**
+ * Options of the work queue manager, which apply to all its tenants.
+ */
+public class QueueManagerOptions {
+    private WorkQueueType workQueueType;
+    private int taskPoolSize;
+    private long idleQueueTimeoutMillis;
+    private boolean taskPrioritiesEnabled;
+    private boolean dropExpiredTasks;
+    private TaskJournal journal;
+    private Path spillDirectory;
+    private TaskSerializer spillSerializer;
+    private int maxBatchSize;
+    private WorkerWaitStrategy workerWaitStrategy;
+    private long workerSpinTimeNanos;
+    private int maxSpinningWorkers;
+
+    public QueueManagerOptions() {
+        this.workQueueType = WorkQueueType.LINKED;
+        this.taskPoolSize = 0;
+        this.idleQueueTimeoutMillis = 0;
+        this.taskPrioritiesEnabled = false;
+        this.dropExpiredTasks = false;
+        this.journal = null;
+        this.spillDirectory = null;
+        this.spillSerializer = null;
+        this.maxBatchSize = 1;
+        this.workerWaitStrategy = WorkerWaitStrategy.BLOCKING;
+        this.workerSpinTimeNanos = 1_000_000;
+        this.maxSpinningWorkers = 1;
+    }
+
+    public WorkQueueType getWorkQueueType() {
+        return workQueueType;
+    }
+
+    /**
+     * Sets the type of the tenant work queues. Defaults to {@link WorkQueueType#LINKED}.
+     * @param workQueueType type of the tenant work queues.
+     */
+    public void setWorkQueueType(WorkQueueType workQueueType) {
+        this.workQueueType = workQueueType;
+    }
+
+    public int getTaskPoolSize() {
+        return taskPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of recycled tenant aware tasks kept for reuse, see
+     * {@link TenantAwareTaskPool}. Defaults to 0, i.e., tasks are not recycled.
+     * @param taskPoolSize maximum number of recycled tasks kept for reuse.
+     */
+    public void setTaskPoolSize(int taskPoolSize) {
+        this.taskPoolSize = taskPoolSize;
+    }
+
+    public long getIdleQueueTimeoutMillis() {
+        return idleQueueTimeoutMillis;
+    }
+
+    /**
+     * Sets the time after which the work queue of an idle tenant, i.e., a tenant which has no task
+     * queued and has not submitted a task since, is reclaimed. When set, work queues are created
+     * when tenants submit their first task rather than when they are provisioned, which suits
+     * many tenants of which only a few are active at a time. Defaults to 0, i.e., work queues are
+     * created when tenants are provisioned and kept until they are de-provisioned.
+     * @param idleQueueTimeoutMillis idle time after which the work queue of a tenant is reclaimed.
+     */
+    public void setIdleQueueTimeoutMillis(long idleQueueTimeoutMillis) {
+        this.idleQueueTimeoutMillis = idleQueueTimeoutMillis;
+    }
+
+    public boolean isTaskPrioritiesEnabled() {
+        return taskPrioritiesEnabled;
+    }
+
+    /**
+     * Sets whether the tenant work queues order tasks by {@link TaskPriority}, rather than only by
+     * the order they were queued. Each tenant work queue then keeps a queue per priority, which
+     * for {@link WorkQueueType#ARRAY} multiplies the memory preallocated per tenant by the number
+     * of priorities. Defaults to false, i.e., the priorities of tasks are ignored.
+     * @param taskPrioritiesEnabled whether tasks are ordered by priority within their tenant.
+     */
+    public void setTaskPrioritiesEnabled(boolean taskPrioritiesEnabled) {
+        this.taskPrioritiesEnabled = taskPrioritiesEnabled;
+    }
+
+    public boolean isDropExpiredTasks() {
+        return dropExpiredTasks;
+    }
+
+    /**
+     * Sets whether tasks whose deadline has passed by the time a worker takes them are dropped
+     * instead of being handed out, see {@link TenantAwareTask#setDeadline(long, java.util.concurrent.TimeUnit)}.
+     * Dropped tasks are cancelled, and recorded as dropped in the metrics of their tenant.
+     * Defaults to false, i.e., tasks are run however late they are.
+     * @param dropExpiredTasks whether expired tasks are dropped.
+     */
+    public void setDropExpiredTasks(boolean dropExpiredTasks) {
+        this.dropExpiredTasks = dropExpiredTasks;
+    }
+
+    public TaskJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal which the submitted tasks are appended to, so that the tasks queued when the
+     * process stops are replayed into the tenant work queues when the queue manager is created next.
+     * Defaults to null, i.e., queued tasks are lost on a restart.
+     * @param journal journal of the queue manager, opened and closed by the caller.
+     */
+    public void setJournal(TaskJournal journal) {
+        this.journal = journal;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the directory of the files which the tenants configured to spill to disk queue their
+     * tasks beyond their work capacity in, see {@link TenantConfig#setSpillToDisk(boolean)}. A file
+     * is created when a tenant spills its first task, and deleted once its tasks are read back.
+     * Spilled tasks which are not journaled are lost on a restart. Defaults to null.
+     * @param spillDirectory directory of the spill files, created if it does not exist.
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public TaskSerializer getSpillSerializer() {
+        return spillSerializer;
+    }
+
+    /**
+     * Sets the serializer of the spilled tasks, required along with the spill directory.
+     * Defaults to null.
+     * @param spillSerializer serializer of the spilled tasks.
+     */
+    public void setSpillSerializer(TaskSerializer spillSerializer) {
+        this.spillSerializer = spillSerializer;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of tasks of a tenant which a worker takes in one turn of the tenant,
+     * and runs as one batch, for the tasks which opt in (see {@link AbstractTask#canBatchWith(AbstractTask)}).
+     * Every task of a batch counts against the fair share of its tenant. Supported by the
+     * {@link SchedulingStrategy#FAIR_QUEUEING}, {@link SchedulingStrategy#WEIGHTED_FAIR_QUEUEING},
+     * {@link SchedulingStrategy#DEFICIT_ROUND_ROBIN} and {@link SchedulingStrategy#EARLIEST_DEADLINE_FIRST}
+     * strategies. Defaults to 1, i.e., tasks are handed out one at a time.
+     * @param maxBatchSize maximum number of tasks in a batch.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public WorkerWaitStrategy getWorkerWaitStrategy() {
+        return workerWaitStrategy;
+    }
+
+    /**
+     * Sets how workers wait for a task while the scheduler has none, before they block in the
+     * scheduler. Defaults to {@link WorkerWaitStrategy#BLOCKING}.
+     * @param workerWaitStrategy how idle workers wait for a task.
+     */
+    public void setWorkerWaitStrategy(WorkerWaitStrategy workerWaitStrategy) {
+        this.workerWaitStrategy = workerWaitStrategy;
+    }
+
+    public long getWorkerSpinTimeNanos() {
+        return workerSpinTimeNanos;
+    }
+
+    /**
+     * Sets how long an idle worker waits actively for a task, as set by the worker wait strategy,
+     * before it blocks in the scheduler. Long.MAX_VALUE lets workers spin until a task arrives, or
+     * their timeout elapses. Defaults to 1 millisecond.
+     * @param workerSpinTimeNanos maximum time an idle worker spins, in nanoseconds.
+     */
+    public void setWorkerSpinTimeNanos(long workerSpinTimeNanos) {
+        this.workerSpinTimeNanos = workerSpinTimeNanos;
+    }
+
+    public int getMaxSpinningWorkers() {
+        return maxSpinningWorkers;
+    }
+
+    /**
+     * Sets the maximum number of idle workers which wait actively at once, the others block in the
+     * scheduler right away. Bounds the cores burnt by idle workers. Defaults to 1.
+     * @param maxSpinningWorkers maximum number of spinning workers.
+     */
+    public void setMaxSpinningWorkers(int maxSpinningWorkers) {
+        this.maxSpinningWorkers = maxSpinningWorkers;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.platform.mt.vo;
+
+/**
+ * Policy applied when a task is submitted without waiting (or waiting for a limited time) and
+ * the tenant work queue is full.
+ */
+public enum RejectionPolicy {
+    /**
+     * Rejects the new task.
+     */
+    REJECT,
+    /**
+     * Drops the oldest task waiting in the tenant work queue to make space for the new task,
+     * suits tenants for which only the latest work matters.
+     */
+    DROP_OLDEST,
+    /**
+     * Hands the new task to the overflow handler of the work queue manager, e.g., to be queued
+     * elsewhere or processed later. Rejects the task if there is no overflow handler.
+     */
+    SHED_TO_OVERFLOW;
+}
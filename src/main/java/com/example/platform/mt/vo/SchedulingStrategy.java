@@ -13,5 +13,27 @@ public enum SchedulingStrategy {
      * Weighted fair queueing strategy.
      * https://en.wikipedia.org/wiki/Weighted_fair_queueing
      */
-    WEIGHTED_FAIR_QUEUEING;
+    WEIGHTED_FAIR_QUEUEING,
+    /**
+     * Deficit round robin strategy, weighted by tenant weight and charging the estimated
+     * cost of each task.
+     * https://en.wikipedia.org/wiki/Deficit_round_robin
+     */
+    DEFICIT_ROUND_ROBIN,
+    /**
+     * Fair queueing strategy, which hands off tenants through a lock-free queue instead of a
+     * blocking queue shared by all producers and workers. Suits many workers and producers.
+     */
+    LOCK_FREE_FAIR_QUEUEING,
+    /**
+     * Fair queueing strategy, which splits tenants across shards with one ready queue each.
+     * Workers take tenants from their home shard and steal from other shards when it is empty.
+     */
+    SHARDED_FAIR_QUEUEING,
+    /**
+     * Earliest deadline first strategy, which prefers the tenant whose next task has the earliest
+     * deadline, as long as no tenant has been passed over for longer than a fairness window.
+     * https://en.wikipedia.org/wiki/Earliest_deadline_first_scheduling
+     */
+    EARLIEST_DEADLINE_FIRST;
 }
@@ -18,4 +18,10 @@ public class SearchTask extends AbstractTask {
             e.printStackTrace();
         }
     }
+
+    //searches of the same kind can share the connection of one worker.
+    @Override
+    public boolean canBatchWith(AbstractTask next) {
+        return next.getClass() == getClass();
+    }
 }
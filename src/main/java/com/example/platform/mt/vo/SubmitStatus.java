@@ -0,0 +1,30 @@
+package com.example.platform.mt.vo;
+
+/**
+ * Outcome of a task submission to the work queue manager.
+ */
+public enum SubmitStatus {
+    /**
+     * Task was queued, possibly after dropping an older task of the tenant
+     * (see {@link RejectionPolicy#DROP_OLDEST}).
+     */
+    ACCEPTED,
+    /**
+     * Task was rejected, because the tenant work queue is full.
+     */
+    TENANT_FULL,
+    /**
+     * Task was rejected, because the tenant is not provisioned.
+     */
+    UNKNOWN_TENANT,
+    /**
+     * Task was not queued, because the tenant work queue is full, and was handed to the
+     * overflow handler instead (see {@link RejectionPolicy#SHED_TO_OVERFLOW}).
+     */
+    SHED,
+    /**
+     * Task was not queued, because a duplicate of it is still queued and absorbed it
+     * (see {@link TenantConfig#setCoalesceDuplicates(boolean)}). The task is cancelled.
+     */
+    COALESCED;
+}
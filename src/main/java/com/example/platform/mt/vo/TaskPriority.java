@@ -0,0 +1,22 @@
+package com.example.platform.mt.vo;
+
+/**
+ * Priority of a task within its tenant. On each turn of a tenant, the scheduler hands out a task
+ * of the highest priority the tenant has queued, tasks of the same priority are handed out in the
+ * order they were queued. Priorities do not change how turns are shared between tenants, see
+ * {@link QueueManagerOptions#setTaskPrioritiesEnabled(boolean)}.
+ */
+public enum TaskPriority {
+    /**
+     * Tasks a user is waiting for, e.g., searches.
+     */
+    INTERACTIVE,
+    /**
+     * Regular tasks, the default priority.
+     */
+    BATCH,
+    /**
+     * Tasks which can wait until the tenant has nothing else to do, e.g., bulk reindexing.
+     */
+    BACKGROUND;
+}
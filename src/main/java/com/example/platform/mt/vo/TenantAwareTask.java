@@ -1,13 +1,52 @@
 package com.example.platform.mt.vo;
 
+import com.example.platform.mt.TenantLimiter;
+import com.example.platform.mt.TenantRegistry;
+import com.example.platform.mt.journal.TaskJournal;
+import com.example.platform.mt.metrics.TenantMetrics;
+import com.example.platform.mt.trace.TraceEventType;
+import com.example.platform.mt.trace.TraceRecorder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Tenant aware task which wraps the actual task and stores tenant id.
  */
 public class TenantAwareTask implements Runnable {
+    private static final AtomicIntegerFieldUpdater<TenantAwareTask> FREE =
+        AtomicIntegerFieldUpdater.newUpdater(TenantAwareTask.class, "free");
+
     private String tenantId;
     private AbstractTask task;
+    private int tenantHandle;
+    private TaskPriority priority = TaskPriority.BATCH;
+    private boolean hasDeadline;
+    private long deadline;
+    //set when the task is submitted to the work queue manager.
+    private TenantMetrics metrics;
+    private TraceRecorder traceRecorder;
+    private long submitTime;
+    //set when the task is handed out by a scheduler which limits its tenant.
+    private TenantLimiter limiter;
+    //set when the task is appended to the journal, until it is acknowledged.
+    private TaskJournal journal;
+    private long journalSequence;
+    //set while the task is registered in the coalescing index of its tenant, guarded by the
+    //monitor of the task, see CoalescingIndex.
+    CoalescingIndex coalescingIndex;
+    Object coalescingKey;
+    int coalescingState;
+    //tasks of the tenant handed out along with this task, see AbstractTask#runBatch.
+    private List<TenantAwareTask> batch;
+    //set for the tasks of a pool, see TenantAwareTaskPool.
+    TenantAwareTaskPool pool;
+    //1 once the task is released, set atomically so that a task released twice is pooled once.
+    volatile int free;
 
     public String getTenantId() {
         return tenantId;
@@ -17,9 +56,289 @@ public class TenantAwareTask implements Runnable {
         return task;
     }
 
+    /**
+     * Returns the estimated cost of the task charged by the cost aware schedulers, see
+     * {@link AbstractTask#getEstimatedCost()}. Costs below 1 are charged as 1, so that a task can not
+     * credit its tenant instead.
+     * @return estimated cost of the task, at least 1.
+     */
+    public long getEstimatedCost() {
+        return Math.max(1, task.getEstimatedCost());
+    }
+
     public TenantAwareTask(String tenantId, AbstractTask task) {
+        this(tenantId, TenantRegistry.NO_HANDLE, task);
+    }
+
+    /**
+     * Creates a task of a tenant whose handle was resolved up front, with
+     * {@code MultiTenantWorkQueueManager.getTenantHandle}, so that it is not looked up by
+     * tenant id on every submission.
+     * @param tenantId tenant id of the tenant.
+     * @param tenantHandle handle of the tenant.
+     * @param task the actual task.
+     */
+    public TenantAwareTask(String tenantId, int tenantHandle, AbstractTask task) {
         this.task = task;
         this.tenantId = tenantId;
+        this.tenantHandle = tenantHandle;
+    }
+
+    void reuse(String tenantId, int tenantHandle, AbstractTask task) {
+        this.tenantId = tenantId;
+        this.tenantHandle = tenantHandle;
+        this.task = task;
+        this.priority = TaskPriority.BATCH;
+        this.hasDeadline = false;
+        this.coalescingIndex = null;
+        this.coalescingKey = null;
+        this.coalescingState = CoalescingIndex.NOT_INDEXED;
+        this.batch = null;
+        this.free = 0;
+    }
+
+    //drops the references of a released task, so that the pool does not keep them alive. Returns
+    //false if the task was released already.
+    boolean clear() {
+        if (!FREE.compareAndSet(this, 0, 1))
+            return false;
+        this.tenantId = null;
+        this.task = null;
+        this.metrics = null;
+        this.traceRecorder = null;
+        this.limiter = null;
+        this.journal = null;
+        this.coalescingIndex = null;
+        this.coalescingKey = null;
+        this.batch = null;
+        return true;
+    }
+
+    public TaskPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of the task within its tenant, which is honoured if the queue manager
+     * orders tasks by priority, see {@link QueueManagerOptions#setTaskPrioritiesEnabled(boolean)}.
+     * Must be set before the task is submitted. Defaults to {@link TaskPriority#BATCH}.
+     * @param priority priority of the task.
+     */
+    public void setPriority(TaskPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Sets the deadline of the task, by when its caller needs it to have run, e.g., the timeout of
+     * the request it serves. Deadlines are honoured by the
+     * {@link SchedulingStrategy#EARLIEST_DEADLINE_FIRST} strategy, and a task whose deadline has
+     * passed can be dropped instead of being run, see
+     * {@link QueueManagerOptions#setDropExpiredTasks(boolean)}. Must be set before the task is
+     * submitted. Tasks have no deadline by default.
+     * @param timeout time from now until the deadline, in units of unit
+     * @param unit a TimeUnit determining how to interpret the timeout parameter
+     */
+    public void setDeadline(long timeout, TimeUnit unit) {
+        this.deadline = System.nanoTime() + unit.toNanos(timeout);
+        this.hasDeadline = true;
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} by which the task should have run.
+     * @return the deadline of the task, only meaningful if it has one.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns whether the deadline of the task has passed.
+     * @param now current {@link System#nanoTime()}.
+     * @return true if the task has a deadline, and it has passed.
+     */
+    public boolean isExpired(long now) {
+        return hasDeadline && now - deadline > 0;
+    }
+
+    /**
+     * Drops the task instead of running it, e.g., once its deadline has passed. Cancels the actual
+     * task, frees the in-flight slot the task took from its tenant when it was handed out, and
+     * acknowledges it in the journal.
+     */
+    public void cancel() {
+        leaveCoalescingIndex();
+        List<TenantAwareTask> batch = takeBatch();
+        try {
+            task.cancel();
+        } finally {
+            released();
+            for (TenantAwareTask batched : batch) {
+                batched.cancel();
+                batched.releaseToPool();
+            }
+        }
+    }
+
+    /**
+     * Called by the scheduler which hands out the task, to add the next task of the tenant to its
+     * batch, see {@link AbstractTask#canBatchWith(AbstractTask)}.
+     * @param next the next task of the tenant.
+     */
+    public void addToBatch(TenantAwareTask next) {
+        if (batch == null)
+            batch = new ArrayList<>();
+        batch.add(next);
+    }
+
+    /**
+     * Removes the other tasks from the batch of this task, e.g., to hand them out on their own.
+     * @return the other tasks of the batch, in the order they were queued, or an empty list if the
+     * task was handed out on its own.
+     */
+    public List<TenantAwareTask> takeBatch() {
+        List<TenantAwareTask> batch = this.batch;
+        this.batch = null;
+        return batch != null ? batch : Collections.<TenantAwareTask>emptyList();
+    }
+
+    /**
+     * Returns the number of tasks run along with this task, including this task.
+     * @return the size of the batch, 1 if the task was handed out on its own.
+     */
+    public int getBatchSize() {
+        return batch != null ? batch.size() + 1 : 1;
+    }
+
+    /**
+     * Returns the handle of the tenant, see {@link TenantRegistry}.
+     * @return the tenant handle, or {@link TenantRegistry#NO_HANDLE} if it is not resolved yet.
+     */
+    public int getTenantHandle() {
+        return tenantHandle;
+    }
+
+    /**
+     * Called by the work queue manager when the task is submitted, so that the wait and run time
+     * of the task are recorded in the metrics of its tenant, and in the trace if it is switched on.
+     * @param tenantHandle handle of the tenant, resolved by the work queue manager.
+     * @param metrics metrics of the tenant.
+     * @param traceRecorder recorder of the scheduling trace, or null if tracing is switched off.
+     */
+    public void markSubmitted(int tenantHandle, TenantMetrics metrics, TraceRecorder traceRecorder) {
+        markSubmitted(tenantHandle, metrics, traceRecorder, System.nanoTime());
+    }
+
+    /**
+     * Called by a work queue which restores the task, e.g., after it was spilled to disk, so that it
+     * keeps the time at which it was originally submitted.
+     * @param tenantHandle handle of the tenant.
+     * @param metrics metrics of the tenant.
+     * @param traceRecorder recorder of the scheduling trace, or null if tracing is switched off.
+     * @param submitTime {@link System#nanoTime()} at which the task was submitted.
+     */
+    public void markSubmitted(int tenantHandle, TenantMetrics metrics, TraceRecorder traceRecorder, long submitTime) {
+        this.tenantHandle = tenantHandle;
+        this.metrics = metrics;
+        this.traceRecorder = traceRecorder;
+        this.submitTime = submitTime;
+    }
+
+    /**
+     * Called by the scheduler when it hands out the task of a tenant with limits, so that the
+     * in-flight slot taken for the task is freed once the task has run.
+     * @param limiter limiter of the tenant.
+     */
+    public void markDispatched(TenantLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Called by the journal when the task is appended to it, or replayed from it, so that the task
+     * is acknowledged once it has run or was dropped.
+     * @param journal the journal.
+     * @param sequence sequence of the task in the journal.
+     */
+    public void markJournaled(TaskJournal journal, long sequence) {
+        this.journal = journal;
+        this.journalSequence = sequence;
+    }
+
+    /**
+     * Returns the journal the task was appended to.
+     * @return the journal, or null if the task was not journaled, or was already acknowledged.
+     */
+    public TaskJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns the sequence of the task in the journal, set when the task was appended to it.
+     * @return the sequence of the task, only meaningful if it was journaled.
+     */
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    /**
+     * Acknowledges the task in the journal, so that it is not replayed after a restart, e.g., once
+     * it was rejected. Done when the task has run, or was cancelled. Does nothing if the task was
+     * not journaled, or was already acknowledged.
+     */
+    public void acknowledge() {
+        TaskJournal journal = this.journal;
+        if (journal != null) {
+            this.journal = null;
+            journal.ack(journalSequence);
+        }
+    }
+
+    /**
+     * Called by the work queue manager once the task is queued, so that it absorbs the duplicates
+     * submitted after it, see {@link CoalescingIndex}. Does nothing if the task is not registered.
+     */
+    public void markQueued() {
+        CoalescingIndex index = coalescingIndex;
+        if (index != null)
+            index.queued(this);
+    }
+
+    /**
+     * Called once the task leaves the tenant work queue, e.g., when a worker takes it, or once it is
+     * not queued after all, so that it does not absorb duplicates anymore. Does nothing if the task
+     * is not registered in a {@link CoalescingIndex}.
+     */
+    public void leaveCoalescingIndex() {
+        CoalescingIndex index = coalescingIndex;
+        if (index != null)
+            index.left(this);
+    }
+
+    /**
+     * Returns the metrics of the tenant, set when the task was submitted.
+     * @return the metrics of the tenant, or null if the task was not submitted.
+     */
+    public TenantMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the recorder of the scheduling trace, set when the task was submitted.
+     * @return the trace recorder, or null if tracing was switched off.
+     */
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the task was submitted.
+     * @return the time at which the task was submitted.
+     */
+    public long getSubmitTime() {
+        return submitTime;
     }
 
     @Override
@@ -32,7 +351,7 @@ public class TenantAwareTask implements Runnable {
         if (obj == null || !(obj instanceof TenantAwareTask))
             return false;
         TenantAwareTask other = (TenantAwareTask)obj;
-        return other.tenantId == this.tenantId && other.task.equals(this.task);
+        return Objects.equals(other.tenantId, this.tenantId) && Objects.equals(other.task, this.task);
     }
 
     @Override
@@ -42,7 +361,73 @@ public class TenantAwareTask implements Runnable {
 
     @Override
     public void run() {
-        System.out.println("Processing task for "+tenantId);
-        task.run();
+        if (batch != null) {
+            runBatch();
+            return;
+        }
+        if (metrics == null) {
+            try {
+                task.run();
+            } finally {
+                released();
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            long end = System.nanoTime();
+            metrics.recordCompleted(end - start);
+            if (traceRecorder != null)
+                traceRecorder.record(TraceEventType.COMPLETE, tenantId, end, end - start);
+            released();
+        }
+    }
+
+    //records every task of the batch with an equal share of the time it took to run the batch.
+    private void runBatch() {
+        List<TenantAwareTask> batch = takeBatch();
+        List<AbstractTask> tasks = new ArrayList<>(batch.size());
+        for (TenantAwareTask batched : batch) {
+            tasks.add(batched.task);
+        }
+        long start = System.nanoTime();
+        try {
+            task.runBatch(tasks);
+        } finally {
+            long end = System.nanoTime();
+            long executionNanos = (end - start)/(batch.size() + 1);
+            completed(end, executionNanos);
+            for (TenantAwareTask batched : batch) {
+                batched.completed(end, executionNanos);
+                batched.releaseToPool();
+            }
+        }
+    }
+
+    //the other tasks of a batch are referenced only by the task which handed them out, so they go
+    //back to their pool once they have run, while the caller recycles the task itself.
+    private void releaseToPool() {
+        if (pool != null)
+            pool.release(this);
+    }
+
+    private void completed(long end, long executionNanos) {
+        if (metrics != null) {
+            metrics.recordCompleted(executionNanos);
+            if (traceRecorder != null)
+                traceRecorder.record(TraceEventType.COMPLETE, tenantId, end, executionNanos);
+        }
+        released();
+    }
+
+    private void released() {
+        TenantLimiter limiter = this.limiter;
+        if (limiter != null) {
+            this.limiter = null;
+            limiter.release();
+        }
+        acknowledge();
     }
 }
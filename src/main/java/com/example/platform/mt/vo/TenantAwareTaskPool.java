@@ -0,0 +1,58 @@
+package com.example.platform.mt.vo;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of tenant aware tasks, which lets producers reuse the task wrappers once the workers have
+ * run them, so that submitting a task does not allocate a new wrapper. A task must be released
+ * only once it is not referenced anymore, i.e., after it was run, or after it was rejected or
+ * dropped and its caller is done with it. Tasks not obtained from the pool are never pooled.
+ */
+public class TenantAwareTaskPool {
+    //free tasks, an array based queue so that releasing a task does not allocate.
+    private final ArrayBlockingQueue<TenantAwareTask> freeTasks;
+
+    /**
+     * Creates a task pool.
+     * @param maxSize maximum number of free tasks kept, further released tasks are left to the garbage collector.
+     */
+    public TenantAwareTaskPool(int maxSize) {
+        freeTasks = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * Returns a free task wrapping the specified task, or a new one if there is no free task.
+     * @param tenantId tenant id of the tenant.
+     * @param tenantHandle handle of the tenant, or {@code TenantRegistry.NO_HANDLE}.
+     * @param task the actual task.
+     * @return the tenant aware task.
+     */
+    public TenantAwareTask obtain(String tenantId, int tenantHandle, AbstractTask task) {
+        TenantAwareTask tenantAwareTask = freeTasks.poll();
+        if (tenantAwareTask == null) {
+            tenantAwareTask = new TenantAwareTask(tenantId, tenantHandle, task);
+            tenantAwareTask.pool = this;
+        } else {
+            tenantAwareTask.reuse(tenantId, tenantHandle, task);
+        }
+        return tenantAwareTask;
+    }
+
+    /**
+     * Releases the task for reuse, if it was obtained from this pool.
+     * @param task the tenant aware task, which must not be used after it is released.
+     */
+    public void release(TenantAwareTask task) {
+        if (task.pool != this || !task.clear())
+            return;
+        freeTasks.offer(task);
+    }
+
+    /**
+     * Returns the number of free tasks.
+     * @return the number of free tasks.
+     */
+    public int getFreeTasks() {
+        return freeTasks.size();
+    }
+}
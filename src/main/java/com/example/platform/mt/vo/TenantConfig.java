@@ -7,12 +7,36 @@ public class TenantConfig {
     private String tenantName;
     private int weight;
     private int workCapacity;
+    private RejectionPolicy rejectionPolicy;
+    private double rateLimit;
+    private int burst;
+    private int maxInFlight;
+    private boolean spillToDisk;
+    private boolean coalesceDuplicates;
 
     public TenantConfig(String tenantId, String tenantName, int workCapacity) {
         this.tenantId = tenantId;
         this.tenantName = tenantName;
         this.weight = 1;
         this.workCapacity = workCapacity;
+        this.rejectionPolicy = RejectionPolicy.REJECT;
+    }
+
+    /**
+     * Creates a copy of the configuration, e.g., to change some of its settings.
+     * @param other configuration to copy.
+     */
+    public TenantConfig(TenantConfig other) {
+        this.tenantId = other.tenantId;
+        this.tenantName = other.tenantName;
+        this.weight = other.weight;
+        this.workCapacity = other.workCapacity;
+        this.rejectionPolicy = other.rejectionPolicy;
+        this.rateLimit = other.rateLimit;
+        this.burst = other.burst;
+        this.maxInFlight = other.maxInFlight;
+        this.spillToDisk = other.spillToDisk;
+        this.coalesceDuplicates = other.coalesceDuplicates;
     }
 
     public String getTenantId() {
@@ -60,4 +84,90 @@ public class TenantConfig {
     public int getWorkCapacity() {
         return workCapacity;
     }
+
+    public void setWorkCapacity(int workCapacity) {
+        this.workCapacity = workCapacity;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * Sets the policy applied when a task can not be submitted without waiting, because the
+     * tenant work queue is full. Defaults to {@link RejectionPolicy#REJECT}.
+     * @param rejectionPolicy rejection policy of the tenant.
+     */
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Sets the number of tasks per second the tenant is handed out on average. Tasks beyond the
+     * rate stay queued until the tenant is refilled with tokens. Defaults to 0, i.e., unlimited.
+     * @param rateLimit tasks per second, or 0 for no limit.
+     */
+    public void setRateLimit(double rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Sets the number of tasks which can be handed out at once, after the tenant was idle, when
+     * the tenant has a rate limit. Defaults to 0, i.e., the tasks of one second.
+     * @param burst maximum number of tokens of the tenant, or 0 for the default.
+     */
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the maximum number of tasks of the tenant which are handed out and not yet completed.
+     * Defaults to 0, i.e., unlimited.
+     * @param maxInFlight maximum number of running tasks, or 0 for no limit.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public boolean isSpillToDisk() {
+        return spillToDisk;
+    }
+
+    /**
+     * Sets whether the tasks submitted beyond the work capacity of the tenant are spilled to a file,
+     * see {@link QueueManagerOptions#setSpillDirectory(java.nio.file.Path)}, instead of holding back
+     * or rejecting their producers. The work capacity then bounds the tasks kept in memory. Spilled
+     * tasks are handed out in the order they were submitted, regardless of their priority.
+     * Defaults to false.
+     * @param spillToDisk whether tasks beyond the work capacity are spilled.
+     */
+    public void setSpillToDisk(boolean spillToDisk) {
+        this.spillToDisk = spillToDisk;
+    }
+
+    public boolean isCoalesceDuplicates() {
+        return coalesceDuplicates;
+    }
+
+    /**
+     * Sets whether a task of the tenant is coalesced with a duplicate still waiting in the tenant
+     * work queue, i.e., a queued task with an equal {@link AbstractTask#getCoalescingKey()}, instead
+     * of being queued as well. Defaults to false.
+     * @param coalesceDuplicates whether duplicates of queued tasks are coalesced.
+     */
+    public void setCoalesceDuplicates(boolean coalesceDuplicates) {
+        this.coalesceDuplicates = coalesceDuplicates;
+    }
 }
@@ -0,0 +1,17 @@
+package com.example.platform.mt.vo;
+
+/**
+ * Type of the bounded work queue of each tenant.
+ */
+public enum WorkQueueType {
+    /**
+     * Linked queue, which allocates a node for every queued task, but lets producers and workers
+     * lock its ends separately.
+     */
+    LINKED,
+    /**
+     * Ring buffer preallocated up to the work capacity of the tenant, which does not allocate
+     * when a task is queued or taken.
+     */
+    ARRAY;
+}
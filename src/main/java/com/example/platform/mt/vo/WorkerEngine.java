@@ -0,0 +1,19 @@
+package com.example.platform.mt.vo;
+
+/**
+ * Execution engine on which the worker pool runs its workers.
+ */
+public enum WorkerEngine {
+    /**
+     * One dedicated platform thread per worker.
+     */
+    PLATFORM_THREADS,
+    /**
+     * Workers run as tasks of a {@link java.util.concurrent.ForkJoinPool} owned by the worker pool.
+     */
+    FORK_JOIN_POOL,
+    /**
+     * One virtual thread per worker, needs Java 21 or later at runtime.
+     */
+    VIRTUAL_THREADS;
+}
@@ -0,0 +1,30 @@
+package com.example.platform.mt.vo;
+
+/**
+ * How a worker waits for a task while the scheduler has none, before it blocks in the scheduler.
+ * A worker which waits actively is woken up by a burst without an OS park/unpark cycle, at the
+ * cost of the CPU it burns while idle, which is bounded by the spin time and the number of
+ * workers allowed to spin at once (see {@link QueueManagerOptions#setWorkerSpinTimeNanos(long)}
+ * and {@link QueueManagerOptions#setMaxSpinningWorkers(int)}).
+ */
+public enum WorkerWaitStrategy {
+    /**
+     * Blocks in the scheduler right away.
+     */
+    BLOCKING,
+    /**
+     * Polls the scheduler in a tight loop for the spin time, then blocks. Lowest wake-up latency,
+     * keeps a core busy per spinning worker.
+     */
+    BUSY_SPIN,
+    /**
+     * Polls the scheduler in a tight loop for a while, then yields the CPU between polls, for the
+     * rest of the spin time, then blocks.
+     */
+    SPIN_THEN_YIELD,
+    /**
+     * Polls the scheduler in a tight loop for a while, then parks for growing intervals between
+     * polls, for the rest of the spin time, then blocks.
+     */
+    SPIN_THEN_PARK;
+}
@@ -0,0 +1,172 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.WorkQueueType;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class ArrayWorkQueueTest {
+    private static final int WORK_CAPACITY = 4;
+    private static final AbstractTask NO_OP_TASK = new AbstractTask("no-op") {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final SchedulingStrategy strategy;
+    private MultiTenantWorkQueueManager queueManager;
+
+    public ArrayWorkQueueTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setWorkQueueType(WorkQueueType.ARRAY);
+        options.setTaskPoolSize(16);
+        queueManager = TestTenants.newQueueManager(2, WORK_CAPACITY, strategy, options);
+    }
+
+    @Test
+    public void tenantQueueIsBoundedByWorkCapacity() throws Exception {
+        int accepted = 0;
+        while (queueManager.trySubmit(queueManager.newTask("tenantId:0", NO_OP_TASK)) == SubmitStatus.ACCEPTED) {
+            accepted++;
+        }
+        assertTrue(accepted >= WORK_CAPACITY-1 && accepted <= WORK_CAPACITY);
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(queueManager.newTask("tenantId:1", NO_OP_TASK)));
+        assertEquals(accepted+1, drain());
+    }
+
+    @Test
+    public void tasksAreRecycled() throws Exception {
+        TenantAwareTask task = queueManager.newTask("tenantId:0", NO_OP_TASK);
+        assertEquals(queueManager.getTenantHandle("tenantId:0"), task.getTenantHandle());
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(task));
+        TenantAwareTask taken = queueManager.pollWork(0, TimeUnit.MILLISECONDS);
+        assertSame(task, taken);
+        taken.run();
+        queueManager.recycle(taken);
+        //a released task is not released twice.
+        queueManager.recycle(taken);
+
+        TenantAwareTask reused = queueManager.newTask("tenantId:1", NO_OP_TASK);
+        assertSame(task, reused);
+        assertEquals("tenantId:1", reused.getTenantId());
+        assertNotSame(reused, queueManager.newTask("tenantId:1", NO_OP_TASK));
+        //tasks which were not obtained from the queue manager are not pooled.
+        queueManager.recycle(new TenantAwareTask("tenantId:0", NO_OP_TASK));
+        assertNotEquals("tenantId:0", queueManager.newTask("tenantId:1", NO_OP_TASK).getTenantId());
+    }
+
+    @Test
+    public void tasksReleasedConcurrentlyArePooledOnce() throws Exception {
+        int rounds = 2000;
+        TenantAwareTask[] tasks = new TenantAwareTask[8];
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        //releases the tasks along with the test thread, in reverse order, so that both threads
+        //release one of the tasks at about the same time. Spins rather than blocks between rounds,
+        //so that both threads start a round together.
+        Thread releaser = new Thread(() -> {
+            for (int round = 1; round <= rounds; round++) {
+                while (started.get() != round) {
+                    Thread.yield();
+                }
+                for (int i = tasks.length-1; i >= 0; i--) {
+                    queueManager.recycle(tasks[i]);
+                }
+                finished.set(round);
+            }
+        });
+        releaser.setDaemon(true);
+        releaser.start();
+        for (int round = 1; round <= rounds; round++) {
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i] = queueManager.newTask("tenantId:0", NO_OP_TASK);
+            }
+            started.set(round);
+            for (TenantAwareTask task : tasks) {
+                queueManager.recycle(task);
+            }
+            while (finished.get() != round) {
+                Thread.yield();
+            }
+            //takes every free task, which leaves the pool empty for the next round.
+            Set<TenantAwareTask> obtained = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < 16; i++) {
+                assertTrue(obtained.add(queueManager.newTask("tenantId:1", NO_OP_TASK)));
+            }
+        }
+        releaser.join();
+    }
+
+    @Test
+    public void steadyStateSubmitAndTakeDoNotAllocate() throws Exception {
+        //the other strategies hand tenants off through linked queues.
+        Assume.assumeTrue(strategy == SchedulingStrategy.WEIGHTED_FAIR_QUEUEING
+            || strategy == SchedulingStrategy.DEFICIT_ROUND_ROBIN);
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported()
+            && allocationBean.isThreadAllocatedMemoryEnabled());
+
+        //warmed up until the submit and take paths are compiled, so that allocations which the JIT
+        //eliminates are not counted.
+        for (int i = 0; i < 5; i++) {
+            submitAndTake(20000);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        submitAndTake(20000);
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        //allows for the odd allocation by the JVM, but not one per task.
+        assertTrue("allocated "+allocated+" bytes", allocated < 20000);
+    }
+
+    private void submitAndTake(int tasks) throws InterruptedException {
+        for (int i = 0; i < tasks; i++) {
+            queueManager.trySubmit(queueManager.newTask((i & 1) == 0 ? "tenantId:0" : "tenantId:1", NO_OP_TASK));
+            TenantAwareTask task = queueManager.pollWork(0, TimeUnit.MILLISECONDS);
+            task.run();
+            queueManager.recycle(task);
+        }
+    }
+
+    private int drain() throws InterruptedException {
+        int taken = 0;
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            task.run();
+            queueManager.recycle(task);
+            taken++;
+        }
+        return taken;
+    }
+}
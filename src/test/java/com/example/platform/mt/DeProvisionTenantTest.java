@@ -0,0 +1,208 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.DeProvisionMode;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.platform.mt.TestTenants.drain;
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class DeProvisionTenantTest {
+    private final SchedulingStrategy strategy;
+    private MultiTenantWorkQueueManager queueManager;
+
+    public DeProvisionTenantTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        queueManager = newQueueManager(new QueueManagerOptions());
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(QueueManagerOptions options) {
+        return TestTenants.newQueueManager(3, 100, strategy, options);
+    }
+
+    @Test
+    public void cancelRemovesQueuedTasks() throws Exception {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(queueManager.submitAsync("tenantId:0", () -> 0));
+        }
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:1", 0)));
+
+        List<TenantAwareTask> cancelled = new ArrayList<>();
+        CompletableFuture<Void> removed = queueManager.deProvisionTenant("tenantId:0", DeProvisionMode.CANCEL, cancelled::add);
+        assertTrue(removed.isDone());
+        assertEquals(5, cancelled.size());
+        for (CompletableFuture<Integer> future : futures) {
+            assertTrue(future.isCancelled());
+        }
+        assertEquals(2, queueManager.getNoOfTenants());
+        assertEquals(SubmitStatus.UNKNOWN_TENANT, queueManager.trySubmit(newTask("tenantId:0", 0)));
+        assertEquals("tenantId:1", queueManager.pollWork(0, TimeUnit.MILLISECONDS).getTenantId());
+        assertNull(queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void migrateHandsOverQueuedTasksInOrder() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", i)));
+        }
+        MultiTenantWorkQueueManager otherQueueManager = newQueueManager(new QueueManagerOptions());
+        List<TenantAwareTask> migrated = new ArrayList<>();
+        queueManager.deProvisionTenant("tenantId:0", DeProvisionMode.MIGRATE, task -> {
+            migrated.add(task);
+            assertEquals(SubmitStatus.ACCEPTED, otherQueueManager.trySubmit(task));
+        });
+        assertEquals(5, migrated.size());
+        assertNull(queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("task "+i, migrated.get(i).getTask().getDescription());
+            assertEquals("task "+i, otherQueueManager.pollWork(0, TimeUnit.MILLISECONDS).getTask().getDescription());
+        }
+    }
+
+    @Test
+    public void drainRemovesTenantOnceItsTasksAreTaken() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", i)));
+        }
+        CompletableFuture<Void> removed = queueManager.deProvisionTenant("tenantId:0", DeProvisionMode.DRAIN, null);
+        assertFalse(removed.isDone());
+        assertEquals(SubmitStatus.UNKNOWN_TENANT, queueManager.trySubmit(newTask("tenantId:0", 3)));
+        try {
+            queueManager.provisionTenant(new TenantConfig("tenantId:0", "tenantName:0", 100));
+            fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("task "+i, queueManager.pollWork(0, TimeUnit.MILLISECONDS).getTask().getDescription());
+        }
+        assertTrue(removed.isDone());
+        assertEquals(2, queueManager.getNoOfTenants());
+        assertNull(queueManager.getTenantMetrics("tenantId:0"));
+
+        queueManager.provisionTenant(new TenantConfig("tenantId:0", "tenantName:0", 100));
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", 0)));
+        assertEquals("tenantId:0", queueManager.pollWork(0, TimeUnit.MILLISECONDS).getTenantId());
+    }
+
+    @Test
+    public void drainOfIdleTenantCompletesStraightAway() {
+        assertTrue(queueManager.deProvisionTenant("tenantId:2", DeProvisionMode.DRAIN, null).isDone());
+        assertEquals(2, queueManager.getNoOfTenants());
+        //de-provisioning an unknown tenant does nothing.
+        assertTrue(queueManager.deProvisionTenant("tenantId:2", DeProvisionMode.CANCEL, null).isDone());
+        assertEquals(2, queueManager.getNoOfTenants());
+    }
+
+    @Test
+    public void tasksAreNotLostWhileTenantIsCancelled() throws Exception {
+        checkNoTaskIsLost(queueManager, DeProvisionMode.CANCEL);
+    }
+
+    @Test
+    public void tasksAreNotLostWhileTenantIsMigrated() throws Exception {
+        checkNoTaskIsLost(queueManager, DeProvisionMode.MIGRATE);
+    }
+
+    @Test
+    public void tasksAreNotLostWhileTenantIsDrained() throws Exception {
+        checkNoTaskIsLost(queueManager, DeProvisionMode.DRAIN);
+    }
+
+    @Test
+    public void tasksAreNotLostWhileLazyTenantIsCancelled() throws Exception {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setIdleQueueTimeoutMillis(1);
+        checkNoTaskIsLost(newQueueManager(options), DeProvisionMode.CANCEL);
+    }
+
+    //producers keep submitting and workers keep taking tasks of every tenant, while tenantId:0 is
+    //de-provisioned. Every accepted task is either taken or removed, exactly once.
+    private void checkNoTaskIsLost(MultiTenantWorkQueueManager queueManager, DeProvisionMode mode) throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger taken = new AtomicInteger();
+        AtomicBoolean producersDone = new AtomicBoolean();
+        AtomicBoolean workersDone = new AtomicBoolean();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            producers.add(new Thread(() -> {
+                for (int i = 0; !producersDone.get(); i++) {
+                    try {
+                        if (queueManager.submitWork(newTask("tenantId:"+(i % 3), i), 1, TimeUnit.MILLISECONDS) == SubmitStatus.ACCEPTED)
+                            accepted.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }));
+        }
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            workers.add(new Thread(() -> {
+                try {
+                    while (!workersDone.get()) {
+                        if (queueManager.pollWork(1, TimeUnit.MILLISECONDS) != null)
+                            taken.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    //exits
+                }
+            }));
+        }
+        for (Thread thread : producers) {
+            thread.start();
+        }
+        for (Thread thread : workers) {
+            thread.start();
+        }
+        Thread.sleep(100);
+        AtomicInteger removed = new AtomicInteger();
+        CompletableFuture<Void> deProvisioned = queueManager.deProvisionTenant("tenantId:0", mode,
+            mode == DeProvisionMode.DRAIN ? null : task -> removed.incrementAndGet());
+        Thread.sleep(100);
+        producersDone.set(true);
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        workersDone.set(true);
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        taken.addAndGet(drain(queueManager));
+        deProvisioned.get(5, TimeUnit.SECONDS);
+        assertEquals(2, queueManager.getNoOfTenants());
+        assertEquals(accepted.get(), taken.get() + removed.get());
+    }
+
+    private static TenantAwareTask newTask(String tenantId, int i) {
+        return TestTenants.newTask(tenantId, "task "+i);
+    }
+}
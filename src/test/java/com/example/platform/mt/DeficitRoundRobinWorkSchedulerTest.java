@@ -0,0 +1,122 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeficitRoundRobinWorkSchedulerTest {
+    private MultiTenantWorkQueueManager queueManager;
+    private static final String HEAVY_TENANT = "tenantId:heavy";
+    private static final String LIGHT_TENANT = "tenantId:light";
+    private int workCapacity = 200;
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        tenantConfigList.add(new TenantConfig(HEAVY_TENANT, "tenantName:heavy", workCapacity));
+        tenantConfigList.add(new TenantConfig(LIGHT_TENANT, "tenantName:light", workCapacity));
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList,
+            SchedulingStrategy.DEFICIT_ROUND_ROBIN);
+    }
+
+    @Test
+    public void takeWorkSharesCostNotTaskCount() throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < 100; i++) {
+            queueManager.submitWork(new TenantAwareTask(HEAVY_TENANT, new CostedTask("heavy "+i, 20)));
+            queueManager.submitWork(new TenantAwareTask(LIGHT_TENANT, new CostedTask("light "+i, 1)));
+        }
+
+        long heavyCost = 0;
+        long lightCost = 0;
+        for (int i = 0; i < 105; i++) {
+            TenantAwareTask task = queueManager.takeWork();
+            if (task.getTenantId().equals(HEAVY_TENANT))
+                heavyCost += task.getTask().getEstimatedCost();
+            else
+                lightCost += task.getTask().getEstimatedCost();
+        }
+        //both tenants should get roughly the same worker time, although heavy tasks cost 20x.
+        assertEquals(100, lightCost);
+        assertEquals(100, heavyCost);
+    }
+
+    @Test
+    public void takeWorkServesTenantsInProportionToWeight() throws InterruptedException, UnknownTenantException {
+        String paidTenant = "tenantId:paid";
+        TenantConfig paid = new TenantConfig(paidTenant, "tenantName:paid", workCapacity);
+        paid.setWeight(4);
+        queueManager.provisionTenant(paid);
+        for (int i = 0; i < 100; i++) {
+            queueManager.submitWork(new TenantAwareTask(paidTenant, new CostedTask("paid "+i, 1)));
+            queueManager.submitWork(new TenantAwareTask(LIGHT_TENANT, new CostedTask("light "+i, 1)));
+        }
+
+        int paidTasks = 0;
+        for (int i = 0; i < 50; i++) {
+            if (queueManager.takeWork().getTenantId().equals(paidTenant))
+                paidTasks++;
+        }
+        assertEquals(40, paidTasks);
+    }
+
+    @Test
+    public void takeWorkHandsOutTaskCostlierThanQuantum() throws InterruptedException, UnknownTenantException {
+        queueManager.submitWork(new TenantAwareTask(HEAVY_TENANT, new CostedTask("very heavy", 1000)));
+        TenantAwareTask task = queueManager.takeWork();
+        assertEquals(HEAVY_TENANT, task.getTenantId());
+        assertEquals("very heavy", task.getTask().getDescription());
+    }
+
+    @Test
+    public void takeWorkCreditsRoundsForTaskFarCostlierThanQuantum() throws InterruptedException, UnknownTenantException {
+        //would take a hundred million turns, one quantum at a time.
+        queueManager.submitWork(new TenantAwareTask(HEAVY_TENANT, new CostedTask("huge", 1_000_000_000L)));
+        queueManager.submitWork(new TenantAwareTask(LIGHT_TENANT, new CostedTask("light", 1)));
+        List<String> taken = new ArrayList<>();
+        taken.add((String) queueManager.takeWork().getTask().getDescription());
+        taken.add((String) queueManager.takeWork().getTask().getDescription());
+        assertEquals("light", taken.get(0));
+        assertEquals("huge", taken.get(1));
+    }
+
+    @Test
+    public void takeWorkChargesCostsBelowOneAsOne() throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < 100; i++) {
+            queueManager.submitWork(new TenantAwareTask(HEAVY_TENANT, new CostedTask("negative "+i, -100)));
+            queueManager.submitWork(new TenantAwareTask(LIGHT_TENANT, new CostedTask("light "+i, 1)));
+        }
+        int negativeTasks = 0;
+        for (int i = 0; i < 100; i++) {
+            if (queueManager.takeWork().getTenantId().equals(HEAVY_TENANT))
+                negativeTasks++;
+        }
+        assertEquals(50, negativeTasks);
+    }
+
+    static class CostedTask extends AbstractTask {
+        private final long cost;
+
+        CostedTask(String taskDescription, long cost) {
+            super(taskDescription);
+            this.cost = cost;
+        }
+
+        @Override
+        public long getEstimatedCost() {
+            return cost;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
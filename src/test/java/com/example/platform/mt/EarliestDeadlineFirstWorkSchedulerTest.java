@@ -0,0 +1,123 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.impl.EarliestDeadlineFirstWorkScheduler;
+import com.example.platform.mt.impl.MTWorkerThread;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SearchTask;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EarliestDeadlineFirstWorkSchedulerTest {
+    private MultiTenantWorkQueueManager queueManager;
+    private static final String URGENT_TENANT = "tenantId:urgent";
+    private static final String RELAXED_TENANT = "tenantId:relaxed";
+    private static final String OTHER_TENANT = "tenantId:other";
+    private int workCapacity = 100;
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        tenantConfigList.add(new TenantConfig(URGENT_TENANT, "tenantName:urgent", workCapacity));
+        tenantConfigList.add(new TenantConfig(RELAXED_TENANT, "tenantName:relaxed", workCapacity));
+        tenantConfigList.add(new TenantConfig(OTHER_TENANT, "tenantName:other", workCapacity));
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList,
+            SchedulingStrategy.EARLIEST_DEADLINE_FIRST);
+    }
+
+    @Test
+    public void takeWorkServesEarliestDeadlineFirst() throws InterruptedException, UnknownTenantException {
+        queueManager.submitWork(newTask(RELAXED_TENANT, "relaxed search", 10));
+        queueManager.submitWork(new TenantAwareTask(OTHER_TENANT, new SearchTask("other search")));
+        queueManager.submitWork(newTask(URGENT_TENANT, "urgent search", 1));
+
+        assertEquals(URGENT_TENANT, queueManager.takeWork().getTenantId());
+        assertEquals(RELAXED_TENANT, queueManager.takeWork().getTenantId());
+        //tasks without a deadline go last.
+        assertEquals(OTHER_TENANT, queueManager.takeWork().getTenantId());
+    }
+
+    @Test
+    public void tasksOfTenantKeepTheirOrder() throws InterruptedException, UnknownTenantException {
+        queueManager.submitWork(newTask(URGENT_TENANT, "search 0", 10));
+        queueManager.submitWork(newTask(URGENT_TENANT, "search 1", 1));
+        queueManager.submitWork(newTask(RELAXED_TENANT, "relaxed search", 5));
+
+        //the tenant is ordered by its head task, so the relaxed tenant goes first.
+        assertEquals(RELAXED_TENANT, queueManager.takeWork().getTenantId());
+        assertEquals("search 0", queueManager.takeWork().getTask().getDescription());
+        assertEquals("search 1", queueManager.takeWork().getTask().getDescription());
+    }
+
+    @Test
+    public void tenantsWithoutDeadlinesAreServedInRoundRobin() throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < 2; i++) {
+            queueManager.submitWork(new TenantAwareTask(RELAXED_TENANT, new SearchTask("search "+i)));
+            queueManager.submitWork(new TenantAwareTask(OTHER_TENANT, new SearchTask("search "+i)));
+        }
+
+        assertEquals(RELAXED_TENANT, queueManager.takeWork().getTenantId());
+        assertEquals(OTHER_TENANT, queueManager.takeWork().getTenantId());
+        assertEquals(RELAXED_TENANT, queueManager.takeWork().getTenantId());
+        assertEquals(OTHER_TENANT, queueManager.takeWork().getTenantId());
+    }
+
+    @Test
+    public void fairnessWindowBoundsStarvation() throws InterruptedException, UnknownTenantException {
+        queueManager.submitWork(new TenantAwareTask(OTHER_TENANT, new SearchTask("other search")));
+        int window = EarliestDeadlineFirstWorkScheduler.DEFAULT_FAIRNESS_WINDOW;
+        for (int i = 0; i < 2*window; i++) {
+            queueManager.submitWork(newTask(URGENT_TENANT, "urgent search "+i, 1));
+        }
+
+        //the other tenant is served once it has been passed over for a window of tasks.
+        int urgentTasks = 0;
+        while (queueManager.takeWork().getTenantId().equals(URGENT_TENANT)) {
+            urgentTasks++;
+        }
+        assertEquals(window, urgentTasks);
+    }
+
+    @Test
+    public void takeWorkBatchServesEarliestDeadlineFirst() throws InterruptedException, UnknownTenantException {
+        queueManager.submitWork(newTask(RELAXED_TENANT, "relaxed search", 10));
+        queueManager.submitWork(newTask(URGENT_TENANT, "urgent search", 1));
+
+        List<TenantAwareTask> batch = new ArrayList<>();
+        assertEquals(2, queueManager.takeWork(2, batch));
+        assertEquals(URGENT_TENANT, batch.get(0).getTenantId());
+        assertEquals(RELAXED_TENANT, batch.get(1).getTenantId());
+    }
+
+    @Test
+    public void deProvisionedTenantIsNotScheduled() throws InterruptedException, UnknownTenantException {
+        queueManager.submitWork(newTask(URGENT_TENANT, "urgent search", 1));
+        queueManager.submitWork(newTask(RELAXED_TENANT, "relaxed search", 10));
+        queueManager.deProvisionTenant(URGENT_TENANT);
+
+        assertEquals(RELAXED_TENANT, queueManager.takeWork().getTenantId());
+    }
+
+    @Test
+    public void takeWorkBlocksOnNoWork() throws InterruptedException {
+        MTWorkerThread workerThread = new MTWorkerThread(queueManager, 123);
+        workerThread.start();
+        Thread.sleep(1000);
+        assertEquals(Thread.State.WAITING, workerThread.getState());
+        workerThread.interrupt();
+    }
+
+    private static TenantAwareTask newTask(String tenantId, String description, long deadlineSeconds) {
+        TenantAwareTask task = new TenantAwareTask(tenantId, new SearchTask(description));
+        task.setDeadline(deadlineSeconds, TimeUnit.SECONDS);
+        return task;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.platform.mt.TestTenants.drain;
+import static com.example.platform.mt.TestTenants.newTask;
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class LazyTenantQueueTest {
+    private final SchedulingStrategy strategy;
+
+    public LazyTenantQueueTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(int noOfTenants, int workCapacity, long idleQueueTimeoutMillis) {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setIdleQueueTimeoutMillis(idleQueueTimeoutMillis);
+        return TestTenants.newQueueManager(noOfTenants, workCapacity, strategy, options);
+    }
+
+    @Test
+    public void queuesAreCreatedOnFirstSubmitAndReclaimedWhenIdle() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(1000, 10, 200);
+        assertEquals(1000, queueManager.getNoOfTenants());
+        assertEquals(0, queueManager.getNoOfTenantQueues());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:"+i)));
+            assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:"+i)));
+        }
+        assertEquals(3, queueManager.getNoOfTenantQueues());
+        //tenants with queued tasks are never reclaimed.
+        Thread.sleep(300);
+        assertEquals(0, queueManager.reclaimIdleTenantQueues());
+
+        //the tenants have not submitted for the timeout, so they are idle once their tasks are taken.
+        assertEquals(6, drain(queueManager));
+        assertEquals(3, queueManager.reclaimIdleTenantQueues());
+        assertEquals(0, queueManager.getNoOfTenantQueues());
+
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:1")));
+        assertEquals(1, drain(queueManager));
+        assertEquals(0, queueManager.reclaimIdleTenantQueues());
+        Thread.sleep(300);
+        assertEquals(1, queueManager.reclaimIdleTenantQueues());
+
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0")));
+        assertEquals(1, queueManager.getNoOfTenantQueues());
+        assertEquals("tenantId:0", queueManager.pollWork(0, TimeUnit.MILLISECONDS).getTenantId());
+        assertEquals(3, queueManager.getTenantMetrics("tenantId:0").getSubmitted());
+
+        queueManager.deProvisionTenant("tenantId:0");
+        assertEquals(0, queueManager.getNoOfTenantQueues());
+        assertEquals(SubmitStatus.UNKNOWN_TENANT, queueManager.trySubmit(newTask("tenantId:0")));
+    }
+
+    @Test
+    public void tasksAreNotLostWhileQueuesAreReclaimed() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(4, 100, 1);
+        int tasksPerProducer = 5000;
+        AtomicBoolean done = new AtomicBoolean();
+        Thread reclaimer = new Thread(() -> {
+            while (!done.get()) {
+                queueManager.reclaimIdleTenantQueues();
+            }
+        });
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 2; p++) {
+            producers.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < tasksPerProducer; i++) {
+                        queueManager.submitWork(newTask("tenantId:"+(i % 4)));
+                        if (i % 500 == 0)
+                            Thread.sleep(2);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        reclaimer.start();
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        int taken = 0;
+        while (taken < 2*tasksPerProducer && queueManager.pollWork(5, TimeUnit.SECONDS) != null) {
+            taken++;
+        }
+        done.set(true);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        reclaimer.join();
+        assertEquals(2*tasksPerProducer, taken);
+    }
+}
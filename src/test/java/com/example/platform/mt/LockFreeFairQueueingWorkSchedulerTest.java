@@ -0,0 +1,120 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.impl.MTWorkerThread;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SearchTask;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class LockFreeFairQueueingWorkSchedulerTest {
+    private MultiTenantWorkQueueManager queueManager;
+    private List<String> tenantIds;
+    private int noOfTenants = 4;
+    private int workCapacity = 100;
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        tenantIds = new ArrayList<>();
+        for (int i = 0; i < noOfTenants; i++) {
+            String tenantId = "tenantId:"+i;
+            tenantIds.add(tenantId);
+            tenantConfigList.add(new TenantConfig(tenantId, "tenantName:"+i, workCapacity));
+        }
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList,
+            SchedulingStrategy.LOCK_FREE_FAIR_QUEUEING);
+    }
+
+    @Test
+    public void takeWorkServesTenantsInRoundRobin() throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < 3; i++) {
+            queueManager.submitWork(new TenantAwareTask(tenantIds.get(1), new SearchTask("search "+i)));
+        }
+        queueManager.submitWork(new TenantAwareTask(tenantIds.get(2), new SearchTask("search 0")));
+
+        assertEquals(tenantIds.get(1), queueManager.takeWork().getTenantId());
+        assertEquals(tenantIds.get(2), queueManager.takeWork().getTenantId());
+        assertEquals("search 1", queueManager.takeWork().getTask().getDescription());
+        assertEquals("search 2", queueManager.takeWork().getTask().getDescription());
+    }
+
+    @Test
+    public void takeWorkBatchKeepsRoundRobinOrder() throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < 2; i++) {
+            queueManager.submitWork(new TenantAwareTask(tenantIds.get(1), new SearchTask("search "+i)));
+            queueManager.submitWork(new TenantAwareTask(tenantIds.get(2), new SearchTask("search "+i)));
+        }
+
+        List<TenantAwareTask> batch = new ArrayList<>();
+        assertEquals(4, queueManager.takeWork(10, batch));
+        assertEquals(tenantIds.get(1), batch.get(0).getTenantId());
+        assertEquals(tenantIds.get(2), batch.get(1).getTenantId());
+        assertEquals(tenantIds.get(1), batch.get(2).getTenantId());
+        assertEquals(tenantIds.get(2), batch.get(3).getTenantId());
+    }
+
+    @Test
+    public void takeWorkHandsOutEveryTaskOnceUnderContention() throws InterruptedException {
+        int producersPerTenant = 4;
+        int tasksPerProducer = 2000;
+        int totalTasks = noOfTenants*producersPerTenant*tasksPerProducer;
+        Set<String> taken = ConcurrentHashMap.newKeySet();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    while (true) {
+                        TenantAwareTask task = queueManager.takeWork();
+                        assertTrue(taken.add(task.getTenantId()+"-"+task.getTask().getDescription()));
+                    }
+                } catch (InterruptedException e) {
+                    //test is done.
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        List<TaskProducer> producers = new ArrayList<>();
+        for (String tenantId : tenantIds) {
+            for (int j = 0; j < producersPerTenant; j++) {
+                TaskProducer producer = new TaskProducer(queueManager, tenantId, j, tasksPerProducer);
+                producers.add(producer);
+                producer.start();
+            }
+        }
+        for (TaskProducer producer : producers) {
+            producer.join();
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (taken.size() != totalTasks && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        assertEquals(totalTasks, taken.size());
+        assertEquals(totalTasks, queueManager.getProcessedTasksCountLong());
+    }
+
+    @Test
+    public void takeWorkBlocksOnNoWork() throws InterruptedException {
+        MTWorkerThread workerThread = new MTWorkerThread(queueManager, 123);
+        workerThread.start();
+        Thread.sleep(1000);
+        assertEquals(Thread.State.WAITING, workerThread.getState());
+        workerThread.interrupt();
+        workerThread.join(1000);
+        assertEquals(Thread.State.TERMINATED, workerThread.getState());
+    }
+}
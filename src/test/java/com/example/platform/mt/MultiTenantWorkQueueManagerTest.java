@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -88,11 +89,11 @@ public class MultiTenantWorkQueueManagerTest {
             }
 
             int target = (noOfTenants)* concurrentClientsPerTenant * tasksPerClient;
-            while (queueManager.getProcessedTasksCount() != target) {
+            while (queueManager.getProcessedTasksCountLong() != target) {
                 Thread.sleep(1000);
             }
             long end = System.currentTimeMillis();
-            System.out.println("Total time taken to process "+queueManager.getProcessedTasksCount()+" noOfTasks in seconds : "+(end - start)/1000);
+            System.out.println("Total time taken to process "+queueManager.getProcessedTasksCountLong()+" noOfTasks in seconds : "+(end - start)/1000);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -126,12 +127,12 @@ public class MultiTenantWorkQueueManagerTest {
             producer.start();
 
             int target = (noOfTenants)* concurrentClientsPerTenant * tasksPerClient;
-            while (queueManager.getProcessedTasksCount() != target+1) {
-                //System.out.println("Main thread: size "+fairQueue.size()+", total taskDescription processed "+fairQueue.getProcessedTasksCount());
+            while (queueManager.getProcessedTasksCountLong() != target+1) {
+                //System.out.println("Main thread: size "+fairQueue.size()+", total taskDescription processed "+fairQueue.getProcessedTasksCountLong());
                 Thread.sleep(1000);
             }
             long end = System.currentTimeMillis();
-            System.out.println("Total time taken to process "+queueManager.getProcessedTasksCount()+" noOfTasks in seconds : "+(end - start)/1000);
+            System.out.println("Total time taken to process "+queueManager.getProcessedTasksCountLong()+" noOfTasks in seconds : "+(end - start)/1000);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -255,6 +256,31 @@ public class MultiTenantWorkQueueManagerTest {
         }
     }
 
+    @Test
+    public void takeWorkBatchKeepsRoundRobinOrder() {
+        try {
+            for (int i = 0; i < 3; i++) {
+                queueManager.submitWork(new TenantAwareTask(tenantIds.get(1), new SearchTask("search "+i)));
+            }
+            queueManager.submitWork(new TenantAwareTask(tenantIds.get(2), new SearchTask("search 0")));
+
+            List<TenantAwareTask> batch = new ArrayList<>();
+            assertEquals(2, queueManager.takeWork(2, batch));
+            assertEquals(tenantIds.get(1), batch.get(0).getTenantId());
+            assertEquals(tenantIds.get(2), batch.get(1).getTenantId());
+
+            batch.clear();
+            assertEquals(2, queueManager.takeWork(10, batch));
+            assertEquals("search 1", batch.get(0).getTask().getDescription());
+            assertEquals("search 2", batch.get(1).getTask().getDescription());
+            assertEquals(4, queueManager.getProcessedTasksCountLong());
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } catch (UnknownTenantException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Test
     public void takeWorkBlocksOnNoWork() {
         try {
@@ -269,40 +295,29 @@ public class MultiTenantWorkQueueManagerTest {
         }
     }
 
+    @Test
+    public void interruptedWorkerDoesNotLoseNextTaskOfTenant() throws InterruptedException, UnknownTenantException {
+        String tenantId = tenantIds.get(0);
+        queueManager.submitWork(new TenantAwareTask(tenantId, new SearchTask("first")));
+        queueManager.submitWork(new TenantAwareTask(tenantId, new SearchTask("second")));
+        List<TenantAwareTask> taken = new ArrayList<>();
+        //e.g., by the shutdownNow of a worker pool, while the next task of the tenant is scheduled.
+        Thread.currentThread().interrupt();
+        try {
+            queueManager.takeWork(2, taken);
+        } finally {
+            Thread.interrupted();
+        }
+        while (taken.size() < 2) {
+            TenantAwareTask task = queueManager.pollWork(1, TimeUnit.SECONDS);
+            assertNotNull(task);
+            taken.add(task);
+        }
+        assertEquals("second", taken.get(1).getTask().getDescription());
+    }
+
     @Test
     public void getNoOfTenants() {
         assertEquals(queueManager.getNoOfTenants(), noOfTenants);
     }
 }
-
-class TaskProducer extends Thread {
-
-    MultiTenantWorkQueueManager queueManager;
-    String tenantId;
-    int threadId;
-    private int noOfTasks;
-
-    TaskProducer(MultiTenantWorkQueueManager queueManager, String tenantId, int threadId, int noOfTasks) {
-        this.queueManager = queueManager;
-        this.tenantId = tenantId;
-        this.threadId = threadId;
-        this.noOfTasks = noOfTasks;
-        setName("Task producer thread "+threadId+" for tenant "+tenantId);
-        //System.out.println("Initialized "+getName());
-    }
-    public void run() {
-        for (int i = 0; i < noOfTasks; i++) {
-            TenantAwareTask t = new TenantAwareTask(""+tenantId, new SearchTask(threadId+","+i));
-            try {
-                if (t.getTenantId().equals("tenantId:"+MultiTenantWorkQueueManagerTest.noOfTenants)) {
-                    System.out.println("Submitted "+t.getTenantId()+" task at " + System.currentTimeMillis());
-                }
-                queueManager.submitWork(t);
-            } catch (InterruptedException e) {
-                System.out.println(getName()+" was interrupted while submitting task "+t);
-            } catch (UnknownTenantException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-}
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.impl.MultiTenantWorkerPool;
+import com.example.platform.mt.impl.VirtualThreads;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import com.example.platform.mt.vo.WorkerEngine;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MultiTenantWorkerPoolTest {
+    private MultiTenantWorkQueueManager queueManager;
+    private MultiTenantWorkerPool workerPool;
+    private List<String> tenantIds;
+    private int noOfTenants = 5;
+    private int workCapacity = 1000;
+    private AtomicInteger tasksRun = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        tenantIds = new ArrayList<>();
+        for (int i = 0; i < noOfTenants; i++) {
+            String tenantId = "tenantId:"+i;
+            tenantIds.add(tenantId);
+            tenantConfigList.add(new TenantConfig(tenantId, "tenantName:"+i, workCapacity));
+        }
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList, SchedulingStrategy.FAIR_QUEUEING);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+            workerPool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void platformThreadsRunAllTasks() throws Exception {
+        runAllTasks(WorkerEngine.PLATFORM_THREADS);
+    }
+
+    @Test
+    public void forkJoinPoolRunsAllTasks() throws Exception {
+        runAllTasks(WorkerEngine.FORK_JOIN_POOL);
+    }
+
+    @Test
+    public void virtualThreadsRunAllTasks() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        runAllTasks(WorkerEngine.VIRTUAL_THREADS);
+    }
+
+    private void runAllTasks(WorkerEngine engine) throws InterruptedException, UnknownTenantException {
+        workerPool = new MultiTenantWorkerPool(queueManager, 8, engine);
+        workerPool.start();
+        submitTasks(100);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (tasksRun.get() != noOfTenants*100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(noOfTenants*100, tasksRun.get());
+    }
+
+    @Test
+    public void shutdownDrainsQueuedTasks() throws Exception {
+        submitTasks(50);
+        workerPool = new MultiTenantWorkerPool(queueManager, 4);
+        workerPool.start();
+        workerPool.shutdown();
+        assertTrue(workerPool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(noOfTenants*50, tasksRun.get());
+    }
+
+    @Test
+    public void shutdownWaitsForTasksHeldBackByRateLimit() throws Exception {
+        TenantConfig tenantConfig = new TenantConfig(tenantIds.get(0), "tenantName:0", workCapacity);
+        tenantConfig.setRateLimit(5);
+        tenantConfig.setBurst(1);
+        queueManager.updateTenantConfig(tenantConfig);
+        //the tasks of the limited tenant are spaced out by longer than a worker waits for a task.
+        submitTasks(3);
+        workerPool = new MultiTenantWorkerPool(queueManager, 2);
+        workerPool.start();
+        workerPool.shutdown();
+        assertTrue(workerPool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(noOfTenants*3, tasksRun.get());
+    }
+
+    @Test
+    public void shutdownNowLeavesQueuedTasksInQueueManager() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        queueManager.submitWork(new TenantAwareTask(tenantIds.get(0), new AbstractTask("blocking task") {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        }));
+        workerPool = new MultiTenantWorkerPool(queueManager, 1);
+        workerPool.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        submitTasks(10);
+
+        workerPool.shutdownNow();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(workerPool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, tasksRun.get());
+        //the queued tasks are still there for someone else to take.
+        assertNotNull(queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void setPoolSizeShrinksAndGrowsPool() throws Exception {
+        workerPool = new MultiTenantWorkerPool(queueManager, 6);
+        workerPool.start();
+        assertEquals(6, workerPool.getLiveWorkerCount());
+
+        workerPool.setPoolSize(2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (workerPool.getLiveWorkerCount() != 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, workerPool.getLiveWorkerCount());
+
+        workerPool.setPoolSize(4);
+        assertEquals(4, workerPool.getLiveWorkerCount());
+        submitTasks(20);
+        deadline = System.currentTimeMillis() + 5000;
+        while (tasksRun.get() != noOfTenants*20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(noOfTenants*20, tasksRun.get());
+    }
+
+    @Test
+    public void failingTaskDoesNotKillWorker() throws Exception {
+        workerPool = new MultiTenantWorkerPool(queueManager, 1);
+        workerPool.start();
+        queueManager.submitWork(new TenantAwareTask(tenantIds.get(0), new AbstractTask("failing task") {
+            @Override
+            public void run() {
+                throw new IllegalStateException("expected by the test");
+            }
+        }));
+        submitTasks(1);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (tasksRun.get() != noOfTenants && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(noOfTenants, tasksRun.get());
+        assertEquals(1, workerPool.getLiveWorkerCount());
+    }
+
+    private void submitTasks(int tasksPerTenant) throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < tasksPerTenant; i++) {
+            for (String tenantId : tenantIds) {
+                queueManager.submitWork(new TenantAwareTask(tenantId, new AbstractTask("counting task "+i) {
+                    @Override
+                    public void run() {
+                        tasksRun.incrementAndGet();
+                    }
+                }));
+            }
+        }
+    }
+}
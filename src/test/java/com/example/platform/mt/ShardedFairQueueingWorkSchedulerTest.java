@@ -0,0 +1,106 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.impl.MTWorkerThread;
+import com.example.platform.mt.impl.ShardedFairQueueingWorkScheduler;
+import com.example.platform.mt.vo.SearchTask;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class ShardedFairQueueingWorkSchedulerTest {
+    private MultiTenantWorkQueueManager queueManager;
+    private List<String> tenantIds;
+    private int noOfTenants = 8;
+    private int noOfShards = 4;
+    private int workCapacity = 100;
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        tenantIds = new ArrayList<>();
+        for (int i = 0; i < noOfTenants; i++) {
+            String tenantId = "tenantId:"+i;
+            tenantIds.add(tenantId);
+            tenantConfigList.add(new TenantConfig(tenantId, "tenantName:"+i, workCapacity));
+        }
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList,
+            new ShardedFairQueueingWorkScheduler(noOfShards));
+    }
+
+    @Test
+    public void takeWorkStealsFromOtherShards() throws InterruptedException, UnknownTenantException {
+        //tenants are spread across all shards, so whatever the home shard of this thread is,
+        //it has to steal tasks of tenants from the other shards.
+        for (String tenantId : tenantIds) {
+            queueManager.submitWork(new TenantAwareTask(tenantId, new SearchTask("search")));
+        }
+        Set<String> servedTenants = new HashSet<>();
+        for (int i = 0; i < noOfTenants; i++) {
+            servedTenants.add(queueManager.takeWork().getTenantId());
+        }
+        assertEquals(noOfTenants, servedTenants.size());
+    }
+
+    @Test
+    public void takeWorkHandsOutEveryTaskOnceUnderContention() throws InterruptedException {
+        int producersPerTenant = 2;
+        int tasksPerProducer = 1000;
+        int totalTasks = noOfTenants*producersPerTenant*tasksPerProducer;
+        Set<String> taken = ConcurrentHashMap.newKeySet();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    while (true) {
+                        TenantAwareTask task = queueManager.takeWork();
+                        taken.add(task.getTenantId()+"-"+task.getTask().getDescription());
+                    }
+                } catch (InterruptedException e) {
+                    //test is done.
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        List<TaskProducer> producers = new ArrayList<>();
+        for (String tenantId : tenantIds) {
+            for (int j = 0; j < producersPerTenant; j++) {
+                TaskProducer producer = new TaskProducer(queueManager, tenantId, j, tasksPerProducer);
+                producers.add(producer);
+                producer.start();
+            }
+        }
+        for (TaskProducer producer : producers) {
+            producer.join();
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (taken.size() != totalTasks && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        assertEquals(totalTasks, taken.size());
+        assertEquals(totalTasks, queueManager.getProcessedTasksCountLong());
+    }
+
+    @Test
+    public void takeWorkBlocksOnNoWork() throws InterruptedException {
+        MTWorkerThread workerThread = new MTWorkerThread(queueManager, 123);
+        workerThread.start();
+        Thread.sleep(1000);
+        assertEquals(Thread.State.WAITING, workerThread.getState());
+        workerThread.interrupt();
+    }
+}
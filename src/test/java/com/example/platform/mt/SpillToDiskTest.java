@@ -0,0 +1,268 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.journal.TaskSerializer;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TaskPriority;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class SpillToDiskTest {
+    private static final int WORK_CAPACITY = 10;
+    private static final TaskSerializer SERIALIZER = new TaskSerializer() {
+        @Override
+        public byte[] serialize(AbstractTask task) {
+            return ((String) task.getDescription()).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public AbstractTask deserialize(ByteBuffer bytes) {
+            byte[] description = new byte[bytes.remaining()];
+            bytes.get(description);
+            return new TestTenants.QuickTask(new String(description, StandardCharsets.UTF_8));
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SchedulingStrategy strategy;
+    private Path directory;
+
+    public SpillToDiskTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("spill");
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(QueueManagerOptions options) {
+        List<TenantConfig> tenantConfigList = TestTenants.newTenantConfigs(2, WORK_CAPACITY);
+        tenantConfigList.get(0).setSpillToDisk(true);
+        options.setSpillDirectory(directory);
+        options.setSpillSerializer(SERIALIZER);
+        return new MultiTenantWorkQueueManager(tenantConfigList, strategy, options);
+    }
+
+    @Test
+    public void tasksBeyondWorkCapacityAreSpilledInOrder() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        //would block without spilling.
+        for (int i = 0; i < 1000; i++) {
+            queueManager.submitWork(newTask("tenantId:0", "search:"+i));
+        }
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "search:1000")));
+        assertEquals(1, countSpillFiles());
+        assertEquals(1001, queueManager.getTenantMetrics("tenantId:0").getQueueDepth());
+
+        for (int i = 0; i <= 1000; i++) {
+            TenantAwareTask task = queueManager.takeWork();
+            assertEquals("search:"+i, task.getTask().getDescription());
+            assertEquals("tenantId:0", task.getTenantId());
+            task.run();
+        }
+        assertNull(queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, countSpillFiles());
+        assertEquals(1001, queueManager.getTenantMetrics("tenantId:0").getCompleted());
+    }
+
+    @Test
+    public void drainRacingPollReadsBackEverySpilledTask() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            SpillingBlockingQueue queue = new SpillingBlockingQueue(new ArrayBlockingQueue<>(4), directory, SERIALIZER);
+            int tasks = 50;
+            for (int i = 0; i < tasks; i++) {
+                queue.put(newTask("tenantId:0", "search:"+i));
+            }
+            List<TenantAwareTask> polled = new ArrayList<>();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread poller = new Thread(() -> {
+                try {
+                    while (!queue.isEmpty()) {
+                        TenantAwareTask task = queue.poll();
+                        if (task != null)
+                            polled.add(task);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            });
+            poller.start();
+            List<TenantAwareTask> drained = new ArrayList<>();
+            queue.drainTo(drained);
+            poller.join();
+            assertNull(failure.get());
+            assertEquals(tasks, drained.size() + polled.size());
+            assertEquals(0, queue.getDiscarded());
+            assertEquals(0, countSpillFiles());
+        }
+    }
+
+    @Test
+    public void tenantsWhichDoNotSpillAreStillBounded() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        int accepted = 0;
+        for (int i = 0; i < 2*WORK_CAPACITY; i++) {
+            if (queueManager.trySubmit(newTask("tenantId:1", "search:"+i)) == SubmitStatus.ACCEPTED)
+                accepted++;
+        }
+        assertTrue(accepted <= WORK_CAPACITY);
+        assertEquals(0, countSpillFiles());
+    }
+
+    @Test
+    public void spilledTasksKeepPriorityAndDeadline() throws Exception {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setTaskPrioritiesEnabled(true);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(options);
+        for (int i = 0; i < 3*WORK_CAPACITY; i++) {
+            TenantAwareTask task = newTask("tenantId:0", "search:"+i);
+            task.setPriority(i % 2 == 0 ? TaskPriority.INTERACTIVE : TaskPriority.BATCH);
+            task.setDeadline(1, TimeUnit.HOURS);
+            queueManager.submitWork(task);
+        }
+        int taken = 0;
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            int i = Integer.parseInt(((String) task.getTask().getDescription()).substring("search:".length()));
+            assertEquals(i % 2 == 0 ? TaskPriority.INTERACTIVE : TaskPriority.BATCH, task.getPriority());
+            assertTrue(task.hasDeadline());
+            assertFalse(task.isExpired(System.nanoTime()));
+            task.run();
+            taken++;
+        }
+        assertEquals(3*WORK_CAPACITY, taken);
+    }
+
+    @Test
+    public void spilledTasksAreCancelledWithTheirTenant() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        AtomicInteger cancelled = new AtomicInteger();
+        for (int i = 0; i < 5*WORK_CAPACITY; i++) {
+            queueManager.submitWork(new TenantAwareTask("tenantId:0", new TestTenants.QuickTask("search:"+i) {
+                @Override
+                public void cancel() {
+                    cancelled.incrementAndGet();
+                }
+            }));
+        }
+        queueManager.deProvisionTenant("tenantId:0");
+        //tasks read back from the spill file are deserialized, so they are not counted.
+        assertTrue(cancelled.get() <= WORK_CAPACITY);
+        assertNull(queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, countSpillFiles());
+    }
+
+    @Test
+    public void concurrentProducersAndWorkers() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        int producers = 4;
+        int tasksPerProducer = 2000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < tasksPerProducer; i++) {
+                        queueManager.submitWork(newTask("tenantId:0", producer+":"+i));
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        AtomicInteger taken = new AtomicInteger();
+        int[] lastTaken = new int[producers];
+        Arrays.fill(lastTaken, -1);
+        AtomicInteger outOfOrder = new AtomicInteger();
+        Thread worker = new Thread(() -> {
+            try {
+                while (taken.get() < producers*tasksPerProducer) {
+                    TenantAwareTask task = queueManager.pollWork(10, TimeUnit.SECONDS);
+                    if (task == null)
+                        return;
+                    String[] description = ((String) task.getTask().getDescription()).split(":");
+                    int producer = Integer.parseInt(description[0]);
+                    int i = Integer.parseInt(description[1]);
+                    if (i <= lastTaken[producer])
+                        outOfOrder.incrementAndGet();
+                    lastTaken[producer] = i;
+                    task.run();
+                    taken.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        worker.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30_000);
+        }
+        worker.join(30_000);
+        assertEquals(producers*tasksPerProducer, taken.get());
+        //a single worker sees the tasks of each producer in the order they were submitted.
+        assertEquals(0, outOfOrder.get());
+        assertEquals(0, countSpillFiles());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void spillDirectoryIsRequired() {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        TenantConfig tenantConfig = new TenantConfig("tenantId:0", "tenantName:0", WORK_CAPACITY);
+        tenantConfig.setSpillToDisk(true);
+        tenantConfigList.add(tenantConfig);
+        new MultiTenantWorkQueueManager(tenantConfigList, strategy, new QueueManagerOptions());
+    }
+
+    private int countSpillFiles() throws IOException {
+        if (!Files.exists(directory))
+            return 0;
+        int files = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.spill")) {
+            for (Path ignored : stream) {
+                files++;
+            }
+        }
+        return files;
+    }
+
+    private static TenantAwareTask newTask(String tenantId, String description) {
+        return new TenantAwareTask(tenantId, new TestTenants.QuickTask(description));
+    }
+}
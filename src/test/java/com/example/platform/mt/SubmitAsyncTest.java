@@ -0,0 +1,102 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.vo.RejectionPolicy;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SubmitAsyncTest {
+    private static final String TENANT_ID = "tenantId:0";
+    private TenantConfig tenantConfig;
+    private MultiTenantWorkQueueManager queueManager;
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        tenantConfig = new TenantConfig(TENANT_ID, "tenantName:0", 2);
+        tenantConfigList.add(tenantConfig);
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList, SchedulingStrategy.FAIR_QUEUEING);
+    }
+
+    @Test
+    public void futureIsCompletedByWorkerThread() throws Exception {
+        CompletableFuture<String> stageThread = queueManager.submitAsync(TENANT_ID, () -> "result")
+            .thenApply(result -> result+" on "+Thread.currentThread().getName());
+        Thread worker = new Thread(() -> {
+            try {
+                queueManager.takeWork().run();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }, "test worker");
+        worker.start();
+        assertEquals("result on test worker", stageThread.get(5, TimeUnit.SECONDS));
+        worker.join();
+    }
+
+    @Test
+    public void futureIsCompletedExceptionallyWhenTaskFails() throws Exception {
+        CompletableFuture<Integer> future = queueManager.supplyAsync(TENANT_ID, () -> {
+            throw new IllegalStateException("expected by the test");
+        });
+        queueManager.takeWork().run();
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void futureIsCompletedExceptionallyWhenTaskIsNotQueued() throws Exception {
+        assertTrue(isCompletedWith(queueManager.submitAsync("tenantId:1", () -> 1), UnknownTenantException.class));
+        queueManager.submitAsync(TENANT_ID, () -> 1);
+        queueManager.submitAsync(TENANT_ID, () -> 2);
+        assertTrue(isCompletedWith(queueManager.submitAsync(TENANT_ID, () -> 3), RejectedExecutionException.class));
+    }
+
+    @Test
+    public void droppedTaskIsCancelled() throws Exception {
+        tenantConfig.setRejectionPolicy(RejectionPolicy.DROP_OLDEST);
+        CompletableFuture<Integer> head = queueManager.submitAsync(TENANT_ID, () -> 1);
+        CompletableFuture<Integer> dropped = queueManager.submitAsync(TENANT_ID, () -> 2);
+        CompletableFuture<Integer> latest = queueManager.submitAsync(TENANT_ID, () -> 3);
+        assertTrue(dropped.isCancelled());
+
+        queueManager.takeWork().run();
+        queueManager.takeWork().run();
+        assertEquals(1, (int) head.get());
+        assertEquals(3, (int) latest.get());
+    }
+
+    @Test
+    public void cancelledTaskIsNotRun() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Boolean> future = queueManager.submitAsync(TENANT_ID, () -> ran.getAndSet(true));
+        future.cancel(false);
+        queueManager.takeWork().run();
+        assertFalse(ran.get());
+    }
+
+    private static boolean isCompletedWith(CompletableFuture<?> future, Class<? extends Throwable> exceptionClass) {
+        try {
+            future.getNow(null);
+            return false;
+        } catch (Exception e) {
+            return exceptionClass.isInstance(e.getCause());
+        }
+    }
+}
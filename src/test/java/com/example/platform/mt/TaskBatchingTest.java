@@ -0,0 +1,176 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.metrics.TenantMetricsSnapshot;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantAwareTask;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.platform.mt.TestTenants.drainAndRun;
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class TaskBatchingTest {
+    private static final int WORK_CAPACITY = 50;
+    private static final int MAX_BATCH_SIZE = 4;
+
+    private final SchedulingStrategy strategy;
+
+    public TaskBatchingTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    //the lock-free and sharded schedulers hand out one task per turn.
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.FAIR_QUEUEING, SchedulingStrategy.WEIGHTED_FAIR_QUEUEING,
+            SchedulingStrategy.DEFICIT_ROUND_ROBIN, SchedulingStrategy.EARLIEST_DEADLINE_FIRST);
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(int maxBatchSize) {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setMaxBatchSize(maxBatchSize);
+        options.setTaskPoolSize(16);
+        return TestTenants.newQueueManager(2, WORK_CAPACITY, strategy, options);
+    }
+
+    @Test
+    public void tasksOfTenantAreHandedOutInBatches() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(MAX_BATCH_SIZE);
+        AtomicInteger batchesRun = new AtomicInteger();
+        List<String> run = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            queueManager.submitWork(new TenantAwareTask("tenantId:0", new BatchedTask("search:"+i, run, batchesRun)));
+        }
+        List<Integer> batchSizes = new ArrayList<>();
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            //the batch is taken apart as it runs.
+            batchSizes.add(task.getBatchSize());
+            task.run();
+        }
+        assertEquals(Arrays.asList(4, 4, 2), batchSizes);
+        assertEquals(3, batchesRun.get());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("search:"+i);
+        }
+        assertEquals(expected, run);
+
+        TenantMetricsSnapshot metrics = queueManager.getTenantMetrics("tenantId:0");
+        assertEquals(10, metrics.getDequeued());
+        assertEquals(10, metrics.getCompleted());
+        assertEquals(0, metrics.getQueueDepth());
+    }
+
+    @Test
+    public void tasksWhichDoNotOptInAreHandedOutAlone() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(MAX_BATCH_SIZE);
+        AtomicInteger batchesRun = new AtomicInteger();
+        List<String> run = new ArrayList<>();
+        queueManager.submitWork(new TenantAwareTask("tenantId:0", new BatchedTask("search:0", run, batchesRun)));
+        queueManager.submitWork(new TenantAwareTask("tenantId:0", new TestTenants.QuickTask("search:1")));
+        queueManager.submitWork(new TenantAwareTask("tenantId:0", new BatchedTask("search:2", run, batchesRun)));
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            assertEquals(1, task.getBatchSize());
+            task.run();
+        }
+        assertEquals(3, queueManager.getTenantMetrics("tenantId:0").getCompleted());
+    }
+
+    @Test
+    public void batchingIsOffByDefault() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(1);
+        AtomicInteger batchesRun = new AtomicInteger();
+        List<String> run = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            queueManager.submitWork(new TenantAwareTask("tenantId:0", new BatchedTask("search:"+i, run, batchesRun)));
+        }
+        assertEquals(5, drainAndRun(queueManager).size());
+        assertEquals(0, batchesRun.get());
+        assertEquals(5, run.size());
+    }
+
+    @Test
+    public void tenantsAreChargedForTheirBatches() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(MAX_BATCH_SIZE);
+        AtomicInteger batchesRun = new AtomicInteger();
+        List<String> run = new ArrayList<>();
+        //tenant 0 batches its tasks, tenant 1 does not.
+        for (int i = 0; i < 40; i++) {
+            queueManager.submitWork(new TenantAwareTask("tenantId:0", new BatchedTask("search:"+i, run, batchesRun)));
+            queueManager.submitWork(new TenantAwareTask("tenantId:1", new TestTenants.QuickTask("search:"+i)));
+        }
+        int[] taken = new int[2];
+        while (taken[0] + taken[1] < 40) {
+            TenantAwareTask task = queueManager.pollWork(0, TimeUnit.MILLISECONDS);
+            taken[task.getTenantId().equals("tenantId:0") ? 0 : 1] += task.getBatchSize();
+            task.run();
+        }
+        //a batch takes the turns of all its tasks, so the tenants still get an even share of the work.
+        assertTrue(Arrays.toString(taken), Math.abs(taken[0] - taken[1]) <= 2*MAX_BATCH_SIZE);
+        assertTrue(batchesRun.get() > 0);
+    }
+
+    @Test
+    public void wholeBatchIsRecycled() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(MAX_BATCH_SIZE);
+        AtomicInteger batchesRun = new AtomicInteger();
+        List<String> run = new ArrayList<>();
+        Set<TenantAwareTask> submitted = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+            TenantAwareTask task = queueManager.newTask("tenantId:0", new BatchedTask("search:"+i, run, batchesRun));
+            submitted.add(task);
+            queueManager.submitWork(task);
+        }
+        TenantAwareTask task = queueManager.pollWork(0, TimeUnit.MILLISECONDS);
+        assertEquals(MAX_BATCH_SIZE, task.getBatchSize());
+        task.run();
+        queueManager.recycle(task);
+        //the head and the other tasks of the batch are all reused.
+        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+            assertTrue(submitted.remove(queueManager.newTask("tenantId:1", new TestTenants.QuickTask("search:"+i))));
+        }
+    }
+
+    private static class BatchedTask extends AbstractTask {
+        private final List<String> run;
+        private final AtomicInteger batchesRun;
+
+        BatchedTask(String description, List<String> run, AtomicInteger batchesRun) {
+            super(description);
+            this.run = run;
+            this.batchesRun = batchesRun;
+        }
+
+        @Override
+        public boolean canBatchWith(AbstractTask next) {
+            return next instanceof BatchedTask;
+        }
+
+        @Override
+        public void runBatch(List<AbstractTask> batch) {
+            batchesRun.incrementAndGet();
+            super.runBatch(batch);
+        }
+
+        @Override
+        public void run() {
+            run.add(taskDescription);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.journal.JournalOptions;
+import com.example.platform.mt.journal.TaskJournal;
+import com.example.platform.mt.journal.TaskSerializer;
+import com.example.platform.mt.metrics.TenantMetricsSnapshot;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SearchTask;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.platform.mt.TestTenants.drainAndRun;
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class TaskCoalescingTest {
+    private static final int WORK_CAPACITY = 10;
+
+    private final SchedulingStrategy strategy;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public TaskCoalescingTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager() {
+        return newQueueManager(new QueueManagerOptions());
+    }
+
+    //tenant 0 coalesces duplicates, tenant 1 does not.
+    private MultiTenantWorkQueueManager newQueueManager(QueueManagerOptions options) {
+        List<TenantConfig> tenantConfigList = TestTenants.newTenantConfigs(2, WORK_CAPACITY);
+        tenantConfigList.get(0).setCoalesceDuplicates(true);
+        return new MultiTenantWorkQueueManager(tenantConfigList, strategy, options);
+    }
+
+    @Test
+    public void duplicatesOfQueuedTaskAreCoalesced() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager();
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "refresh", "a")));
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "search", "b")));
+        assertEquals(SubmitStatus.COALESCED, queueManager.trySubmit(newTask("tenantId:0", "refresh", "a")));
+        assertEquals(SubmitStatus.COALESCED, queueManager.submitWorkWithStatus(newTask("tenantId:0", "refresh", "a")));
+        assertEquals(SubmitStatus.COALESCED,
+            queueManager.submitWork(newTask("tenantId:0", "refresh", "a"), 0, TimeUnit.MILLISECONDS));
+        //without a key, or for a tenant which does not coalesce, tasks are queued as usual.
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "refresh", null)));
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:1", "refresh", "a")));
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:1", "refresh", "a")));
+
+        TenantMetricsSnapshot metrics = queueManager.getTenantMetrics("tenantId:0");
+        assertEquals(3, metrics.getSubmitted());
+        assertEquals(3, metrics.getCoalesced());
+        assertEquals(3, metrics.getQueueDepth());
+        assertEquals(5, drainAndRun(queueManager).size());
+    }
+
+    @Test
+    public void takenTaskDoesNotAbsorbDuplicates() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager();
+        queueManager.submitWork(newTask("tenantId:0", "refresh", "a"));
+        TenantAwareTask taken = queueManager.takeWork();
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "refresh", "a")));
+        taken.run();
+        assertEquals(SubmitStatus.COALESCED, queueManager.trySubmit(newTask("tenantId:0", "refresh", "a")));
+        assertEquals(1, drainAndRun(queueManager).size());
+    }
+
+    @Test
+    public void duplicatesAreMergedIntoQueuedTask() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager();
+        TenantAwareTask queued = newTask("tenantId:0", "search:1", "a");
+        TenantAwareTask duplicate = newTask("tenantId:0", "search:2", "a");
+        queueManager.submitWork(queued);
+        queueManager.submitWork(duplicate);
+        queueManager.submitWork(newTask("tenantId:0", "search:3", "a"));
+        List<TenantAwareTask> taken = drainAndRun(queueManager);
+        assertEquals(1, taken.size());
+        assertEquals(Arrays.asList("search:2", "search:3"), ((KeyedTask) taken.get(0).getTask()).merged);
+        //an absorbed duplicate never runs on its own.
+        assertTrue(((KeyedTask) duplicate.getTask()).cancelled);
+        assertFalse(((KeyedTask) queued.getTask()).cancelled);
+    }
+
+    @Test
+    public void absorbedDuplicateIsRecycled() throws Exception {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setTaskPoolSize(4);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(options);
+        TenantAwareTask queued = queueManager.newTask("tenantId:0", new KeyedTask("refresh", "a"));
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(queued));
+        TenantAwareTask duplicate = queueManager.newTask("tenantId:0", new KeyedTask("refresh", "a"));
+        assertEquals(SubmitStatus.COALESCED, queueManager.trySubmit(duplicate));
+        assertSame(duplicate, queueManager.newTask("tenantId:1", new KeyedTask("refresh", "a")));
+    }
+
+    @Test
+    public void rejectedTaskDoesNotAbsorbDuplicates() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager();
+        int i = 0;
+        while (queueManager.trySubmit(newTask("tenantId:0", "search:"+i, "key:"+i)) == SubmitStatus.ACCEPTED) {
+            i++;
+        }
+        assertEquals(SubmitStatus.TENANT_FULL, queueManager.trySubmit(newTask("tenantId:0", "refresh", "a")));
+        queueManager.takeWork().run();
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "refresh", "a")));
+    }
+
+    @Test
+    public void droppedTaskDoesNotAbsorbDuplicates() throws Exception {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setDropExpiredTasks(true);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(options);
+        TenantAwareTask expired = newTask("tenantId:0", "refresh", "a");
+        expired.setDeadline(0, TimeUnit.MILLISECONDS);
+        queueManager.submitWork(expired);
+        Thread.sleep(5);
+        assertTrue(drainAndRun(queueManager).isEmpty());
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "refresh", "a")));
+    }
+
+    @Test
+    public void failedSubmissionDoesNotAbsorbDuplicates() throws Exception {
+        //the journal fails to append the poisoned tasks.
+        TaskSerializer serializer = new TaskSerializer() {
+            @Override
+            public byte[] serialize(AbstractTask task) {
+                if ("poison".equals(task.getDescription()))
+                    throw new IllegalStateException("Can not serialize "+task.getDescription());
+                return ((String) task.getDescription()).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public AbstractTask deserialize(ByteBuffer bytes) {
+                return new KeyedTask(StandardCharsets.UTF_8.decode(bytes).toString(), null);
+            }
+        };
+        QueueManagerOptions options = new QueueManagerOptions();
+        try (TaskJournal journal = TaskJournal.open(folder.getRoot().toPath(), serializer, new JournalOptions())) {
+            options.setJournal(journal);
+            MultiTenantWorkQueueManager queueManager = newQueueManager(options);
+            try {
+                queueManager.trySubmit(newTask("tenantId:0", "poison", "a"));
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+            try {
+                queueManager.submitWork(newTask("tenantId:0", "poison", "b"));
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+            try {
+                queueManager.submitWork(newTask("tenantId:0", "poison", "c"), 0, TimeUnit.MILLISECONDS);
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+            //the keys of the failed tasks are free for the tasks queued afterwards.
+            for (String key : Arrays.asList("a", "b", "c")) {
+                assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "refresh", key)));
+                assertEquals(SubmitStatus.COALESCED, queueManager.trySubmit(newTask("tenantId:0", "refresh", key)));
+            }
+            assertEquals(3, drainAndRun(queueManager).size());
+            assertEquals(0, journal.getPendingTasks());
+        }
+    }
+
+    @Test
+    public void coalescingCanBeSwitchedOnLive() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager();
+        queueManager.submitWork(newTask("tenantId:1", "refresh", "a"));
+        TenantConfig tenantConfig = new TenantConfig("tenantId:1", "tenantName:1", WORK_CAPACITY);
+        tenantConfig.setCoalesceDuplicates(true);
+        queueManager.updateTenantConfig(tenantConfig);
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:1", "refresh", "a")));
+        assertEquals(SubmitStatus.COALESCED, queueManager.trySubmit(newTask("tenantId:1", "refresh", "a")));
+        assertEquals(2, drainAndRun(queueManager).size());
+    }
+
+    @Test
+    public void tasksOfSameTenantAreEqual() {
+        AbstractTask task = new SearchTask("search");
+        assertEquals(new TenantAwareTask("tenantId:0", task), new TenantAwareTask(new String("tenantId:0"), task));
+        assertNotEquals(new TenantAwareTask("tenantId:0", task), new TenantAwareTask("tenantId:1", task));
+    }
+
+    private static TenantAwareTask newTask(String tenantId, String description, String key) {
+        return new TenantAwareTask(tenantId, new KeyedTask(description, key));
+    }
+
+    private static class KeyedTask extends AbstractTask {
+        private final String key;
+        private final List<String> merged = new ArrayList<>();
+        private boolean cancelled;
+
+        KeyedTask(String description, String key) {
+            super(description);
+            this.key = key;
+        }
+
+        @Override
+        public Object getCoalescingKey() {
+            return key;
+        }
+
+        @Override
+        public boolean coalesce(AbstractTask duplicate) {
+            merged.add((String) duplicate.getDescription());
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
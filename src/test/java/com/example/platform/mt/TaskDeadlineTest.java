@@ -0,0 +1,131 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.metrics.TenantMetricsSnapshot;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantAwareTask;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class TaskDeadlineTest {
+    private static final int WORK_CAPACITY = 10;
+
+    private final SchedulingStrategy strategy;
+
+    public TaskDeadlineTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(QueueManagerOptions options) {
+        return TestTenants.newQueueManager(2, WORK_CAPACITY, strategy, options);
+    }
+
+    private static QueueManagerOptions dropExpiredTasks() {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setDropExpiredTasks(true);
+        return options;
+    }
+
+    @Test
+    public void expiredTasksAreDroppedWhenEnabled() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(dropExpiredTasks());
+        AtomicInteger cancelled = new AtomicInteger();
+        queueManager.submitWork(newTask("tenantId:0", "expired:1", 0, cancelled));
+        queueManager.submitWork(newTask("tenantId:0", "expired:2", 0, cancelled));
+        queueManager.submitWork(newTask("tenantId:0", "due", 10, cancelled));
+        queueManager.submitWork(newTask("tenantId:1", "no deadline", -1, cancelled));
+        Thread.sleep(5);
+
+        List<String> taken = new ArrayList<>();
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(100, TimeUnit.MILLISECONDS)) != null) {
+            taken.add((String) task.getTask().getDescription());
+        }
+        assertEquals(2, taken.size());
+        assertTrue(taken.contains("due"));
+        assertTrue(taken.contains("no deadline"));
+        assertEquals(2, cancelled.get());
+
+        TenantMetricsSnapshot metrics = queueManager.getTenantMetrics("tenantId:0");
+        assertEquals(2, metrics.getDropped());
+        assertEquals(0, metrics.getQueueDepth());
+    }
+
+    @Test
+    public void batchOfExpiredTasksWaitsForDueTask() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(dropExpiredTasks());
+        AtomicInteger cancelled = new AtomicInteger();
+        queueManager.submitWork(newTask("tenantId:0", "expired:1", 0, cancelled));
+        queueManager.submitWork(newTask("tenantId:0", "expired:2", 0, cancelled));
+        Thread.sleep(5);
+
+        //a batch which would be all expired tasks does not return empty handed.
+        List<TenantAwareTask> batch = new ArrayList<>();
+        Thread worker = new Thread(() -> {
+            try {
+                queueManager.takeWork(2, batch);
+            } catch (InterruptedException e) {
+                //stopped
+            }
+        });
+        worker.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cancelled.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        queueManager.submitWork(newTask("tenantId:1", "due", 10, cancelled));
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertEquals(1, batch.size());
+        assertEquals("due", batch.get(0).getTask().getDescription());
+        assertEquals(2, cancelled.get());
+    }
+
+    @Test
+    public void expiredTasksRunUnlessDropped() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        AtomicInteger cancelled = new AtomicInteger();
+        queueManager.submitWork(newTask("tenantId:0", "expired", 0, cancelled));
+        Thread.sleep(5);
+
+        TenantAwareTask task = queueManager.pollWork(1, TimeUnit.SECONDS);
+        assertNotNull(task);
+        assertTrue(task.isExpired(System.nanoTime()));
+        assertEquals(0, cancelled.get());
+    }
+
+    //a negative deadline means the task has none.
+    private static TenantAwareTask newTask(String tenantId, String description, long deadlineSeconds,
+                                           AtomicInteger cancelled) {
+        TenantAwareTask task = new TenantAwareTask(tenantId, new AbstractTask(description) {
+            @Override
+            public void run() {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.incrementAndGet();
+            }
+        });
+        if (deadlineSeconds >= 0)
+            task.setDeadline(deadlineSeconds, TimeUnit.SECONDS);
+        return task;
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.journal.JournalOptions;
+import com.example.platform.mt.journal.TaskJournal;
+import com.example.platform.mt.journal.TaskSerializer;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.RejectionPolicy;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SearchTask;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TaskPriority;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TaskJournalTest {
+    private static final TaskSerializer SERIALIZER = new TaskSerializer() {
+        @Override
+        public byte[] serialize(AbstractTask task) {
+            return ((String) task.getDescription()).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public AbstractTask deserialize(ByteBuffer bytes) {
+            byte[] description = new byte[bytes.remaining()];
+            bytes.get(description);
+            return new SearchTask(new String(description, StandardCharsets.UTF_8));
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private JournalOptions journalOptions;
+    private TaskJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath().resolve("journal");
+        journalOptions = new JournalOptions();
+        journalOptions.setSegmentSize(1 << 16);
+    }
+
+    @After
+    public void tearDown() {
+        if (journal != null)
+            journal.close();
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(int workCapacity) throws IOException {
+        return newQueueManager(workCapacity, RejectionPolicy.REJECT);
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(int workCapacity, RejectionPolicy rejectionPolicy)
+        throws IOException {
+        //a restart opens the journal again.
+        if (journal != null)
+            journal.close();
+        journal = TaskJournal.open(directory, SERIALIZER, journalOptions);
+        List<TenantConfig> tenantConfigList = TestTenants.newTenantConfigs(2, workCapacity);
+        for (TenantConfig tenantConfig : tenantConfigList) {
+            tenantConfig.setRejectionPolicy(rejectionPolicy);
+        }
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setJournal(journal);
+        return new MultiTenantWorkQueueManager(tenantConfigList, SchedulingStrategy.FAIR_QUEUEING, options);
+    }
+
+    @Test
+    public void pendingTasksAreReplayedAfterRestart() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(100);
+        for (int i = 0; i < 3; i++) {
+            queueManager.submitWork(newTask("tenantId:0", "search:"+i));
+        }
+        TenantAwareTask interactive = newTask("tenantId:1", "interactive search");
+        interactive.setPriority(TaskPriority.INTERACTIVE);
+        queueManager.submitWork(interactive);
+        queueManager.takeWork().run();
+        //taken, but not run before the restart.
+        queueManager.takeWork();
+        assertEquals(3, journal.getPendingTasks());
+
+        queueManager = newQueueManager(100);
+        assertEquals(3, queueManager.getTenantMetrics("tenantId:0").getQueueDepth()
+            + queueManager.getTenantMetrics("tenantId:1").getQueueDepth());
+        Set<String> replayed = new HashSet<>();
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            replayed.add(task.getTenantId()+"/"+task.getTask().getDescription()+"/"+task.getPriority());
+            task.run();
+        }
+        Set<String> expected = new HashSet<>();
+        expected.add("tenantId:0/search:1/BATCH");
+        expected.add("tenantId:0/search:2/BATCH");
+        expected.add("tenantId:1/interactive search/INTERACTIVE");
+        assertEquals(expected, replayed);
+        assertEquals(0, journal.getPendingTasks());
+
+        //tasks run after the replay are not replayed again.
+        queueManager = newQueueManager(100);
+        assertNull(queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void tasksOfTenantAreReplayedInOrder() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(1000);
+        for (int i = 0; i < 500; i++) {
+            queueManager.submitWork(newTask("tenantId:0", "search:"+i));
+        }
+
+        queueManager = newQueueManager(1000);
+        for (int i = 0; i < 500; i++) {
+            assertEquals("search:"+i, queueManager.takeWork().getTask().getDescription());
+        }
+    }
+
+    @Test
+    public void acknowledgedSegmentsAreDeleted() throws Exception {
+        journalOptions.setSyncOnAppend(false);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(100_000);
+        for (int i = 0; i < 10_000; i++) {
+            queueManager.submitWork(newTask("tenantId:"+(i % 2), "search:"+i));
+        }
+        assertTrue(countSegments() > 1);
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            task.cancel();
+        }
+        assertEquals(0, journal.getPendingTasks());
+        //only the segment which is appended to is kept.
+        assertEquals(1, countSegments());
+    }
+
+    @Test
+    public void tasksWhichDoNotFitAreReplayedLater() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(100);
+        for (int i = 0; i < 5; i++) {
+            queueManager.submitWork(newTask("tenantId:0", "search:"+i));
+        }
+
+        queueManager = newQueueManager(2);
+        List<String> taken = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            TenantAwareTask task;
+            while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+                taken.add((String) task.getTask().getDescription());
+                task.run();
+            }
+            queueManager.replayJournal();
+        }
+        assertEquals(5, taken.size());
+        assertEquals("search:0", taken.get(0));
+        assertEquals("search:4", taken.get(4));
+        assertEquals(0, queueManager.replayJournal());
+    }
+
+    @Test
+    public void rejectedAndCancelledTasksAreNotReplayed() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(2, RejectionPolicy.DROP_OLDEST);
+        Set<String> cancelled = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            assertEquals(SubmitStatus.ACCEPTED,
+                queueManager.trySubmit(newTask("tenantId:0", "search:"+i, cancelled)));
+        }
+        queueManager.trySubmit(newTask("tenantId:1", "search", cancelled));
+        queueManager.deProvisionTenant("tenantId:1");
+        assertEquals(3, cancelled.size());
+        assertEquals(2, journal.getPendingTasks());
+
+        queueManager = newQueueManager(2, RejectionPolicy.REJECT);
+        Set<String> replayed = new HashSet<>();
+        replayed.add((String) queueManager.takeWork().getTask().getDescription());
+        replayed.add((String) queueManager.takeWork().getTask().getDescription());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(cancelled.contains("search:"+i), !replayed.contains("search:"+i));
+        }
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "search:4")));
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask("tenantId:0", "search:5")));
+        assertEquals(SubmitStatus.TENANT_FULL, queueManager.trySubmit(newTask("tenantId:0", "search:6")));
+        //the 2 replayed tasks were taken but not run, and the rejected task is not pending.
+        assertEquals(4, journal.getPendingTasks());
+    }
+
+    @Test
+    public void incompleteRecordIsIgnoredOnReplay() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(100);
+        for (int i = 0; i < 3; i++) {
+            queueManager.submitWork(newTask("tenantId:0", "search:"+i));
+        }
+        journal.close();
+        corruptLastRecord();
+
+        queueManager = newQueueManager(100);
+        assertEquals("search:0", queueManager.takeWork().getTask().getDescription());
+        assertEquals("search:1", queueManager.takeWork().getTask().getDescription());
+        assertNull(queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void concurrentProducersShareForces() throws Exception {
+        journalOptions.setGroupCommitDelayMicros(100);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(100_000);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            String tenantId = "tenantId:"+(p % 2);
+            int producer = p;
+            producers.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 250; i++) {
+                        queueManager.submitWork(newTask(tenantId, producer+":"+i));
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join(30_000);
+        }
+        assertEquals(1000, journal.getPendingTasks());
+
+        MultiTenantWorkQueueManager restarted = newQueueManager(100_000);
+        int replayed = 0;
+        while (restarted.pollWork(0, TimeUnit.MILLISECONDS) != null) {
+            replayed++;
+        }
+        assertEquals(1000, replayed);
+    }
+
+    private int countSegments() throws IOException {
+        int segments = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.journal")) {
+            for (Path ignored : stream) {
+                segments++;
+            }
+        }
+        return segments;
+    }
+
+    //flips a byte in the body of the last record, as if the process crashed while writing it.
+    private void corruptLastRecord() throws IOException {
+        Path segment = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.journal")) {
+            for (Path path : stream) {
+                if (segment == null || path.compareTo(segment) > 0)
+                    segment = path;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int position = 16;
+            while (records.getInt(position) != 0) {
+                position += 8 + records.getInt(position);
+            }
+            records.put(position - 1, (byte) (records.get(position - 1) ^ 1));
+            records.force();
+        }
+    }
+
+    private static TenantAwareTask newTask(String tenantId, String description) {
+        return new TenantAwareTask(tenantId, new SearchTask(description));
+    }
+
+    private static TenantAwareTask newTask(String tenantId, String description, Set<String> cancelled) {
+        return new TenantAwareTask(tenantId, new SearchTask(description) {
+            @Override
+            public void cancel() {
+                cancelled.add(description);
+            }
+        });
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TaskPriority;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.WorkQueueType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.platform.mt.TestTenants.drain;
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class TaskPriorityTest {
+    private static final int WORK_CAPACITY = 10;
+
+    private final SchedulingStrategy strategy;
+
+    public TaskPriorityTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(QueueManagerOptions options) {
+        return TestTenants.newQueueManager(2, WORK_CAPACITY, strategy, options);
+    }
+
+    private static QueueManagerOptions prioritiesEnabled() {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setTaskPrioritiesEnabled(true);
+        return options;
+    }
+
+    @Test
+    public void tasksOfTenantAreHandedOutByPriority() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(prioritiesEnabled());
+        queueManager.submitWork(newTask("tenantId:0", "reindex:1", TaskPriority.BACKGROUND));
+        queueManager.submitWork(newTask("tenantId:0", "reindex:2", TaskPriority.BACKGROUND));
+        queueManager.submitWork(newTask("tenantId:0", "update", TaskPriority.BATCH));
+        queueManager.submitWork(newTask("tenantId:0", "search", TaskPriority.INTERACTIVE));
+
+        //fair queueing has already scheduled the task which the idle tenant submitted first.
+        List<String> expected = strategy == SchedulingStrategy.FAIR_QUEUEING
+            ? Arrays.asList("reindex:1", "search", "update", "reindex:2")
+            : Arrays.asList("search", "update", "reindex:1", "reindex:2");
+        assertEquals(expected, takeDescriptions(queueManager, 4));
+    }
+
+    @Test
+    public void prioritiesAreIgnoredUnlessEnabled() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        queueManager.submitWork(newTask("tenantId:0", "reindex:1", TaskPriority.BACKGROUND));
+        queueManager.submitWork(newTask("tenantId:0", "reindex:2", TaskPriority.BACKGROUND));
+        queueManager.submitWork(newTask("tenantId:0", "search", TaskPriority.INTERACTIVE));
+        assertEquals(Arrays.asList("reindex:1", "reindex:2", "search"), takeDescriptions(queueManager, 3));
+    }
+
+    @Test
+    public void prioritiesShareTheWorkCapacityOfTenant() throws Exception {
+        QueueManagerOptions options = prioritiesEnabled();
+        options.setWorkQueueType(WorkQueueType.ARRAY);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(options);
+        int accepted = 0;
+        TaskPriority[] priorities = TaskPriority.values();
+        while (queueManager.trySubmit(newTask("tenantId:0", "task", priorities[accepted % priorities.length]))
+            == SubmitStatus.ACCEPTED) {
+            accepted++;
+        }
+        assertTrue("accepted "+accepted, accepted >= WORK_CAPACITY-1 && accepted <= WORK_CAPACITY);
+        assertEquals(accepted, drain(queueManager));
+    }
+
+    @Test
+    public void systemTasksBypassTenantFairness() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        for (int i = 0; i < 3; i++) {
+            queueManager.submitWork(newTask("tenantId:0", "task", TaskPriority.INTERACTIVE));
+            queueManager.submitWork(newTask("tenantId:1", "task", TaskPriority.INTERACTIVE));
+        }
+        queueManager.submitSystemWork(new TestTenants.NoOpTask("health check:1"));
+        queueManager.submitSystemWork(new TestTenants.NoOpTask("health check:2"));
+
+        TenantAwareTask first = queueManager.takeWork();
+        assertEquals(MultiTenantWorkQueueManager.SYSTEM_TENANT_ID, first.getTenantId());
+        assertEquals("health check:1", first.getTask().getDescription());
+        List<TenantAwareTask> batch = new ArrayList<>();
+        queueManager.takeWork(3, batch);
+        assertEquals("health check:2", batch.get(0).getTask().getDescription());
+        assertNotEquals(MultiTenantWorkQueueManager.SYSTEM_TENANT_ID, batch.get(1).getTenantId());
+        assertEquals(6, drain(queueManager) + batch.size() - 1);
+    }
+
+    @Test
+    public void systemTaskWakesUpWaitingWorker() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        List<TenantAwareTask> taken = new ArrayList<>();
+        Thread worker = new Thread(() -> {
+            try {
+                taken.add(queueManager.takeWork());
+            } catch (InterruptedException e) {
+                //stopped
+            }
+        });
+        worker.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (worker.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        queueManager.submitSystemWork(new TestTenants.NoOpTask("health check"));
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertEquals(MultiTenantWorkQueueManager.SYSTEM_TENANT_ID, taken.get(0).getTenantId());
+        assertNull(queueManager.pollWork(50, TimeUnit.MILLISECONDS));
+    }
+
+    private static List<String> takeDescriptions(MultiTenantWorkQueueManager queueManager, int noOfTasks)
+        throws InterruptedException {
+        List<String> descriptions = new ArrayList<>();
+        for (int i = 0; i < noOfTasks; i++) {
+            descriptions.add((String) queueManager.takeWork().getTask().getDescription());
+        }
+        return descriptions;
+    }
+
+    private static TenantAwareTask newTask(String tenantId, String description, TaskPriority priority) {
+        TenantAwareTask task = TestTenants.newTask(tenantId, description);
+        task.setPriority(priority);
+        return task;
+    }
+}
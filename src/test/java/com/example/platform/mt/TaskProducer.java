@@ -0,0 +1,37 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.vo.SearchTask;
+import com.example.platform.mt.vo.TenantAwareTask;
+
+class TaskProducer extends Thread {
+
+    MultiTenantWorkQueueManager queueManager;
+    String tenantId;
+    int threadId;
+    private int noOfTasks;
+
+    TaskProducer(MultiTenantWorkQueueManager queueManager, String tenantId, int threadId, int noOfTasks) {
+        this.queueManager = queueManager;
+        this.tenantId = tenantId;
+        this.threadId = threadId;
+        this.noOfTasks = noOfTasks;
+        setName("Task producer thread "+threadId+" for tenant "+tenantId);
+        //System.out.println("Initialized "+getName());
+    }
+    public void run() {
+        for (int i = 0; i < noOfTasks; i++) {
+            TenantAwareTask t = new TenantAwareTask(""+tenantId, new SearchTask(threadId+","+i));
+            try {
+                if (t.getTenantId().equals("tenantId:"+MultiTenantWorkQueueManagerTest.noOfTenants)) {
+                    System.out.println("Submitted "+t.getTenantId()+" task at " + System.currentTimeMillis());
+                }
+                queueManager.submitWork(t);
+            } catch (InterruptedException e) {
+                System.out.println(getName()+" was interrupted while submitting task "+t);
+            } catch (UnknownTenantException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.DeProvisionMode;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.platform.mt.TestTenants.newTask;
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class TenantLimitTest {
+    private static final int WORK_CAPACITY = 10;
+
+    private final SchedulingStrategy strategy;
+
+    public TenantLimitTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(TenantConfig limitedTenantConfig) {
+        List<TenantConfig> tenantConfigList = TestTenants.newTenantConfigs(2, WORK_CAPACITY);
+        tenantConfigList.set(0, limitedTenantConfig);
+        return new MultiTenantWorkQueueManager(tenantConfigList, strategy, new QueueManagerOptions());
+    }
+
+    @Test
+    public void rateLimitSpacesOutTasksOfTenant() throws Exception {
+        TenantConfig tenantConfig = newConfig();
+        tenantConfig.setRateLimit(20);
+        tenantConfig.setBurst(1);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(tenantConfig);
+        for (int i = 0; i < 5; i++) {
+            queueManager.submitWork(newTask("tenantId:0"));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            TenantAwareTask task = queueManager.pollWork(5, TimeUnit.SECONDS);
+            assertNotNull(task);
+            task.run();
+        }
+        //4 tasks wait for a token each, every 50ms.
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("elapsed "+elapsedMillis, elapsedMillis >= 150);
+    }
+
+    @Test
+    public void otherTenantsAreServedWhileTenantIsThrottled() throws Exception {
+        TenantConfig tenantConfig = newConfig();
+        tenantConfig.setRateLimit(0.5);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(tenantConfig);
+        for (int i = 0; i < 3; i++) {
+            queueManager.submitWork(newTask("tenantId:0"));
+            queueManager.submitWork(newTask("tenantId:1"));
+        }
+        int[] taken = new int[2];
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(200, TimeUnit.MILLISECONDS)) != null) {
+            taken[task.getTenantId().equals("tenantId:0") ? 0 : 1]++;
+            task.run();
+        }
+        assertEquals(1, taken[0]);
+        assertEquals(3, taken[1]);
+    }
+
+    @Test
+    public void maxInFlightHoldsBackTasksUntilTasksComplete() throws Exception {
+        TenantConfig tenantConfig = newConfig();
+        tenantConfig.setMaxInFlight(1);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(tenantConfig);
+        queueManager.submitWork(newTask("tenantId:0"));
+        queueManager.submitWork(newTask("tenantId:0"));
+        queueManager.submitWork(newTask("tenantId:1"));
+
+        TenantAwareTask first = queueManager.pollWork(1, TimeUnit.SECONDS);
+        assertEquals("tenantId:0", first.getTenantId());
+        assertEquals("tenantId:1", queueManager.pollWork(1, TimeUnit.SECONDS).getTenantId());
+        assertNull(queueManager.pollWork(100, TimeUnit.MILLISECONDS));
+        first.run();
+        TenantAwareTask second = queueManager.pollWork(1, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals("tenantId:0", second.getTenantId());
+    }
+
+    @Test
+    public void workerWaitingForThrottledTenantBlocks() throws Exception {
+        TenantConfig tenantConfig = newConfig();
+        tenantConfig.setMaxInFlight(1);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(tenantConfig);
+        queueManager.submitWork(newTask("tenantId:0"));
+        queueManager.submitWork(newTask("tenantId:0"));
+        TenantAwareTask first = queueManager.takeWork();
+
+        List<TenantAwareTask> taken = new ArrayList<>();
+        Thread worker = new Thread(() -> {
+            try {
+                taken.add(queueManager.takeWork());
+            } catch (InterruptedException e) {
+                //stopped
+            }
+        });
+        worker.start();
+        //the worker does not spin on the throttled tenant.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (worker.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, worker.getState());
+        first.run();
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+        assertEquals(1, taken.size());
+    }
+
+    @Test
+    public void limitsAreChangedByUpdate() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(newConfig());
+        TenantConfig tenantConfig = newConfig();
+        tenantConfig.setMaxInFlight(1);
+        queueManager.updateTenantConfig(tenantConfig);
+        queueManager.submitWork(newTask("tenantId:0"));
+        queueManager.submitWork(newTask("tenantId:0"));
+        assertNotNull(queueManager.pollWork(1, TimeUnit.SECONDS));
+        assertNull(queueManager.pollWork(100, TimeUnit.MILLISECONDS));
+
+        //lifting the cap resumes the throttled tenant.
+        queueManager.updateTenantConfig(newConfig());
+        assertNotNull(queueManager.pollWork(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void throttledTenantIsDeProvisionedWithItsTasks() throws Exception {
+        TenantConfig tenantConfig = newConfig();
+        tenantConfig.setRateLimit(0.5);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(tenantConfig);
+        for (int i = 0; i < 3; i++) {
+            queueManager.submitWork(newTask("tenantId:0"));
+        }
+        assertNotNull(queueManager.pollWork(1, TimeUnit.SECONDS));
+        assertNull(queueManager.pollWork(100, TimeUnit.MILLISECONDS));
+
+        List<TenantAwareTask> migrated = new ArrayList<>();
+        queueManager.deProvisionTenant("tenantId:0", DeProvisionMode.MIGRATE, migrated::add).get(5, TimeUnit.SECONDS);
+        assertEquals(2, migrated.size());
+        assertNull(queueManager.pollWork(100, TimeUnit.MILLISECONDS));
+    }
+
+    private static TenantConfig newConfig() {
+        return new TenantConfig("tenantId:0", "tenantName:0", WORK_CAPACITY);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.metrics.HistogramSnapshot;
+import com.example.platform.mt.metrics.LatencyHistogram;
+import com.example.platform.mt.metrics.TenantMetricsSnapshot;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.RejectionPolicy;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TenantMetricsTest {
+    private static final String BUSY_TENANT = "tenantId:busy";
+    private static final String QUIET_TENANT = "tenantId:quiet";
+    private MultiTenantWorkQueueManager queueManager;
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        TenantConfig busyConfig = new TenantConfig(BUSY_TENANT, "tenantName:busy", 3);
+        busyConfig.setRejectionPolicy(RejectionPolicy.DROP_OLDEST);
+        tenantConfigList.add(busyConfig);
+        tenantConfigList.add(new TenantConfig(QUIET_TENANT, "tenantName:quiet", 3));
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList, SchedulingStrategy.FAIR_QUEUEING);
+    }
+
+    @Test
+    public void histogramPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i*1000);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500, snapshot.getMean());
+        assertWithinPrecision(500000, snapshot.getP50());
+        assertWithinPrecision(990000, snapshot.getP99());
+        assertWithinPrecision(999000, snapshot.getP999());
+        assertWithinPrecision(1000000, snapshot.getMax());
+        assertEquals(0, new LatencyHistogram().snapshot().getP99());
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        //values are reported as the highest value of their bucket, which is at most 12.5% higher.
+        assertTrue(expected+" vs "+actual, actual >= expected && actual <= expected*1.125);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void tenantCountersTrackTaskLifecycle() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            queueManager.trySubmit(newTask(BUSY_TENANT, 0));
+        }
+        queueManager.trySubmit(newTask(QUIET_TENANT, 0));
+        queueManager.trySubmit(newTask(QUIET_TENANT, 0));
+        queueManager.trySubmit(newTask(QUIET_TENANT, 0));
+        queueManager.trySubmit(newTask(QUIET_TENANT, 0));
+
+        TenantMetricsSnapshot busy = queueManager.getTenantMetrics(BUSY_TENANT);
+        //the 2 tasks over capacity each dropped an older task.
+        assertEquals(5, busy.getSubmitted());
+        assertEquals(2, busy.getDropped());
+        assertEquals(0, busy.getRejected());
+        assertEquals(3, busy.getQueueDepth());
+        TenantMetricsSnapshot quiet = queueManager.getTenantMetrics(QUIET_TENANT);
+        assertEquals(3, quiet.getSubmitted());
+        assertEquals(1, quiet.getRejected());
+
+        List<TenantAwareTask> batch = new ArrayList<>();
+        queueManager.takeWork(2, batch);
+        for (TenantAwareTask task : batch) {
+            task.run();
+        }
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            task.run();
+        }
+        busy = queueManager.getTenantMetrics(BUSY_TENANT);
+        assertEquals(3, busy.getDequeued());
+        assertEquals(3, busy.getCompleted());
+        assertEquals(0, busy.getQueueDepth());
+        assertEquals(3, busy.getQueueWait().getCount());
+        assertEquals(3, busy.getExecutionTime().getCount());
+        assertEquals(6, queueManager.getProcessedTasksCount());
+        assertEquals(6, queueManager.getProcessedTasksCountLong());
+        assertEquals(2, queueManager.getTenantMetrics().size());
+    }
+
+    @Test
+    public void executionTimeIsRecorded() throws Exception {
+        queueManager.submitWork(newTask(QUIET_TENANT, 20));
+        queueManager.takeWork().run();
+        HistogramSnapshot executionTime = queueManager.getTenantMetrics(QUIET_TENANT).getExecutionTime();
+        assertEquals(1, executionTime.getCount());
+        assertTrue(executionTime.getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void metricsArePulledThroughJmx() throws Exception {
+        queueManager.trySubmit(newTask(QUIET_TENANT, 0));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.example.platform.mt:type=MultiTenantWorkQueueManager,name=test");
+        server.registerMBean(queueManager, name);
+        try {
+            assertEquals(2, server.getAttribute(name, "NoOfTenants"));
+            assertEquals(0L, server.getAttribute(name, "ProcessedTasksCountLong"));
+            TabularData tenantMetrics = (TabularData) server.getAttribute(name, "TenantMetrics");
+            CompositeData quiet = (CompositeData) tenantMetrics.get(new Object[]{QUIET_TENANT}).get("value");
+            assertEquals(1L, quiet.get("submitted"));
+            assertEquals(1L, quiet.get("queueDepth"));
+            assertEquals(0L, ((CompositeData) quiet.get("queueWait")).get("count"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    private static TenantAwareTask newTask(String tenantId, long sleepMillis) {
+        return new TenantAwareTask(tenantId, new AbstractTask("task") {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+}
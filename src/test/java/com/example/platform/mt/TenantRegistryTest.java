@@ -0,0 +1,125 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class TenantRegistryTest {
+    private final SchedulingStrategy strategy;
+    private MultiTenantWorkQueueManager queueManager;
+
+    public TenantRegistryTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        queueManager = new MultiTenantWorkQueueManager(TestTenants.newTenantConfigs(3, 10), strategy);
+    }
+
+    @Test
+    public void tenantsGetDenseHandles() {
+        TenantRegistry registry = new TenantRegistry();
+        assertEquals(0, registry.register("tenantId:0"));
+        assertEquals(1, registry.register("tenantId:1"));
+        assertEquals(0, registry.register("tenantId:0"));
+        assertEquals("tenantId:1", registry.getTenantId(1));
+
+        assertEquals(1, registry.unregister("tenantId:1"));
+        assertEquals(TenantRegistry.NO_HANDLE, registry.getHandle("tenantId:1"));
+        assertNull(registry.getTenantId(1));
+        //the index is reused, but the handle is not.
+        int reusedHandle = registry.register("tenantId:2");
+        assertNotEquals(1, reusedHandle);
+        assertEquals(1, TenantRegistry.indexOf(reusedHandle));
+        assertNull(registry.getTenantId(1));
+        assertEquals("tenantId:2", registry.getTenantId(reusedHandle));
+        assertEquals(2, registry.register("tenantId:1"));
+        for (int i = 3; i < 100; i++) {
+            assertEquals(i, registry.register("tenantId:"+i));
+        }
+        assertEquals("tenantId:99", registry.getTenantId(99));
+    }
+
+    @Test
+    public void churningTenantsKeepHandlesDense() {
+        TenantRegistry registry = new TenantRegistry();
+        TenantTable<String> table = new TenantTable<>();
+        int staleHandle = registry.register("tenantId:0");
+        table.put(staleHandle, "tenantId:0");
+        for (int i = 1; i < 1_000; i++) {
+            assertEquals("tenantId:"+(i - 1), table.remove(staleHandle));
+            registry.unregister("tenantId:"+(i - 1));
+            int handle = registry.register("tenantId:"+i);
+            assertEquals(0, TenantRegistry.indexOf(handle));
+            assertNotEquals(staleHandle, handle);
+            table.put(handle, "tenantId:"+i);
+            //a stale handle does not find the tenant which reused its index.
+            assertNull(table.get(staleHandle));
+            assertNull(table.remove(staleHandle));
+            assertEquals("tenantId:"+i, table.get(handle));
+            staleHandle = handle;
+        }
+    }
+
+    @Test
+    public void tasksCarryingHandlesAreScheduled() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            String tenantId = "tenantId:"+i;
+            int tenantHandle = queueManager.getTenantHandle(tenantId);
+            assertEquals(i, tenantHandle);
+            assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(new TenantAwareTask(tenantId, tenantHandle, new TestTenants.NoOpTask("task"))));
+        }
+        List<String> taken = new ArrayList<>();
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            taken.add(task.getTenantId());
+        }
+        assertEquals(3, taken.size());
+        assertTrue(taken.containsAll(Arrays.asList("tenantId:0", "tenantId:1", "tenantId:2")));
+    }
+
+    @Test
+    public void staleHandlesAreNotTrusted() throws Exception {
+        int staleHandle = queueManager.getTenantHandle("tenantId:2");
+        queueManager.deProvisionTenant("tenantId:2");
+        assertEquals(TenantRegistry.NO_HANDLE, queueManager.getTenantHandle("tenantId:2"));
+        assertEquals(SubmitStatus.UNKNOWN_TENANT, queueManager.trySubmit(new TenantAwareTask("tenantId:2", staleHandle, new TestTenants.NoOpTask("task"))));
+        try {
+            queueManager.submitWork(new TenantAwareTask("tenantId:2", staleHandle, new TestTenants.NoOpTask("task")));
+            fail();
+        } catch (UnknownTenantException e) {
+            //expected
+        }
+
+        queueManager.provisionTenant(new TenantConfig("tenantId:2", "tenantName:2", 10));
+        assertNotEquals(staleHandle, queueManager.getTenantHandle("tenantId:2"));
+        //a handle of another tenant falls back to the lookup by tenant id.
+        TenantAwareTask task = new TenantAwareTask("tenantId:2", queueManager.getTenantHandle("tenantId:0"), new TestTenants.NoOpTask("task"));
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(task));
+        assertEquals(queueManager.getTenantHandle("tenantId:2"), task.getTenantHandle());
+        assertSame(task, queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, queueManager.getTenantMetrics("tenantId:2").getSubmitted());
+        assertEquals(0, queueManager.getTenantMetrics("tenantId:0").getSubmitted());
+    }
+}
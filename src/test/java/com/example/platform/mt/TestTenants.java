@@ -0,0 +1,83 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SearchTask;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixture shared by the queue manager tests: tenants with the ids "tenantId:0", "tenantId:1", ...,
+ * tasks which do nothing, and draining the tasks the tenants queued.
+ */
+class TestTenants {
+    private TestTenants() {
+    }
+
+    static List<TenantConfig> newTenantConfigs(int noOfTenants, int workCapacity) {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        for (int i = 0; i < noOfTenants; i++) {
+            tenantConfigList.add(new TenantConfig("tenantId:"+i, "tenantName:"+i, workCapacity));
+        }
+        return tenantConfigList;
+    }
+
+    static MultiTenantWorkQueueManager newQueueManager(int noOfTenants, int workCapacity, SchedulingStrategy strategy,
+                                                       QueueManagerOptions options) {
+        return new MultiTenantWorkQueueManager(newTenantConfigs(noOfTenants, workCapacity), strategy, options);
+    }
+
+    static TenantAwareTask newTask(String tenantId) {
+        return newTask(tenantId, "task");
+    }
+
+    static TenantAwareTask newTask(String tenantId, String description) {
+        return new TenantAwareTask(tenantId, new NoOpTask(description));
+    }
+
+    //takes the queued tasks without running them.
+    static int drain(MultiTenantWorkQueueManager queueManager) throws InterruptedException {
+        int taken = 0;
+        while (queueManager.pollWork(0, TimeUnit.MILLISECONDS) != null) {
+            taken++;
+        }
+        return taken;
+    }
+
+    static List<TenantAwareTask> drainAndRun(MultiTenantWorkQueueManager queueManager) throws InterruptedException {
+        List<TenantAwareTask> taken = new ArrayList<>();
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            taken.add(task);
+            task.run();
+        }
+        return taken;
+    }
+
+    //does not opt in to batching.
+    static class NoOpTask extends AbstractTask {
+        NoOpTask(String description) {
+            super(description);
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    //does not sleep like a search task, so that tests run quickly, but batches like one.
+    static class QuickTask extends SearchTask {
+        QuickTask(String description) {
+            super(description);
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.trace.TenantTraceSummary;
+import com.example.platform.mt.trace.TraceEventType;
+import com.example.platform.mt.trace.TraceReader;
+import com.example.platform.mt.trace.TraceRecorder;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.platform.mt.TestTenants.newTask;
+import static org.junit.Assert.*;
+
+public class TraceRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MultiTenantWorkQueueManager queueManager;
+    private Path traceFile;
+
+    @Before
+    public void setUp() throws Exception {
+        queueManager = new MultiTenantWorkQueueManager(TestTenants.newTenantConfigs(2, 100), SchedulingStrategy.FAIR_QUEUEING);
+        traceFile = folder.getRoot().toPath().resolve("trace.bin");
+    }
+
+    @Test
+    public void traceRecordsShareAndQueueWait() throws Exception {
+        //submitted before the trace is switched on, so only its dispatch is traced.
+        queueManager.submitWork(newTask("tenantId:0"));
+        TraceRecorder recorder = TraceRecorder.open(traceFile, 1 << 20);
+        queueManager.setTraceRecorder(recorder);
+        for (int i = 0; i < 30; i++) {
+            queueManager.submitWork(newTask("tenantId:0"));
+        }
+        for (int i = 0; i < 10; i++) {
+            queueManager.submitWork(newTask("tenantId:1"));
+        }
+        for (int i = 0; i < 20; i++) {
+            queueManager.takeWork().run();
+        }
+        queueManager.setTraceRecorder(null);
+        recorder.close();
+
+        Map<String, TenantTraceSummary> summaries = TraceReader.summarize(traceFile);
+        TenantTraceSummary busy = summaries.get("tenantId:0");
+        TenantTraceSummary quiet = summaries.get("tenantId:1");
+        assertEquals(30, busy.getEnqueued());
+        assertEquals(10, quiet.getEnqueued());
+        //fair queueing alternates between the tenants.
+        assertEquals(10, busy.getDispatched());
+        assertEquals(10, quiet.getDispatched());
+        //the task submitted before the trace was switched on is not traced when it completes.
+        assertEquals(9, busy.getCompleted());
+        assertEquals(0.5, busy.getShare(), 0.0);
+        assertEquals(10, busy.getQueueWait().getCount());
+        assertEquals(9, busy.getExecutionTime().getCount());
+        assertEquals(10, quiet.getQueueWait().getCount());
+        assertTrue(quiet.getQueueWait().getMax() > 0);
+    }
+
+    @Test
+    public void concurrentThreadsRecordIntoTheFile() throws Exception {
+        TraceRecorder recorder = TraceRecorder.open(traceFile, 3 << 17);
+        int eventsPerThread = 10000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String tenantId = "tenantId:"+i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < eventsPerThread; j++) {
+                    recorder.record(TraceEventType.ENQUEUE, tenantId, System.nanoTime(), 0);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        recorder.close();
+
+        //the file holds 16382 records, i.e., 3 full thread buffers of 4096 records and change.
+        long dropped = recorder.getDroppedRecords();
+        assertTrue(dropped > 0);
+        long recorded = 0;
+        for (TenantTraceSummary summary : TraceReader.summarize(traceFile).values()) {
+            recorded += summary.getEnqueued();
+        }
+        assertEquals(4*eventsPerThread, recorded + dropped);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.RejectionPolicy;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class TrySubmitTest {
+    private static final String TENANT_ID = "tenantId:0";
+    private static final int WORK_CAPACITY = 3;
+
+    private final SchedulingStrategy strategy;
+    private TenantConfig tenantConfig;
+    private MultiTenantWorkQueueManager queueManager;
+
+    public TrySubmitTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        tenantConfig = new TenantConfig(TENANT_ID, "tenantName:0", WORK_CAPACITY);
+        tenantConfigList.add(tenantConfig);
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList, strategy);
+    }
+
+    @Test
+    public void trySubmitRejectsWhenTenantIsFull() throws Exception {
+        fillTenant();
+        assertEquals(SubmitStatus.TENANT_FULL, queueManager.trySubmit(newTask(WORK_CAPACITY)));
+        assertEquals(SubmitStatus.UNKNOWN_TENANT, queueManager.trySubmit(new TenantAwareTask("tenantId:1", new TestTenants.NoOpTask("unknown"))));
+
+        assertEquals("task 0", queueManager.takeWork().getTask().getDescription());
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask(WORK_CAPACITY)));
+    }
+
+    @Test
+    public void timedSubmitWaitsForSpace() throws Exception {
+        fillTenant();
+        long start = System.nanoTime();
+        assertEquals(SubmitStatus.TENANT_FULL, queueManager.submitWork(newTask(WORK_CAPACITY), 50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        Thread worker = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                queueManager.takeWork();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        });
+        worker.start();
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.submitWork(newTask(WORK_CAPACITY), 5, TimeUnit.SECONDS));
+        worker.join();
+    }
+
+    @Test
+    public void dropOldestMakesSpaceForNewTask() throws Exception {
+        tenantConfig.setRejectionPolicy(RejectionPolicy.DROP_OLDEST);
+        fillTenant();
+        assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask(WORK_CAPACITY)));
+
+        List<Object> taken = new ArrayList<>();
+        TenantAwareTask task;
+        while ((task = queueManager.pollWork(0, TimeUnit.MILLISECONDS)) != null) {
+            taken.add(task.getTask().getDescription());
+        }
+        assertEquals(WORK_CAPACITY, taken.size());
+        assertEquals("task "+WORK_CAPACITY, taken.get(WORK_CAPACITY-1));
+    }
+
+    @Test
+    public void shedToOverflowHandsTaskToOverflowHandler() throws Exception {
+        tenantConfig.setRejectionPolicy(RejectionPolicy.SHED_TO_OVERFLOW);
+        fillTenant();
+        assertEquals(SubmitStatus.TENANT_FULL, queueManager.trySubmit(newTask(WORK_CAPACITY)));
+
+        List<TenantAwareTask> shed = new ArrayList<>();
+        queueManager.setOverflowHandler(shed::add);
+        TenantAwareTask task = newTask(WORK_CAPACITY);
+        assertEquals(SubmitStatus.SHED, queueManager.trySubmit(task));
+        assertEquals(1, shed.size());
+        assertSame(task, shed.get(0));
+    }
+
+    private void fillTenant() {
+        for (int i = 0; i < WORK_CAPACITY; i++) {
+            assertEquals(SubmitStatus.ACCEPTED, queueManager.trySubmit(newTask(i)));
+        }
+    }
+
+    private static TenantAwareTask newTask(int i) {
+        return new TenantAwareTask(TENANT_ID, new TestTenants.NoOpTask("task "+i));
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SubmitStatus;
+import com.example.platform.mt.vo.TenantConfig;
+import com.example.platform.mt.vo.WorkQueueType;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static com.example.platform.mt.TestTenants.drain;
+import static com.example.platform.mt.TestTenants.newTask;
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class UpdateTenantConfigTest {
+    private static final int WORK_CAPACITY = 4;
+
+    private final SchedulingStrategy strategy;
+
+    public UpdateTenantConfigTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(QueueManagerOptions options) {
+        return TestTenants.newQueueManager(2, WORK_CAPACITY, strategy, options);
+    }
+
+    @Test
+    public void workCapacityIsChangedInPlace() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        int accepted = fill(queueManager, "tenantId:0");
+        assertTrue(accepted >= WORK_CAPACITY-1 && accepted <= WORK_CAPACITY);
+
+        queueManager.updateTenantConfig(newConfig("tenantId:0", 1, 2*WORK_CAPACITY));
+        assertEquals(2*WORK_CAPACITY-accepted, fill(queueManager, "tenantId:0"));
+        //the tasks queued beyond a lowered capacity are kept.
+        queueManager.updateTenantConfig(newConfig("tenantId:0", 1, 2));
+        assertEquals(SubmitStatus.TENANT_FULL, queueManager.trySubmit(newTask("tenantId:0")));
+        assertEquals(2*WORK_CAPACITY, drain(queueManager));
+        assertTrue(fill(queueManager, "tenantId:0") <= 2);
+        assertEquals(accepted, fill(queueManager, "tenantId:1"));
+    }
+
+    @Test
+    public void blockedProducerResumesWhenCapacityIsRaised() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        int accepted = fill(queueManager, "tenantId:0");
+        Thread producer = new Thread(() -> {
+            try {
+                queueManager.submitWork(newTask("tenantId:0"));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        queueManager.updateTenantConfig(newConfig("tenantId:0", 1, WORK_CAPACITY+1));
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(accepted+1, drain(queueManager));
+    }
+
+    @Test
+    public void weightAppliesFromNextSchedulingDecision() throws Exception {
+        Assume.assumeTrue(strategy == SchedulingStrategy.WEIGHTED_FAIR_QUEUEING
+            || strategy == SchedulingStrategy.DEFICIT_ROUND_ROBIN);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(new QueueManagerOptions());
+        for (int i = 0; i < 2; i++) {
+            queueManager.updateTenantConfig(newConfig("tenantId:"+i, i == 0 ? 3 : 1, 100));
+        }
+        for (int i = 0; i < 40; i++) {
+            queueManager.submitWork(newTask("tenantId:0"));
+            queueManager.submitWork(newTask("tenantId:1"));
+        }
+        int takenOfTenant0 = 0;
+        for (int i = 0; i < 40; i++) {
+            if ("tenantId:0".equals(queueManager.takeWork().getTenantId()))
+                takenOfTenant0++;
+        }
+        assertTrue("taken "+takenOfTenant0, takenOfTenant0 >= 28 && takenOfTenant0 <= 32);
+    }
+
+    @Test
+    public void arrayWorkQueueCanNotGrowBeyondItsAllocation() throws Exception {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setWorkQueueType(WorkQueueType.ARRAY);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(options);
+        queueManager.updateTenantConfig(newConfig("tenantId:0", 1, 2));
+        assertTrue(fill(queueManager, "tenantId:0") <= 2);
+        try {
+            queueManager.updateTenantConfig(newConfig("tenantId:0", 1, 2*WORK_CAPACITY));
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void lazyWorkQueueIsCreatedWithUpdatedCapacity() throws Exception {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setIdleQueueTimeoutMillis(60000);
+        MultiTenantWorkQueueManager queueManager = newQueueManager(options);
+        queueManager.updateTenantConfig(newConfig("tenantId:0", 1, 2*WORK_CAPACITY));
+        assertEquals(0, queueManager.getNoOfTenantQueues());
+        assertTrue(fill(queueManager, "tenantId:0") >= 2*WORK_CAPACITY-1);
+    }
+
+    @Test(expected = UnknownTenantException.class)
+    public void updateOfUnknownTenantThrowsException() throws Exception {
+        newQueueManager(new QueueManagerOptions()).updateTenantConfig(newConfig("tenantId:9", 1, WORK_CAPACITY));
+    }
+
+    private static TenantConfig newConfig(String tenantId, int weight, int workCapacity) {
+        TenantConfig tenantConfig = new TenantConfig(tenantId, tenantId.replace("Id", "Name"), workCapacity);
+        tenantConfig.setWeight(weight);
+        return tenantConfig;
+    }
+
+    private static int fill(MultiTenantWorkQueueManager queueManager, String tenantId) {
+        int accepted = 0;
+        while (queueManager.trySubmit(newTask(tenantId)) == SubmitStatus.ACCEPTED) {
+            accepted++;
+        }
+        return accepted;
+    }
+}
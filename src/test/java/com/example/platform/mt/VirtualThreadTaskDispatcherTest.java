@@ -0,0 +1,127 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.impl.VirtualThreadTaskDispatcher;
+import com.example.platform.mt.impl.VirtualThreads;
+import com.example.platform.mt.vo.AbstractTask;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VirtualThreadTaskDispatcherTest {
+    private MultiTenantWorkQueueManager queueManager;
+    private static final String BUSY_TENANT = "tenantId:busy";
+    private static final String QUIET_TENANT = "tenantId:quiet";
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        tenantConfigList.add(new TenantConfig(BUSY_TENANT, "tenantName:busy", 100));
+        tenantConfigList.add(new TenantConfig(QUIET_TENANT, "tenantName:quiet", 100));
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList, SchedulingStrategy.FAIR_QUEUEING);
+    }
+
+    @Test
+    public void perTenantConcurrencyIsCapped() throws Exception {
+        VirtualThreadTaskDispatcher dispatcher = new VirtualThreadTaskDispatcher(queueManager, 10, 2, Thread::new);
+        BlockingTask.Counter busyCounter = new BlockingTask.Counter();
+        CountDownLatch quietDone = new CountDownLatch(1);
+        for (int i = 0; i < 20; i++) {
+            queueManager.submitWork(new TenantAwareTask(BUSY_TENANT, new BlockingTask("busy "+i, busyCounter, 20)));
+        }
+        dispatcher.start();
+        queueManager.submitWork(new TenantAwareTask(QUIET_TENANT, new AbstractTask("quiet") {
+            @Override
+            public void run() {
+                quietDone.countDown();
+            }
+        }));
+
+        //quiet tenant is not stuck behind the busy tenant's tasks, which stay queued while it is at its cap.
+        assertTrue(quietDone.await(2, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (busyCounter.completed.get() != 20 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        dispatcher.shutdown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(20, busyCounter.completed.get());
+        assertEquals(2, busyCounter.maxRunning.get());
+    }
+
+    @Test
+    public void shutdownIsNotHeldUpByTenantAtItsCap() throws Exception {
+        VirtualThreadTaskDispatcher dispatcher = new VirtualThreadTaskDispatcher(queueManager, 2, 1, Thread::new);
+        BlockingTask.Counter busyCounter = new BlockingTask.Counter();
+        for (int i = 0; i < 50; i++) {
+            queueManager.submitWork(new TenantAwareTask(BUSY_TENANT, new BlockingTask("busy "+i, busyCounter, 20)));
+        }
+        dispatcher.start();
+        Thread.sleep(50);
+        dispatcher.shutdown();
+        assertTrue(dispatcher.awaitTermination(1, TimeUnit.SECONDS));
+        //the tasks not taken yet are left in the queue manager.
+        assertTrue(queueManager.getTenantMetrics(BUSY_TENANT).getQueueDepth() > 0);
+        assertEquals(1, busyCounter.maxRunning.get());
+    }
+
+    @Test
+    public void virtualThreadsRunAllTasks() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        VirtualThreadTaskDispatcher dispatcher = new VirtualThreadTaskDispatcher(queueManager, 1000, 100);
+        BlockingTask.Counter counter = new BlockingTask.Counter();
+        dispatcher.start();
+        for (int i = 0; i < 100; i++) {
+            queueManager.submitWork(new TenantAwareTask(BUSY_TENANT, new BlockingTask("busy "+i, counter, 200)));
+            queueManager.submitWork(new TenantAwareTask(QUIET_TENANT, new BlockingTask("quiet "+i, counter, 200)));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.completed.get() != 200 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        dispatcher.shutdown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(200, counter.completed.get());
+        //all tasks block for 200ms, so they must have run concurrently.
+        assertTrue(counter.maxRunning.get() > 100);
+    }
+
+    static class BlockingTask extends AbstractTask {
+        private final Counter counter;
+        private final long sleepMillis;
+
+        BlockingTask(String taskDescription, Counter counter, long sleepMillis) {
+            super(taskDescription);
+            this.counter = counter;
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public void run() {
+            counter.maxRunning.accumulateAndGet(counter.running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            counter.running.decrementAndGet();
+            counter.completed.incrementAndGet();
+        }
+
+        static class Counter {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final AtomicInteger completed = new AtomicInteger();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.exception.UnknownTenantException;
+import com.example.platform.mt.impl.MTWorkerThread;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.SearchTask;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.TenantConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WeightedFairQueueingWorkSchedulerTest {
+    private MultiTenantWorkQueueManager queueManager;
+    private static final String PAID_TENANT = "tenantId:paid";
+    private static final String FREE_TENANT = "tenantId:free";
+    private static final int PAID_WEIGHT = 3;
+    private int workCapacity = 100;
+
+    @Before
+    public void setUp() throws Exception {
+        List<TenantConfig> tenantConfigList = new ArrayList<>();
+        TenantConfig paid = new TenantConfig(PAID_TENANT, "tenantName:paid", workCapacity);
+        paid.setWeight(PAID_WEIGHT);
+        tenantConfigList.add(paid);
+        tenantConfigList.add(new TenantConfig(FREE_TENANT, "tenantName:free", workCapacity));
+        queueManager = new MultiTenantWorkQueueManager(tenantConfigList,
+            SchedulingStrategy.WEIGHTED_FAIR_QUEUEING);
+    }
+
+    @Test
+    public void takeWorkServesTenantsInProportionToWeight() throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < 40; i++) {
+            queueManager.submitWork(new TenantAwareTask(PAID_TENANT, new SearchTask("paid search "+i)));
+            queueManager.submitWork(new TenantAwareTask(FREE_TENANT, new SearchTask("free search "+i)));
+        }
+
+        int paidTasks = 0;
+        for (int i = 0; i < 40; i++) {
+            if (queueManager.takeWork().getTenantId().equals(PAID_TENANT))
+                paidTasks++;
+        }
+        //paid tenant should get 3 out of every 4 tasks while both tenants are backlogged.
+        assertTrue("paid tenant got "+paidTasks+" of 40 tasks", Math.abs(paidTasks - 30) <= 1);
+    }
+
+    @Test
+    public void takeWorkBatchServesTenantsInProportionToWeight() throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < 10; i++) {
+            queueManager.submitWork(new TenantAwareTask(PAID_TENANT, new SearchTask("paid search "+i)));
+            queueManager.submitWork(new TenantAwareTask(FREE_TENANT, new SearchTask("free search "+i)));
+        }
+
+        List<TenantAwareTask> batch = new ArrayList<>();
+        assertEquals(8, queueManager.takeWork(8, batch));
+        int paidTasks = 0;
+        for (TenantAwareTask task : batch) {
+            if (task.getTenantId().equals(PAID_TENANT))
+                paidTasks++;
+        }
+        assertEquals(6, paidTasks);
+    }
+
+    @Test
+    public void takeWorkServesEqualWeightsInRoundRobin() throws InterruptedException, UnknownTenantException {
+        String otherFreeTenant = "tenantId:free2";
+        queueManager.provisionTenant(new TenantConfig(otherFreeTenant, "tenantName:free2", workCapacity));
+        for (int i = 0; i < 3; i++) {
+            queueManager.submitWork(new TenantAwareTask(FREE_TENANT, new SearchTask("search "+i)));
+        }
+        queueManager.submitWork(new TenantAwareTask(otherFreeTenant, new SearchTask("search 0")));
+
+        assertEquals(FREE_TENANT, queueManager.takeWork().getTenantId());
+        assertEquals(otherFreeTenant, queueManager.takeWork().getTenantId());
+        assertEquals(FREE_TENANT, queueManager.takeWork().getTenantId());
+        assertEquals("search 2", queueManager.takeWork().getTask().getDescription());
+    }
+
+    @Test
+    public void idleTenantDoesNotBankVirtualTime() throws InterruptedException, UnknownTenantException {
+        for (int i = 0; i < 10; i++) {
+            queueManager.submitWork(new TenantAwareTask(FREE_TENANT, new SearchTask("free search "+i)));
+        }
+        for (int i = 0; i < 8; i++) {
+            queueManager.takeWork();
+        }
+        //paid tenant was idle so far, it should not get all the next tasks to catch up.
+        for (int i = 0; i < 10; i++) {
+            queueManager.submitWork(new TenantAwareTask(PAID_TENANT, new SearchTask("paid search "+i)));
+        }
+        int freeTasks = 0;
+        for (int i = 0; i < 5; i++) {
+            if (queueManager.takeWork().getTenantId().equals(FREE_TENANT))
+                freeTasks++;
+        }
+        assertEquals(1, freeTasks);
+    }
+
+    @Test
+    public void deProvisionedTenantIsNotScheduled() throws InterruptedException, UnknownTenantException {
+        queueManager.submitWork(new TenantAwareTask(PAID_TENANT, new SearchTask("paid search")));
+        queueManager.submitWork(new TenantAwareTask(FREE_TENANT, new SearchTask("free search")));
+        queueManager.deProvisionTenant(PAID_TENANT);
+
+        assertEquals(FREE_TENANT, queueManager.takeWork().getTenantId());
+    }
+
+    @Test
+    public void takeWorkBlocksOnNoWork() throws InterruptedException {
+        MTWorkerThread workerThread = new MTWorkerThread(queueManager, 123);
+        workerThread.start();
+        Thread.sleep(1000);
+        assertEquals(Thread.State.WAITING, workerThread.getState());
+        workerThread.interrupt();
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.platform.mt;
+
+import com.example.platform.mt.vo.QueueManagerOptions;
+import com.example.platform.mt.vo.SchedulingStrategy;
+import com.example.platform.mt.vo.TenantAwareTask;
+import com.example.platform.mt.vo.WorkerWaitStrategy;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class WorkerWaitStrategyTest {
+    private static final int WORK_CAPACITY = 100;
+
+    private final SchedulingStrategy strategy;
+
+    public WorkerWaitStrategyTest(SchedulingStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<SchedulingStrategy> strategies() {
+        return Arrays.asList(SchedulingStrategy.values());
+    }
+
+    private MultiTenantWorkQueueManager newQueueManager(WorkerWaitStrategy waitStrategy, long spinTimeNanos,
+                                                        int maxSpinningWorkers) {
+        QueueManagerOptions options = new QueueManagerOptions();
+        options.setWorkerWaitStrategy(waitStrategy);
+        options.setWorkerSpinTimeNanos(spinTimeNanos);
+        options.setMaxSpinningWorkers(maxSpinningWorkers);
+        return TestTenants.newQueueManager(2, WORK_CAPACITY, strategy, options);
+    }
+
+    @Test
+    public void workersPickUpBurstsWithEveryWaitStrategy() throws Exception {
+        for (WorkerWaitStrategy waitStrategy : WorkerWaitStrategy.values()) {
+            //spins longer than the gaps between bursts, and blocks once more workers are idle.
+            MultiTenantWorkQueueManager queueManager = newQueueManager(waitStrategy, TimeUnit.MILLISECONDS.toNanos(20), 2);
+            int bursts = 5;
+            int burstSize = 20;
+            AtomicInteger taken = new AtomicInteger();
+            List<Thread> workers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                int worker = w;
+                workers.add(new Thread(() -> {
+                    List<TenantAwareTask> batch = new ArrayList<>();
+                    try {
+                        while (taken.get() < bursts*burstSize) {
+                            //each kind of take goes through the wait strategy.
+                            if (worker == 0) {
+                                batch.add(queueManager.takeWork());
+                            } else if (worker == 1) {
+                                queueManager.takeWork(4, batch);
+                            } else {
+                                TenantAwareTask task = queueManager.pollWork(10, TimeUnit.MILLISECONDS);
+                                if (task != null)
+                                    batch.add(task);
+                            }
+                            for (TenantAwareTask task : batch) {
+                                task.run();
+                                taken.incrementAndGet();
+                            }
+                            batch.clear();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            for (int b = 0; b < bursts; b++) {
+                for (int i = 0; i < burstSize; i++) {
+                    queueManager.submitWork(new TenantAwareTask("tenantId:"+(i % 2), new TestTenants.QuickTask("search:"+b+":"+i)));
+                }
+                Thread.sleep(b % 2 == 0 ? 5 : 50);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (taken.get() < bursts*burstSize && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(waitStrategy.toString(), bursts*burstSize, taken.get());
+            //workers blocked in takeWork are woken up by an interrupt.
+            for (Thread worker : workers) {
+                worker.interrupt();
+                worker.join(5_000);
+                assertFalse(waitStrategy.toString(), worker.isAlive());
+            }
+        }
+    }
+
+    @Test
+    public void pollWorkTimesOutWithinSpinTime() throws Exception {
+        for (WorkerWaitStrategy waitStrategy : WorkerWaitStrategy.values()) {
+            MultiTenantWorkQueueManager queueManager = newQueueManager(waitStrategy, Long.MAX_VALUE, 1);
+            long start = System.nanoTime();
+            assertNull(queueManager.pollWork(20, TimeUnit.MILLISECONDS));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(waitStrategy+" waited "+elapsedMillis+"ms", elapsedMillis >= 19 && elapsedMillis < 2_000);
+            assertNull(queueManager.pollWork(0, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void spinningWorkerIsInterrupted() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(WorkerWaitStrategy.BUSY_SPIN, Long.MAX_VALUE, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread worker = new Thread(() -> {
+            started.countDown();
+            try {
+                queueManager.takeWork();
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        worker.start();
+        started.await();
+        Thread.sleep(10);
+        worker.interrupt();
+        worker.join(5_000);
+        assertFalse(worker.isAlive());
+        assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof InterruptedException);
+    }
+
+    @Test
+    public void spinningWorkerFillsBatchWithoutWaiting() throws Exception {
+        MultiTenantWorkQueueManager queueManager = newQueueManager(WorkerWaitStrategy.BUSY_SPIN, Long.MAX_VALUE, 1);
+        for (int i = 0; i < 6; i++) {
+            queueManager.submitWork(new TenantAwareTask("tenantId:"+(i % 2), new TestTenants.QuickTask("search:"+i)));
+        }
+        List<TenantAwareTask> batch = new ArrayList<>();
+        assertEquals(4, queueManager.takeWork(4, batch));
+        assertEquals(4, batch.size());
+        batch.clear();
+        //fewer tasks than asked for are handed out straight away.
+        assertEquals(2, queueManager.takeWork(4, batch));
+        assertEquals(2, batch.size());
+    }
+
+    @Test
+    public void defaultOptionsBlock() {
+        QueueManagerOptions options = new QueueManagerOptions();
+        assertEquals(WorkerWaitStrategy.BLOCKING, options.getWorkerWaitStrategy());
+        assertEquals(1, options.getMaxSpinningWorkers());
+    }
+}